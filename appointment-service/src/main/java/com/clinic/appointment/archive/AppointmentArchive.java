@@ -0,0 +1,139 @@
+package com.clinic.appointment.archive;
+
+import com.clinic.appointment.model.Appointment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Cold tier for closed appointments: immutable, time-sorted segment files on local disk.
+// Note that dyno filesystems are ephemeral, so the directory must sit on persistent storage.
+@Component
+public class AppointmentArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentArchive.class);
+
+    private static final DateTimeFormatter SEGMENT_NAME = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+
+    private final List<ArchiveSegment> segments = new CopyOnWriteArrayList<>();
+
+    @Value("${appointments.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${appointments.archive.directory:archive}")
+    private String directory;
+
+    @Value("${appointments.archive.block-size:256}")
+    private int blockSize;
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(SegmentFormat.FILE_SUFFIX + ".tmp")) {
+                    // Left behind by a run that died before its segment was complete
+                    Files.delete(file);
+                } else if (name.endsWith(SegmentFormat.FILE_SUFFIX)) {
+                    segments.add(ArchiveSegment.open(file));
+                }
+            }
+        }
+
+        long records = segments.stream().mapToLong(ArchiveSegment::getRecordCount).sum();
+        logger.info("Opened appointment archive at {}: {} segments, {} appointments", dir.toAbsolutePath(), segments.size(), records);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Writes the appointments (any order) as a new segment and returns its file
+    public Path append(List<Appointment> appointments) throws IOException {
+        List<Appointment> sorted = new ArrayList<>(appointments);
+        sorted.sort(Comparator.comparing(Appointment::getTime).thenComparing(Appointment::getId));
+
+        String name = "seg-" + sorted.get(0).getTime().format(SEGMENT_NAME) + "-" + System.currentTimeMillis();
+        Path file = ArchiveSegmentWriter.write(Paths.get(directory), name, sorted, blockSize);
+        segments.add(ArchiveSegment.open(file));
+
+        logger.info("Archived {} appointments into {}", sorted.size(), file.getFileName());
+        return file;
+    }
+
+    // Undoes an append whose source rows could not be removed from the live table
+    public void discard(Path file) throws IOException {
+        segments.removeIf(segment -> segment.getPath().equals(file));
+        Files.deleteIfExists(file);
+        logger.warn("Discarded archive segment {}", file.getFileName());
+    }
+
+    public List<Appointment> findBetween(LocalDateTime startTime, LocalDateTime endTime) {
+        if (!enabled || segments.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Appointment> result = new ArrayList<>();
+        for (ArchiveSegment segment : segments) {
+            try {
+                result.addAll(segment.findBetween(startTime, endTime));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading archive segment " + segment.getPath(), e);
+            }
+        }
+        return result;
+    }
+
+    // Every archived appointment in [startTime, endTime), one decoded block at a time
+    public void scanBetween(LocalDateTime startTime, LocalDateTime endTime, Consumer<Appointment> action) {
+        if (!enabled) {
+            return;
+        }
+
+        for (ArchiveSegment segment : segments) {
+            try {
+                segment.scanBetween(startTime, endTime, action);
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading archive segment " + segment.getPath(), e);
+            }
+        }
+    }
+
+    public List<Appointment> findByClientId(String clientId) {
+        if (!enabled || segments.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Appointment> result = new ArrayList<>();
+        for (ArchiveSegment segment : segments) {
+            try {
+                result.addAll(segment.findByClientId(clientId));
+            } catch (IOException e) {
+                throw new IllegalStateException("Error reading archive segment " + segment.getPath(), e);
+            }
+        }
+        return result;
+    }
+}
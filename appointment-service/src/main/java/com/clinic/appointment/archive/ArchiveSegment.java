@@ -0,0 +1,200 @@
+package com.clinic.appointment.archive;
+
+import com.clinic.appointment.model.Appointment;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.InflaterInputStream;
+
+// Read-only view of one segment file, mapped into memory. Only the sparse
+// index and client ids live on the heap; blocks are inflated on demand.
+final class ArchiveSegment {
+
+    private final Path path;
+    private final MappedByteBuffer data;
+    private final int formatVersion;
+    private final long[] blockFirstTimes;
+    private final long[] blockLastTimes;
+    private final long[] blockOffsets;
+    private final int[] blockLengths;
+    private final int[] blockRecords;
+    private final int recordCount;
+    private final Set<String> clientIds;
+
+    private ArchiveSegment(Path path, MappedByteBuffer data, int formatVersion, long[] blockFirstTimes,
+                           long[] blockLastTimes, long[] blockOffsets, int[] blockLengths, int[] blockRecords,
+                           Set<String> clientIds) {
+        this.path = path;
+        this.data = data;
+        this.formatVersion = formatVersion;
+        this.blockFirstTimes = blockFirstTimes;
+        this.blockLastTimes = blockLastTimes;
+        this.blockOffsets = blockOffsets;
+        this.blockLengths = blockLengths;
+        this.blockRecords = blockRecords;
+        this.recordCount = Arrays.stream(blockRecords).sum();
+        this.clientIds = clientIds;
+    }
+
+    static ArchiveSegment open(Path path) throws IOException {
+        MappedByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (data.capacity() < SegmentFormat.HEADER_BYTES + SegmentFormat.TRAILER_BYTES
+                || data.getInt(0) != SegmentFormat.MAGIC
+                || data.getInt(data.capacity() - 4) != SegmentFormat.MAGIC) {
+            throw new IOException("Not an appointment archive segment: " + path);
+        }
+        // Segments written before resources existed stay readable
+        int formatVersion = data.getInt(4);
+        if (formatVersion < SegmentFormat.OLDEST_READABLE_VERSION || formatVersion > SegmentFormat.FORMAT_VERSION) {
+            throw new IOException("Unsupported segment format " + formatVersion + " in " + path);
+        }
+
+        long footerOffset = data.getLong(data.capacity() - SegmentFormat.TRAILER_BYTES);
+        DataInputStream footer = new DataInputStream(new ByteArrayInputStream(
+                copy(data, footerOffset, (int) (data.capacity() - SegmentFormat.TRAILER_BYTES - footerOffset))));
+
+        int blockCount = footer.readInt();
+        long[] firstTimes = new long[blockCount];
+        long[] lastTimes = new long[blockCount];
+        long[] offsets = new long[blockCount];
+        int[] lengths = new int[blockCount];
+        int[] records = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            firstTimes[i] = footer.readLong();
+            lastTimes[i] = footer.readLong();
+            offsets[i] = footer.readLong();
+            lengths[i] = footer.readInt();
+            records[i] = footer.readInt();
+        }
+
+        int clientCount = footer.readInt();
+        Set<String> clientIds = new HashSet<>(clientCount * 2);
+        for (int i = 0; i < clientCount; i++) {
+            clientIds.add(footer.readUTF());
+        }
+
+        return new ArchiveSegment(path, data, formatVersion, firstTimes, lastTimes, offsets, lengths, records, clientIds);
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int getRecordCount() {
+        return recordCount;
+    }
+
+    long getFirstTime() {
+        return blockFirstTimes.length > 0 ? blockFirstTimes[0] : Long.MAX_VALUE;
+    }
+
+    long getLastTime() {
+        return blockLastTimes.length > 0 ? blockLastTimes[blockLastTimes.length - 1] : Long.MIN_VALUE;
+    }
+
+    // Inclusive on both ends, like the BETWEEN query on the live table
+    List<Appointment> findBetween(LocalDateTime startTime, LocalDateTime endTime) throws IOException {
+        long from = SegmentFormat.epochSecond(startTime);
+        long to = SegmentFormat.epochSecond(endTime);
+        if (to < getFirstTime() || from > getLastTime()) {
+            return Collections.emptyList();
+        }
+
+        List<Appointment> result = new ArrayList<>();
+        for (int block = firstBlockEndingAtOrAfter(from); block < blockFirstTimes.length && blockFirstTimes[block] <= to; block++) {
+            for (Appointment appointment : readBlock(block)) {
+                if (!appointment.getTime().isBefore(startTime) && !appointment.getTime().isAfter(endTime)) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Half-open [startTime, endTime), for scans that split a range into adjacent pieces. Only
+    // one block is decoded at a time, so a scan of the whole segment stays small.
+    void scanBetween(LocalDateTime startTime, LocalDateTime endTime, Consumer<Appointment> action) throws IOException {
+        long from = SegmentFormat.epochSecond(startTime);
+        long to = SegmentFormat.epochSecond(endTime);
+        if (to < getFirstTime() || from > getLastTime()) {
+            return;
+        }
+
+        for (int block = firstBlockEndingAtOrAfter(from); block < blockFirstTimes.length && blockFirstTimes[block] <= to; block++) {
+            for (Appointment appointment : readBlock(block)) {
+                if (!appointment.getTime().isBefore(startTime) && appointment.getTime().isBefore(endTime)) {
+                    action.accept(appointment);
+                }
+            }
+        }
+    }
+
+    List<Appointment> findByClientId(String clientId) throws IOException {
+        if (!clientIds.contains(clientId)) {
+            return Collections.emptyList();
+        }
+
+        List<Appointment> result = new ArrayList<>();
+        for (int block = 0; block < blockFirstTimes.length; block++) {
+            for (Appointment appointment : readBlock(block)) {
+                if (clientId.equals(appointment.getClientId())) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Blocks are time-sorted, so their last times are non-decreasing
+    private int firstBlockEndingAtOrAfter(long time) {
+        int low = 0;
+        int high = blockLastTimes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockLastTimes[mid] < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private List<Appointment> readBlock(int block) throws IOException {
+        byte[] compressed = copy(data, blockOffsets[block], blockLengths[block]);
+        List<Appointment> appointments = new ArrayList<>(blockRecords[block]);
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)))) {
+            for (int i = 0; i < blockRecords[block]; i++) {
+                appointments.add(SegmentFormat.readRecord(in, formatVersion));
+            }
+        }
+        return appointments;
+    }
+
+    // Absolute reads never touch the buffer position, so one mapping serves concurrent readers
+    private static byte[] copy(MappedByteBuffer data, long offset, int length) {
+        byte[] bytes = new byte[length];
+        int start = (int) offset;
+        for (int i = 0; i < length; i++) {
+            bytes[i] = data.get(start + i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,95 @@
+package com.clinic.appointment.archive;
+
+import com.clinic.appointment.model.Appointment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+// Writes one immutable segment. The file only becomes visible under its final
+// name once it is complete and synced, so readers never see a partial segment.
+final class ArchiveSegmentWriter {
+
+    private ArchiveSegmentWriter() {}
+
+    // Appointments must already be sorted by time
+    static Path write(Path directory, String name, List<Appointment> appointments, int blockSize) throws IOException {
+        Path target = directory.resolve(name + SegmentFormat.FILE_SUFFIX);
+        Path temp = directory.resolve(name + SegmentFormat.FILE_SUFFIX + ".tmp");
+
+        List<long[]> index = new ArrayList<>();
+        Set<String> clientIds = new TreeSet<>();
+
+        try (DataOutputStream file = new DataOutputStream(Files.newOutputStream(temp))) {
+            file.writeInt(SegmentFormat.MAGIC);
+            file.writeInt(SegmentFormat.FORMAT_VERSION);
+            long offset = SegmentFormat.HEADER_BYTES;
+
+            for (int start = 0; start < appointments.size(); start += blockSize) {
+                List<Appointment> block = appointments.subList(start, Math.min(start + blockSize, appointments.size()));
+                byte[] compressed = compressBlock(block);
+                file.write(compressed);
+
+                // firstTime, lastTime, offset, length, record count
+                index.add(new long[] {
+                        SegmentFormat.epochSecond(block.get(0).getTime()),
+                        SegmentFormat.epochSecond(block.get(block.size() - 1).getTime()),
+                        offset,
+                        compressed.length,
+                        block.size()
+                });
+                offset += compressed.length;
+
+                for (Appointment appointment : block) {
+                    clientIds.add(appointment.getClientId());
+                }
+            }
+
+            long footerOffset = offset;
+            file.writeInt(index.size());
+            for (long[] entry : index) {
+                file.writeLong(entry[0]);
+                file.writeLong(entry[1]);
+                file.writeLong(entry[2]);
+                file.writeInt((int) entry[3]);
+                file.writeInt((int) entry[4]);
+            }
+            file.writeInt(clientIds.size());
+            for (String clientId : clientIds) {
+                file.writeUTF(clientId);
+            }
+
+            file.writeLong(footerOffset);
+            file.writeInt(SegmentFormat.MAGIC);
+        }
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        return Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] compressBlock(List<Appointment> block) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, deflater))) {
+            for (Appointment appointment : block) {
+                SegmentFormat.writeRecord(out, appointment);
+            }
+        } finally {
+            deflater.end();
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,96 @@
+package com.clinic.appointment.archive;
+
+import com.clinic.appointment.model.Appointment;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// On-disk layout of an archive segment:
+//
+//   header   MAGIC, FORMAT_VERSION
+//   blocks   deflate-compressed runs of records, sorted by time
+//   footer   sparse index (one entry per block), distinct client ids
+//   trailer  footer offset, MAGIC
+final class SegmentFormat {
+
+    static final int MAGIC = 0x41505347; // "APSG"
+    // 2 added practitionerId and roomId to each record
+    static final int FORMAT_VERSION = 2;
+    static final int OLDEST_READABLE_VERSION = 1;
+    static final int HEADER_BYTES = 8;
+    static final int TRAILER_BYTES = 12;
+    static final String FILE_SUFFIX = ".seg";
+
+    private SegmentFormat() {}
+
+    static void writeRecord(DataOutput out, Appointment appointment) throws IOException {
+        out.writeUTF(appointment.getId());
+        out.writeUTF(appointment.getClientId());
+        writeTime(out, appointment.getTime());
+        writeNullableString(out, appointment.getNotes());
+        writeNullableString(out, appointment.getPractitionerId());
+        writeNullableString(out, appointment.getRoomId());
+        out.writeUTF(appointment.getStatus().name());
+        writeNullableTime(out, appointment.getCreatedAt());
+        writeNullableTime(out, appointment.getUpdatedAt());
+        out.writeLong(appointment.getVersion() != null ? appointment.getVersion() : 0L);
+    }
+
+    static Appointment readRecord(DataInput in, int formatVersion) throws IOException {
+        Appointment appointment = new Appointment();
+        appointment.setId(in.readUTF());
+        appointment.setClientId(in.readUTF());
+        appointment.setTime(readTime(in));
+        appointment.setNotes(readNullableString(in));
+        if (formatVersion >= 2) {
+            appointment.setPractitionerId(readNullableString(in));
+            appointment.setRoomId(readNullableString(in));
+        }
+        appointment.setStatus(Appointment.AppointmentStatus.valueOf(in.readUTF()));
+        appointment.setCreatedAt(readNullableTime(in));
+        appointment.setUpdatedAt(readNullableTime(in));
+        appointment.setVersion(in.readLong());
+        return appointment;
+    }
+
+    // Index keys are whole seconds; exact bounds are checked on the decoded records
+    static long epochSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeLong(epochSecond(time));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInput in) throws IOException {
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private static void writeNullableTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            writeTime(out, time);
+        }
+    }
+
+    private static LocalDateTime readNullableTime(DataInput in) throws IOException {
+        return in.readBoolean() ? readTime(in) : null;
+    }
+
+    private static void writeNullableString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullableString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
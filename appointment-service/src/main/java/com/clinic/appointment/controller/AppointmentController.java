@@ -1,65 +1,152 @@
 package com.clinic.appointment.controller;
 
 import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.BulkStatusChange;
+import com.clinic.appointment.service.AppointmentPage;
 import com.clinic.appointment.service.AppointmentService;
+import com.clinic.appointment.service.CollectionVersion;
+import com.clinic.common.admission.AdmissionControl;
+import com.clinic.common.tracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/appointments")
-@CrossOrigin(origins = "*") // Allow CORS for frontend
+@CrossOrigin(origins = "*", exposedHeaders = "X-Next-Cursor") // Allow CORS for frontend
 public class AppointmentController {
 
     private static final Logger logger = LoggerFactory.getLogger(AppointmentController.class);
 
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final AppointmentService appointmentService;
+    private final CollectionVersion collectionVersion;
+    private final AdmissionControl admissionControl;
+    private final Tracer tracer;
 
-    public AppointmentController(AppointmentService appointmentService) {
+    public AppointmentController(AppointmentService appointmentService, CollectionVersion collectionVersion,
+                                 AdmissionControl admissionControl, Tracer tracer) {
         this.appointmentService = appointmentService;
+        this.collectionVersion = collectionVersion;
+        this.admissionControl = admissionControl;
+        this.tracer = tracer;
     }
 
     @GetMapping
-    public ResponseEntity<List<Appointment>> getAllAppointments() {
-        logger.info("GET /appointments - Fetching all appointments");
+    public ResponseEntity<List<?>> getAllAppointments(@RequestParam(required = false) String fields, WebRequest webRequest) {
+        logger.debug("GET /appointments - Fetching all appointments");
         try {
-            List<Appointment> appointments = appointmentService.getAllAppointments();
-            logger.info("Successfully retrieved {} appointments", appointments.size());
-            return ResponseEntity.ok(appointments);
+            List<String> selected = appointmentService.selectFields(fields);
+            String etag = collectionVersion.etag("all" + fieldsTag(selected) + representation(webRequest));
+            if (webRequest.checkNotModified(etag, collectionVersion.lastModified())) {
+                return notModified(etag);
+            }
+            List<?> appointments = selected == null
+                    ? appointmentService.getAllAppointments()
+                    : appointmentService.getAllAppointments(selected);
+            logger.debug("Successfully retrieved {} appointments", appointments.size());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(appointments);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching appointments: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // Without limit, cursor, status or clientId this returns every upcoming appointment, as it
+    // always has. With any of them it returns one page (limit defaults to 50, at most 500) and,
+    // if there are more, the cursor for the next page in the X-Next-Cursor header.
     @GetMapping("/upcoming")
-    public ResponseEntity<List<Appointment>> getUpcomingAppointments() {
-        logger.info("GET /appointments/upcoming - Fetching upcoming appointments");
+    public ResponseEntity<List<?>> getUpcomingAppointments(@RequestParam(required = false) String fields,
+                                                           @RequestParam(required = false) Integer limit,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(required = false) String status,
+                                                           @RequestParam(required = false) String clientId,
+                                                           WebRequest webRequest) {
+        logger.debug("GET /appointments/upcoming - Fetching upcoming appointments");
         try {
-            List<Appointment> appointments = appointmentService.getUpcomingAppointments();
-            logger.info("Successfully retrieved {} upcoming appointments", appointments.size());
-            return ResponseEntity.ok(appointments);
+            List<String> selected = appointmentService.selectFields(fields);
+            // The result also depends on the clock, so the cutoff minute is part of the tag
+            LocalDateTime cutoff = appointmentService.upcomingCutoff();
+            if (limit != null || cursor != null || status != null || clientId != null) {
+                return getUpcomingPage(cutoff, selected, limit, cursor, status, clientId, webRequest);
+            }
+            String etag = collectionVersion.etag("upcoming-" + cutoff + fieldsTag(selected) + representation(webRequest));
+            if (webRequest.checkNotModified(etag)) {
+                return notModified(etag);
+            }
+            List<?> appointments = selected == null
+                    ? appointmentService.getUpcomingAppointments(cutoff)
+                    : appointmentService.getUpcomingAppointments(cutoff, selected);
+            logger.debug("Successfully retrieved {} upcoming appointments", appointments.size());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(appointments);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid upcoming query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching upcoming appointments: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    private ResponseEntity<List<?>> getUpcomingPage(LocalDateTime cutoff, List<String> selected, Integer limit, String cursor,
+                                                    String status, String clientId, WebRequest webRequest) {
+        int pageLimit = appointmentService.pageLimit(limit);
+        Appointment.AppointmentStatus statusFilter = status != null ? Appointment.AppointmentStatus.valueOf(status.toUpperCase()) : null;
+        String etag = collectionVersion.etag("upcoming-" + cutoff + "-" + statusFilter + "-" + clientId + "-" + cursor
+                + "-" + pageLimit + fieldsTag(selected) + representation(webRequest));
+        if (webRequest.checkNotModified(etag)) {
+            return notModified(etag);
+        }
+        AppointmentPage page = appointmentService.getUpcomingPage(cutoff, statusFilter, clientId, cursor, pageLimit, selected);
+        logger.debug("Successfully retrieved page of {} upcoming appointments (more: {})",
+                page.getItems().size(), page.getNextCursor() != null);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag);
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return response.body(page.getItems());
+    }
+
     @GetMapping("/today")
-    public ResponseEntity<List<Appointment>> getTodaysAppointments() {
-        logger.info("GET /appointments/today - Fetching today's appointments");
+    public ResponseEntity<List<?>> getTodaysAppointments(@RequestParam(required = false) String fields, WebRequest webRequest) {
+        logger.debug("GET /appointments/today - Fetching today's appointments");
         try {
-            List<Appointment> appointments = appointmentService.getTodaysAppointments();
-            logger.info("Successfully retrieved {} appointments for today", appointments.size());
-            return ResponseEntity.ok(appointments);
+            List<String> selected = appointmentService.selectFields(fields);
+            LocalDate today = LocalDate.now();
+            String etag = collectionVersion.etag("today-" + today + fieldsTag(selected) + representation(webRequest));
+            if (webRequest.checkNotModified(etag)) {
+                return notModified(etag);
+            }
+            List<?> appointments = selected == null
+                    ? appointmentService.getAppointmentsOn(today)
+                    : appointmentService.getAppointmentsOn(today, selected);
+            logger.debug("Successfully retrieved {} appointments for today", appointments.size());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(appointments);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching today's appointments: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -67,13 +154,17 @@ public class AppointmentController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Appointment> getAppointmentById(@PathVariable String id) {
-        logger.info("GET /appointments/{} - Fetching appointment by id", id);
+    public ResponseEntity<Appointment> getAppointmentById(@PathVariable String id, WebRequest webRequest) {
+        logger.debug("GET /appointments/{} - Fetching appointment by id", id);
         try {
             Optional<Appointment> appointment = appointmentService.getAppointmentById(id);
             if (appointment.isPresent()) {
-                logger.info("Successfully retrieved appointment: {}", appointment.get().getId());
-                return ResponseEntity.ok(appointment.get());
+                String etag = versionTag(appointment.get(), representation(webRequest));
+                if (webRequest.checkNotModified(etag)) {
+                    return notModified(etag);
+                }
+                logger.debug("Successfully retrieved appointment: {}", appointment.get().getId());
+                return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(appointment.get());
             } else {
                 logger.warn("Appointment not found with id: {}", id);
                 return ResponseEntity.notFound().build();
@@ -85,28 +176,54 @@ public class AppointmentController {
     }
 
     @GetMapping("/client/{clientId}")
-    public ResponseEntity<List<Appointment>> getAppointmentsByClientId(@PathVariable String clientId) {
-        logger.info("GET /appointments/client/{} - Fetching appointments for client", clientId);
+    public ResponseEntity<List<?>> getAppointmentsByClientId(@PathVariable String clientId,
+                                                             @RequestParam(required = false) String fields) {
+        logger.debug("GET /appointments/client/{} - Fetching appointments for client", clientId);
         try {
-            List<Appointment> appointments = appointmentService.getAppointmentsByClientId(clientId);
-            logger.info("Successfully retrieved {} appointments for client: {}", appointments.size(), clientId);
+            List<String> selected = appointmentService.selectFields(fields);
+            List<?> appointments = selected == null
+                    ? appointmentService.getAppointmentsByClientId(clientId)
+                    : appointmentService.getAppointmentsByClientId(clientId, selected);
+            logger.debug("Successfully retrieved {} appointments for client: {}", appointments.size(), clientId);
             return ResponseEntity.ok(appointments);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching appointments for client {}: {}", clientId, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    @GetMapping("/client/{clientId}/summary")
+    public ResponseEntity<Map<String, Object>> getClientSummary(@PathVariable String clientId,
+                                                                @RequestParam(required = false) Integer historyLimit) {
+        logger.debug("GET /appointments/client/{}/summary - Fetching client summary", clientId);
+        try {
+            return ResponseEntity.ok(appointmentService.getClientSummary(clientId, historyLimit));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid client summary request: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error fetching summary for client {}: {}", clientId, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<Appointment>> getAppointmentsByStatus(@PathVariable String status) {
-        logger.info("GET /appointments/status/{} - Fetching appointments by status", status);
+    public ResponseEntity<List<?>> getAppointmentsByStatus(@PathVariable String status,
+                                                           @RequestParam(required = false) String fields) {
+        logger.debug("GET /appointments/status/{} - Fetching appointments by status", status);
         try {
             Appointment.AppointmentStatus appointmentStatus = Appointment.AppointmentStatus.valueOf(status.toUpperCase());
-            List<Appointment> appointments = appointmentService.getAppointmentsByStatus(appointmentStatus);
-            logger.info("Successfully retrieved {} appointments with status: {}", appointments.size(), status);
+            List<String> selected = appointmentService.selectFields(fields);
+            List<?> appointments = selected == null
+                    ? appointmentService.getAppointmentsByStatus(appointmentStatus)
+                    : appointmentService.getAppointmentsByStatus(appointmentStatus, selected);
+            logger.debug("Successfully retrieved {} appointments with status: {}", appointments.size(), status);
             return ResponseEntity.ok(appointments);
         } catch (IllegalArgumentException e) {
-            logger.warn("Invalid appointment status: {}", status);
+            logger.warn("Invalid appointment status or fields: {} ({})", status, e.getMessage());
             return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching appointments by status {}: {}", status, e.getMessage(), e);
@@ -115,14 +232,21 @@ public class AppointmentController {
     }
 
     @GetMapping("/range")
-    public ResponseEntity<List<Appointment>> getAppointmentsBetween(
+    public ResponseEntity<List<?>> getAppointmentsBetween(
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
-            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
-        logger.info("GET /appointments/range - Fetching appointments between {} and {}", startTime, endTime);
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime,
+            @RequestParam(required = false) String fields) {
+        logger.debug("GET /appointments/range - Fetching appointments between {} and {}", startTime, endTime);
         try {
-            List<Appointment> appointments = appointmentService.getAppointmentsBetween(startTime, endTime);
-            logger.info("Successfully retrieved {} appointments in date range", appointments.size());
+            List<String> selected = appointmentService.selectFields(fields);
+            List<?> appointments = selected == null
+                    ? appointmentService.getAppointmentsBetween(startTime, endTime)
+                    : appointmentService.getAppointmentsBetween(startTime, endTime, selected);
+            logger.debug("Successfully retrieved {} appointments in date range", appointments.size());
             return ResponseEntity.ok(appointments);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching appointments in date range: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -131,10 +255,10 @@ public class AppointmentController {
 
     @PostMapping
     public ResponseEntity<Appointment> createAppointment(@Valid @RequestBody Appointment appointment) {
-        logger.info("POST /appointments - Creating new appointment for client: {}", appointment.getClientId());
+        logger.debug("POST /appointments - Creating new appointment for client: {}", appointment.getClientId());
         try {
             Appointment createdAppointment = appointmentService.createAppointment(appointment);
-            logger.info("Successfully created appointment: {}", createdAppointment.getId());
+            logger.debug("Successfully created appointment: {}", createdAppointment.getId());
             return ResponseEntity.status(HttpStatus.CREATED).body(createdAppointment);
         } catch (IllegalArgumentException e) {
             logger.warn("Invalid appointment data: {}", e.getMessage());
@@ -146,12 +270,25 @@ public class AppointmentController {
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Appointment> updateAppointment(@PathVariable String id, @Valid @RequestBody Appointment appointment) {
-        logger.info("PUT /appointments/{} - Updating appointment", id);
+    public ResponseEntity<Appointment> updateAppointment(@PathVariable String id, @Valid @RequestBody Appointment appointment,
+                                                         @RequestHeader(value = "If-Match", required = false) String ifMatch,
+                                                         WebRequest webRequest) {
+        logger.debug("PUT /appointments/{} - Updating appointment", id);
         try {
+            // An If-Match ETag takes precedence over a version sent in the body
+            if (ifMatch != null) {
+                Long expectedVersion = parseVersionTag(ifMatch);
+                if (expectedVersion == null) {
+                    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+                }
+                appointment.setVersion(expectedVersion);
+            }
             Appointment updatedAppointment = appointmentService.updateAppointment(id, appointment);
-            logger.info("Successfully updated appointment: {}", updatedAppointment.getId());
-            return ResponseEntity.ok(updatedAppointment);
+            logger.debug("Successfully updated appointment: {}", updatedAppointment.getId());
+            return ResponseEntity.ok().eTag(versionTag(updatedAppointment, representation(webRequest))).body(updatedAppointment);
+        } catch (ObjectOptimisticLockingFailureException e) {
+            logger.warn("Stale appointment update for {}: {}", id, e.getMessage());
+            return ResponseEntity.status(ifMatch != null ? HttpStatus.PRECONDITION_FAILED : HttpStatus.CONFLICT).build();
         } catch (IllegalArgumentException e) {
             logger.warn("Invalid appointment update: {}", e.getMessage());
             return ResponseEntity.badRequest().build();
@@ -163,10 +300,10 @@ public class AppointmentController {
 
     @PatchMapping("/{id}/cancel")
     public ResponseEntity<String> cancelAppointment(@PathVariable String id) {
-        logger.info("PATCH /appointments/{}/cancel - Cancelling appointment", id);
+        logger.debug("PATCH /appointments/{}/cancel - Cancelling appointment", id);
         try {
             appointmentService.cancelAppointment(id);
-            logger.info("Successfully cancelled appointment: {}", id);
+            logger.debug("Successfully cancelled appointment: {}", id);
             return ResponseEntity.ok("Appointment cancelled successfully");
         } catch (IllegalArgumentException e) {
             logger.warn("Cannot cancel appointment: {}", e.getMessage());
@@ -178,12 +315,31 @@ public class AppointmentController {
         }
     }
 
+    @PostMapping("/bulk/status")
+    public ResponseEntity<Map<String, Object>> changeStatus(@Valid @RequestBody BulkStatusChange change) {
+        logger.debug("POST /appointments/bulk/status - Changing appointments to {}", change.getStatus());
+        try {
+            List<String> ids = appointmentService.changeStatus(change);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("status", change.getStatus());
+            result.put("updated", ids.size());
+            result.put("ids", ids);
+            return ResponseEntity.ok(result);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid bulk status change: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error changing appointment statuses: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteAppointment(@PathVariable String id) {
-        logger.info("DELETE /appointments/{} - Deleting appointment", id);
+        logger.debug("DELETE /appointments/{} - Deleting appointment", id);
         try {
             appointmentService.deleteAppointment(id);
-            logger.info("Successfully deleted appointment: {}", id);
+            logger.debug("Successfully deleted appointment: {}", id);
             return ResponseEntity.noContent().build();
         } catch (IllegalArgumentException e) {
             logger.warn("Cannot delete appointment: {}", e.getMessage());
@@ -196,7 +352,7 @@ public class AppointmentController {
 
     @PostMapping("/sync")
     public ResponseEntity<String> manualSync() {
-        logger.info("POST /appointments/sync - Manual sync requested");
+        logger.debug("POST /appointments/sync - Manual sync requested");
         try {
             appointmentService.manualSync();
             return ResponseEntity.ok("Sync completed successfully");
@@ -207,13 +363,141 @@ public class AppointmentController {
         }
     }
 
+    // Full-text search over notes, best match first. q takes web search syntax: words,
+    // "quoted phrases", or, and -excluded words. status may list several, comma-separated.
+    // Every match is ranked, so a selective term answers in milliseconds, but one found in a
+    // large share of all notes takes time in proportion to its matches (hundreds of ms on a
+    // million rows); from/to, status and clientId narrow what is ranked. 503 when search is
+    // unavailable (disabled, or a database older than PostgreSQL 13).
+    @GetMapping("/search")
+    public ResponseEntity<List<?>> searchAppointments(
+            @RequestParam String q,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String status,
+            @RequestParam(required = false) String clientId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        logger.debug("GET /appointments/search - Searching notes for '{}'", q);
+        if (!appointmentService.isSearchAvailable()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        try {
+            Set<Appointment.AppointmentStatus> statuses = EnumSet.noneOf(Appointment.AppointmentStatus.class);
+            if (status != null) {
+                for (String name : status.split(",")) {
+                    statuses.add(Appointment.AppointmentStatus.valueOf(name.trim().toUpperCase()));
+                }
+            }
+            AppointmentPage page = appointmentService.searchAppointments(q, from, to, statuses, clientId, cursor, limit);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getItems());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid search query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error searching appointments for '{}': {}", q, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/search/stats")
+    public ResponseEntity<Map<String, Object>> getSearchStats() {
+        logger.debug("GET /appointments/search/stats - Fetching notes search stats");
+        return ResponseEntity.ok(appointmentService.getSearchStats());
+    }
+
+    // Counts, utilization and no-show rates by hour of the week over [from, to), up to years
+    @GetMapping("/analytics/utilization")
+    public ResponseEntity<Map<String, Object>> getUtilization(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) Integer parallelism,
+            @RequestParam(required = false) Integer capacity,
+            @RequestParam(defaultValue = "true") boolean includeArchive) {
+        logger.debug("GET /appointments/analytics/utilization - Computing utilization from {} to {}", from, to);
+        try {
+            return ResponseEntity.ok(appointmentService.getUtilization(from, to, parallelism, capacity, includeArchive));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid utilization query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error computing utilization from {} to {}: {}", from, to, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/analytics/stats")
+    public ResponseEntity<Map<String, Object>> getAnalyticsStats() {
+        logger.debug("GET /appointments/analytics/stats - Fetching utilization analytics stats");
+        return ResponseEntity.ok(appointmentService.getAnalyticsStats());
+    }
+
+    @GetMapping("/sync/stats")
+    public ResponseEntity<Map<String, Object>> getLastSyncStats() {
+        logger.debug("GET /appointments/sync/stats - Fetching last sync pipeline stats");
+        return ResponseEntity.ok(appointmentService.getLastSyncStats());
+    }
+
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> getQueryCacheStats() {
+        logger.debug("GET /appointments/cache/stats - Fetching dashboard query cache stats");
+        return ResponseEntity.ok(appointmentService.getQueryCacheStats());
+    }
+
+    @GetMapping("/client-summary/stats")
+    public ResponseEntity<Map<String, Object>> getClientSummaryStats() {
+        logger.debug("GET /appointments/client-summary/stats - Fetching client summary cache stats");
+        return ResponseEntity.ok(appointmentService.getClientSummaryStats());
+    }
+
+    @GetMapping("/schedule-view/stats")
+    public ResponseEntity<Map<String, Object>> getScheduleViewStats() {
+        logger.debug("GET /appointments/schedule-view/stats - Fetching in-memory schedule view stats");
+        return ResponseEntity.ok(appointmentService.getScheduleViewStats());
+    }
+
+    @GetMapping("/timers/stats")
+    public ResponseEntity<Map<String, Object>> getTimerStats() {
+        logger.debug("GET /appointments/timers/stats - Fetching reminder and auto-close timer stats");
+        return ResponseEntity.ok(appointmentService.getTimerStats());
+    }
+
+    @GetMapping("/booking/stats")
+    public ResponseEntity<Map<String, Object>> getBookingStats() {
+        logger.debug("GET /appointments/booking/stats - Fetching slot lock and retry stats");
+        return ResponseEntity.ok(appointmentService.getBookingStats());
+    }
+
+    @GetMapping("/admission/stats")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        logger.debug("GET /appointments/admission/stats - Fetching admission control stats");
+        return ResponseEntity.ok(admissionControl.getStats());
+    }
+
+    // Latest traces kept by tail sampling, newest first; the full record is in the trace file
+    @GetMapping("/traces")
+    public ResponseEntity<List<Map<String, Object>>> getRecentTraces(@RequestParam(defaultValue = "20") int limit) {
+        logger.debug("GET /appointments/traces - Fetching {} recent traces", limit);
+        return ResponseEntity.ok(tracer.getRecentTraces(limit));
+    }
+
+    @GetMapping("/traces/stats")
+    public ResponseEntity<Map<String, Object>> getTraceStats() {
+        logger.debug("GET /appointments/traces/stats - Fetching tracing and sampling stats");
+        return ResponseEntity.ok(tracer.getStats());
+    }
+
     @GetMapping("/stats/count/{status}")
     public ResponseEntity<Long> getAppointmentCountByStatus(@PathVariable String status) {
-        logger.info("GET /appointments/stats/count/{} - Getting appointment count by status", status);
+        logger.debug("GET /appointments/stats/count/{} - Getting appointment count by status", status);
         try {
             Appointment.AppointmentStatus appointmentStatus = Appointment.AppointmentStatus.valueOf(status.toUpperCase());
             long count = appointmentService.countAppointmentsByStatus(appointmentStatus);
-            logger.info("Successfully retrieved count for status {}: {}", status, count);
+            logger.debug("Successfully retrieved count for status {}: {}", status, count);
             return ResponseEntity.ok(count);
         } catch (IllegalArgumentException e) {
             logger.warn("Invalid appointment status: {}", status);
@@ -223,4 +507,52 @@ public class AppointmentController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+
+    private <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    private String versionTag(Appointment appointment, String representation) {
+        return "\"v" + appointment.getVersion() + representation + "\"";
+    }
+
+    // Accepts any tag produced by versionTag, returns null for anything else
+    private Long parseVersionTag(String etag) {
+        String value = etag.trim();
+        if (value.startsWith("W/")) {
+            return null;
+        }
+        if (value.length() < 4 || !value.startsWith("\"v") || !value.endsWith("\"")) {
+            return null;
+        }
+        int end = value.indexOf('-');
+        if (end < 0) {
+            end = value.length() - 1;
+        }
+        try {
+            return Long.parseLong(value.substring(2, end));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // A sparse fieldset is a different representation of the same collection
+    private String fieldsTag(List<String> fields) {
+        return fields == null ? "" : "-f." + String.join(".", fields);
+    }
+
+    // Each negotiated format, and the gzipped body Tomcat sends to clients that accept it, is a
+    // separate representation with different bytes, so each gets its own strong ETag
+    private String representation(WebRequest webRequest) {
+        String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+        String acceptEncoding = webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        String coding = acceptEncoding != null && acceptEncoding.contains("gzip") ? "-gz" : "";
+        if (accept != null && accept.contains("smile")) {
+            return "-smile" + coding;
+        }
+        if (accept != null && accept.contains("cbor")) {
+            return "-cbor" + coding;
+        }
+        return coding;
+    }
 }
@@ -0,0 +1,134 @@
+package com.clinic.appointment.controller;
+
+import com.clinic.appointment.model.Resource;
+import com.clinic.appointment.service.ResourceService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.validation.Valid;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Practitioners and rooms that appointments book, and their calendars
+@RestController
+@RequestMapping("/resources")
+@CrossOrigin(origins = "*") // Allow CORS for frontend
+public class ResourceController {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceController.class);
+
+    private final ResourceService resourceService;
+
+    public ResourceController(ResourceService resourceService) {
+        this.resourceService = resourceService;
+    }
+
+    @GetMapping
+    public ResponseEntity<List<Resource>> getResources(@RequestParam(required = false) String type) {
+        logger.debug("GET /resources - Fetching resources of type {}", type);
+        try {
+            Resource.ResourceType resourceType = type != null ? Resource.ResourceType.valueOf(type.toUpperCase()) : null;
+            List<Resource> resources = resourceService.getResources(resourceType);
+            logger.debug("Successfully retrieved {} resources", resources.size());
+            return ResponseEntity.ok(resources);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid resource type: {}", type);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error fetching resources: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Resource> getResourceById(@PathVariable String id) {
+        logger.debug("GET /resources/{} - Fetching resource by id", id);
+        try {
+            Optional<Resource> resource = resourceService.getResourceById(id);
+            if (resource.isPresent()) {
+                return ResponseEntity.ok(resource.get());
+            }
+            logger.warn("Resource not found with id: {}", id);
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            logger.error("Error fetching resource by id {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    @PostMapping
+    public ResponseEntity<Resource> createResource(@Valid @RequestBody Resource resource) {
+        logger.debug("POST /resources - Creating {} {}", resource.getType(), resource.getName());
+        try {
+            Resource created = resourceService.createResource(resource);
+            logger.debug("Successfully created resource: {}", created.getId());
+            return ResponseEntity.status(HttpStatus.CREATED).body(created);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid resource data: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error creating resource: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Replaces name, capacity and active; deactivating keeps the resource's appointments
+    @PutMapping("/{id}")
+    public ResponseEntity<Resource> updateResource(@PathVariable String id, @Valid @RequestBody Resource resource) {
+        logger.debug("PUT /resources/{} - Updating resource", id);
+        try {
+            Resource updated = resourceService.updateResource(id, resource);
+            logger.debug("Successfully updated resource: {}", updated.getId());
+            return ResponseEntity.ok(updated);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid resource update: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error updating resource {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Slots of slotMinutes in [from, to), each with its bookings and remaining capacity
+    @GetMapping("/{id}/availability")
+    public ResponseEntity<List<Map<String, Object>>> getAvailability(
+            @PathVariable String id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "30") int slotMinutes) {
+        logger.debug("GET /resources/{}/availability - Fetching availability from {} to {}", id, from, to);
+        try {
+            return ResponseEntity.ok(resourceService.getAvailability(id, from, to, slotMinutes));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid availability query: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error fetching availability of {}: {}", id, e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Practitioners (or rooms) that can still take an appointment at this time, least booked first
+    @GetMapping("/free")
+    public ResponseEntity<List<Resource>> getFreeResources(
+            @RequestParam String type,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime time) {
+        logger.debug("GET /resources/free - Fetching free resources of type {} at {}", type, time);
+        try {
+            Resource.ResourceType resourceType = Resource.ResourceType.valueOf(type.toUpperCase());
+            return ResponseEntity.ok(resourceService.getFreeResources(resourceType, time));
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid resource type: {}", type);
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            logger.error("Error fetching free resources: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+}
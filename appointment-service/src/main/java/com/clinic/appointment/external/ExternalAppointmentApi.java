@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriComponentsBuilder;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -63,6 +64,32 @@ public class ExternalAppointmentApi {
         }
     }
 
+    // One page of a paginated feed. Unlike fetchAppointments, errors are thrown so that
+    // a failed page is not mistaken for the end of the feed.
+    public List<Appointment> fetchAppointmentsPage(int page, int size) {
+        String url = UriComponentsBuilder.fromHttpUrl(appointmentsApiUrl)
+                .queryParam("page", page)
+                .queryParam("size", size)
+                .toUriString();
+        logger.debug("Fetching appointments page from external API: {}", url);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Authorization", "Bearer " + apiKey);
+        headers.setContentType(MediaType.APPLICATION_JSON);
+
+        ResponseEntity<Appointment[]> response = restTemplate.exchange(
+                url,
+                HttpMethod.GET,
+                new HttpEntity<>(headers),
+                Appointment[].class
+        );
+
+        if (response.getStatusCode() != HttpStatus.OK) {
+            throw new IllegalStateException("External API returned status " + response.getStatusCode() + " for page " + page);
+        }
+        return response.getBody() != null ? Arrays.asList(response.getBody()) : Collections.emptyList();
+    }
+
     public Appointment createAppointment(Appointment appointment) {
         try {
             logger.info("Creating appointment via external API for client: {}", appointment.getClientId());
@@ -1,6 +1,7 @@
 package com.clinic.appointment.model;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import javax.persistence.*;
@@ -12,6 +13,9 @@ import java.time.LocalDateTime;
 @Table(name = "appointments")
 public class Appointment {
 
+    // How time is written in JSON, for entities and projected rows alike
+    public static final String TIME_PATTERN = "yyyy-MM-dd'T'HH:mm:ss";
+
     @Id
     private String id;
 
@@ -22,12 +26,20 @@ public class Appointment {
 
     @NotNull(message = "Appointment time is required")
     @Column(nullable = false)
-    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    @JsonFormat(pattern = TIME_PATTERN)
     private LocalDateTime time;
 
     @Column(length = 500)
     private String notes;
 
+    // Resources the appointment occupies; "any" when booking picks a free one. Without a
+    // practitioner the appointment is on the clinic-wide timeline, one per slot.
+    @Column(name = "practitioner_id")
+    private String practitionerId;
+
+    @Column(name = "room_id")
+    private String roomId;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private AppointmentStatus status = AppointmentStatus.SCHEDULED;
@@ -38,6 +50,21 @@ public class Appointment {
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
 
+    // Optimistic-locking token; also the basis for per-appointment ETags
+    @Version
+    @Column(columnDefinition = "bigint default 0")
+    private Long version;
+
+    // Fingerprint of the upstream record this row was last synced from; null for local-only rows
+    @JsonIgnore
+    @Column(name = "sync_hash")
+    private Long syncHash;
+
+    // When the reminder went out; set once, so a restart or a second instance never sends it again
+    @JsonIgnore
+    @Column(name = "reminded_at")
+    private LocalDateTime remindedAt;
+
     // Default constructor
     public Appointment() {
         this.createdAt = LocalDateTime.now();
@@ -97,6 +124,22 @@ public class Appointment {
         this.notes = notes;
     }
 
+    public String getPractitionerId() {
+        return practitionerId;
+    }
+
+    public void setPractitionerId(String practitionerId) {
+        this.practitionerId = practitionerId;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public void setRoomId(String roomId) {
+        this.roomId = roomId;
+    }
+
     public AppointmentStatus getStatus() {
         return status;
     }
@@ -121,6 +164,30 @@ public class Appointment {
         this.updatedAt = updatedAt;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+    public Long getSyncHash() {
+        return syncHash;
+    }
+
+    public void setSyncHash(Long syncHash) {
+        this.syncHash = syncHash;
+    }
+
+    public LocalDateTime getRemindedAt() {
+        return remindedAt;
+    }
+
+    public void setRemindedAt(LocalDateTime remindedAt) {
+        this.remindedAt = remindedAt;
+    }
+
     @Override
     public String toString() {
         return "Appointment{" +
@@ -128,9 +195,12 @@ public class Appointment {
                 ", clientId='" + clientId + '\'' +
                 ", time=" + time +
                 ", notes='" + notes + '\'' +
+                ", practitionerId='" + practitionerId + '\'' +
+                ", roomId='" + roomId + '\'' +
                 ", status=" + status +
                 ", createdAt=" + createdAt +
                 ", updatedAt=" + updatedAt +
+                ", version=" + version +
                 '}';
     }
 
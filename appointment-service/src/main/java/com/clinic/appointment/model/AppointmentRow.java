@@ -0,0 +1,46 @@
+package com.clinic.appointment.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Some of an appointment's fields by name, as projections (fields=), summaries and search
+// results return them. time stays a LocalDateTime for sorting and cursors, and is written
+// in the entity's own format, so a projected time reads the same as the full entity's.
+@JsonSerialize(using = AppointmentRow.Serializer.class)
+public class AppointmentRow extends LinkedHashMap<String, Object> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern(Appointment.TIME_PATTERN);
+
+    public static class Serializer extends StdSerializer<AppointmentRow> {
+
+        private static final long serialVersionUID = 1L;
+
+        public Serializer() {
+            super(AppointmentRow.class);
+        }
+
+        @Override
+        public void serialize(AppointmentRow row, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(row);
+            for (Map.Entry<String, Object> field : row.entrySet()) {
+                Object value = field.getValue();
+                if ("time".equals(field.getKey()) && value instanceof LocalDateTime) {
+                    gen.writeStringField(field.getKey(), TIME_FORMAT.format((LocalDateTime) value));
+                } else {
+                    provider.defaultSerializeField(field.getKey(), value, gen);
+                }
+            }
+            gen.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.clinic.appointment.model;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import javax.validation.constraints.NotNull;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+// Body of POST /appointments/bulk/status: moves every appointment matching all given
+// selectors to one status. At least one of date, from/to, clientId or ids is required.
+public class BulkStatusChange {
+
+    @NotNull(message = "Target status is required")
+    private Appointment.AppointmentStatus status;
+
+    // Shorthand for from = date 00:00, to = the next day 00:00
+    private LocalDate date;
+
+    // Half-open range: from <= time < to
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime from;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private LocalDateTime to;
+
+    private String clientId;
+
+    private List<String> ids;
+
+    // Only appointments currently in one of these statuses change; defaults to the open ones
+    // (SCHEDULED, CONFIRMED), so closed appointments are never reopened by accident. CANCELLED
+    // is only accepted when the target is CANCELLED too: a cancelled appointment holds no slot,
+    // and reopening one has to go through PUT, which reserves the slot and checks capacity.
+    private Set<Appointment.AppointmentStatus> fromStatuses;
+
+    public Appointment.AppointmentStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(Appointment.AppointmentStatus status) {
+        this.status = status;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public void setDate(LocalDate date) {
+        this.date = date;
+    }
+
+    public LocalDateTime getFrom() {
+        return from;
+    }
+
+    public void setFrom(LocalDateTime from) {
+        this.from = from;
+    }
+
+    public LocalDateTime getTo() {
+        return to;
+    }
+
+    public void setTo(LocalDateTime to) {
+        this.to = to;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public List<String> getIds() {
+        return ids;
+    }
+
+    public void setIds(List<String> ids) {
+        this.ids = ids;
+    }
+
+    public Set<Appointment.AppointmentStatus> getFromStatuses() {
+        return fromStatuses;
+    }
+
+    public void setFromStatuses(Set<Appointment.AppointmentStatus> fromStatuses) {
+        this.fromStatuses = fromStatuses;
+    }
+}
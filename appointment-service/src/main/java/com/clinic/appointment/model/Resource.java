@@ -0,0 +1,133 @@
+package com.clinic.appointment.model;
+
+import javax.persistence.*;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.time.LocalDateTime;
+
+// Something an appointment occupies: a practitioner or a room. Capacity is how many
+// appointments it takes at the same time, e.g. 1 for a practitioner, more for a group room.
+@Entity
+@Table(name = "resources")
+public class Resource {
+
+    // Given instead of an id when booking, to have a free resource of that type picked
+    public static final String ANY = "any";
+
+    @Id
+    private String id;
+
+    @NotBlank(message = "Resource name is required")
+    @Column(nullable = false)
+    private String name;
+
+    @NotNull(message = "Resource type is required")
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private ResourceType type;
+
+    @Min(value = 1, message = "Capacity must be at least 1")
+    @Column(nullable = false, columnDefinition = "integer default 1")
+    private int capacity = 1;
+
+    // Inactive resources keep their appointments but take no new ones
+    @Column(nullable = false, columnDefinition = "boolean default true")
+    private boolean active = true;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public Resource() {
+        this.createdAt = LocalDateTime.now();
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public Resource(String id, String name, ResourceType type, int capacity) {
+        this();
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.capacity = capacity;
+    }
+
+    @PreUpdate
+    public void preUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public ResourceType getType() {
+        return type;
+    }
+
+    public void setType(ResourceType type) {
+        this.type = type;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public void setActive(boolean active) {
+        this.active = active;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "Resource{" +
+                "id='" + id + '\'' +
+                ", name='" + name + '\'' +
+                ", type=" + type +
+                ", capacity=" + capacity +
+                ", active=" + active +
+                '}';
+    }
+
+    public enum ResourceType {
+        PRACTITIONER,
+        ROOM
+    }
+}
@@ -1,16 +1,18 @@
 package com.clinic.appointment.repository;
 
 import com.clinic.appointment.model.Appointment;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
-public interface AppointmentRepository extends JpaRepository<Appointment, String> {
+public interface AppointmentRepository extends JpaRepository<Appointment, String>, AppointmentRepositoryCustom {
 
     // Find appointments by client ID
     List<Appointment> findByClientId(String clientId);
@@ -27,12 +29,23 @@ public interface AppointmentRepository extends JpaRepository<Appointment, String
     List<Appointment> findAppointmentsBetween(@Param("startTime") LocalDateTime startTime, 
                                             @Param("endTime") LocalDateTime endTime);
 
+    // Everything from a point in time onwards, e.g. beyond the in-memory schedule window
+    @Query("SELECT a FROM Appointment a WHERE a.time >= :from ORDER BY a.time ASC")
+    List<Appointment> findAppointmentsFrom(@Param("from") LocalDateTime from);
+
+    // Appointments in the given statuses within [from, to), e.g. the open ones near now for the reminder timers
+    @Query("SELECT a FROM Appointment a WHERE a.status IN :statuses AND a.time >= :from AND a.time < :to ORDER BY a.time ASC")
+    List<Appointment> findByStatusInAndTimeFrom(@Param("statuses") Collection<Appointment.AppointmentStatus> statuses,
+                                                @Param("from") LocalDateTime from,
+                                                @Param("to") LocalDateTime to);
+
     // Find appointments by client ID and status
     List<Appointment> findByClientIdAndStatus(String clientId, Appointment.AppointmentStatus status);
 
-    // Find today's appointments
-    @Query("SELECT a FROM Appointment a WHERE DATE(a.time) = DATE(:date) ORDER BY a.time ASC")
-    List<Appointment> findAppointmentsByDate(@Param("date") LocalDateTime date);
+    // Find appointments on one day; a half-open range on the raw column so Postgres can prune partitions
+    @Query("SELECT a FROM Appointment a WHERE a.time >= :dayStart AND a.time < :dayEnd ORDER BY a.time ASC")
+    List<Appointment> findAppointmentsByDate(@Param("dayStart") LocalDateTime dayStart,
+                                             @Param("dayEnd") LocalDateTime dayEnd);
 
     // Find appointments for a specific client within date range
     @Query("SELECT a FROM Appointment a WHERE a.clientId = :clientId AND a.time BETWEEN :startTime AND :endTime ORDER BY a.time ASC")
@@ -43,7 +56,43 @@ public interface AppointmentRepository extends JpaRepository<Appointment, String
     // Count appointments by status
     long countByStatus(Appointment.AppointmentStatus status);
 
-    // Check if appointment exists at specific time (for conflict checking)
-    @Query("SELECT COUNT(a) > 0 FROM Appointment a WHERE a.time = :time AND a.status != 'CANCELLED'")
+    // Check if appointment exists at specific time (for conflict checking); only appointments
+    // without a practitioner share the clinic-wide timeline
+    @Query("SELECT COUNT(a) > 0 FROM Appointment a WHERE a.time = :time AND a.status != 'CANCELLED' AND a.practitionerId IS NULL")
     boolean existsByTimeAndNotCancelled(@Param("time") LocalDateTime time);
+
+    // Active appointments a practitioner or room has at one time, for the capacity check under the slot lock
+    @Query("SELECT COUNT(a) FROM Appointment a WHERE a.practitionerId = :resourceId AND a.time = :time AND a.status != 'CANCELLED'")
+    long countActiveForPractitionerAt(@Param("resourceId") String resourceId, @Param("time") LocalDateTime time);
+
+    @Query("SELECT COUNT(a) FROM Appointment a WHERE a.roomId = :resourceId AND a.time = :time AND a.status != 'CANCELLED'")
+    long countActiveForRoomAt(@Param("resourceId") String resourceId, @Param("time") LocalDateTime time);
+
+    // Start times of a practitioner's or room's active appointments within [from, to), for
+    // calendar reads outside the in-memory schedule view
+    @Query("SELECT a.time FROM Appointment a WHERE a.practitionerId = :resourceId AND a.time >= :from AND a.time < :to " +
+           "AND a.status != 'CANCELLED' ORDER BY a.time ASC")
+    List<LocalDateTime> findActiveTimesForPractitioner(@Param("resourceId") String resourceId,
+                                                       @Param("from") LocalDateTime from,
+                                                       @Param("to") LocalDateTime to);
+
+    @Query("SELECT a.time FROM Appointment a WHERE a.roomId = :resourceId AND a.time >= :from AND a.time < :to " +
+           "AND a.status != 'CANCELLED' ORDER BY a.time ASC")
+    List<LocalDateTime> findActiveTimesForRoom(@Param("resourceId") String resourceId,
+                                               @Param("from") LocalDateTime from,
+                                               @Param("to") LocalDateTime to);
+
+    // [id, syncHash] pairs for the given ids; sync change detection without loading entities
+    @Query("SELECT a.id, a.syncHash FROM Appointment a WHERE a.id IN :ids")
+    List<Object[]> findSyncHashes(@Param("ids") Collection<String> ids);
+
+    // Rows written after the given time; lets the schedule view pick up other instances' writes
+    @Query("SELECT a FROM Appointment a WHERE a.updatedAt > :since")
+    List<Appointment> findUpdatedSince(@Param("since") LocalDateTime since);
+
+    // Find closed appointments older than the cutoff, oldest first (for archiving)
+    @Query("SELECT a FROM Appointment a WHERE a.time < :cutoff AND a.status IN :statuses ORDER BY a.time ASC, a.id ASC")
+    List<Appointment> findArchivable(@Param("cutoff") LocalDateTime cutoff,
+                                     @Param("statuses") Collection<Appointment.AppointmentStatus> statuses,
+                                     Pageable pageable);
 }
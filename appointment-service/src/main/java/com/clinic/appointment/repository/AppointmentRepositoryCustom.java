@@ -0,0 +1,49 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.Appointment;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Column projections for list views (the fields= request parameter), bounded top-N reads,
+// set-based status changes, and per-client summaries
+public interface AppointmentRepositoryCustom {
+
+    // Everything the JSON representation exposes; syncHash stays internal
+    Set<String> PROJECTABLE_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "id", "clientId", "time", "notes", "practitionerId", "roomId", "status", "createdAt", "updatedAt", "version")));
+
+    // Selects only the given columns as scalar tuples, so no entity is instantiated or
+    // registered in the persistence context. Each row maps field name to value, in field order.
+    List<Map<String, Object>> findFields(List<String> fields, Specification<Appointment> filter, Sort sort);
+
+    // As above, but at most maxResults rows (0 for no limit)
+    List<Map<String, Object>> findFields(List<String> fields, Specification<Appointment> filter, Sort sort, int maxResults);
+
+    // The first maxResults entities matching the filter in the given order; the LIMIT goes to
+    // the database, so with a matching index only those rows are read
+    List<Appointment> findFirst(Specification<Appointment> filter, Sort sort, int maxResults);
+
+    // Moves every row in one of fromStatuses that matches all non-null filters to the new
+    // status in a single UPDATE ... RETURNING, bumping version and updated_at like an entity
+    // save would. from is inclusive, to exclusive. Returns the rows as they are now.
+    List<Appointment> updateStatus(Appointment.AppointmentStatus status,
+                                   Collection<Appointment.AppointmentStatus> fromStatuses,
+                                   LocalDateTime from, LocalDateTime to, String clientId,
+                                   Collection<String> ids, LocalDateTime now);
+
+    // A client's appointment counts by status (every status, zero included), their next open
+    // appointment after now, their last one at or before now that was not cancelled, and their
+    // most recent historyLimit appointments at or before now, newest first; all from one
+    // statement over the (client_id, time) index. Appointments are maps of the list view's
+    // fields. moreHistory tells whether there are older ones than the page.
+    Map<String, Object> summarizeClient(String clientId, LocalDateTime now, int historyLimit);
+}
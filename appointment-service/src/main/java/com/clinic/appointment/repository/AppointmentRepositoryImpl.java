@@ -0,0 +1,207 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.AppointmentRow;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AppointmentRepositoryImpl implements AppointmentRepositoryCustom {
+
+    private static final String SUMMARY_COLUMNS = "id, \"time\", notes, practitioner_id, room_id";
+
+    // One branch per part of the summary, each an index range on (client_id, time); the LIMITed
+    // branches stop after the rows they return
+    private static final String CLIENT_SUMMARY_SQL =
+            "(SELECT 'count' AS part, status, count(*) AS n, CAST(NULL AS varchar) AS id, CAST(NULL AS timestamp) AS \"time\", "
+            + "CAST(NULL AS varchar) AS notes, CAST(NULL AS varchar) AS practitioner_id, CAST(NULL AS varchar) AS room_id "
+            + "FROM appointments WHERE client_id = :clientId GROUP BY status)"
+            + " UNION ALL (SELECT 'next', status, NULL, " + SUMMARY_COLUMNS + " FROM appointments "
+            + "WHERE client_id = :clientId AND \"time\" > :now AND status IN ('SCHEDULED', 'CONFIRMED') ORDER BY \"time\" LIMIT 1)"
+            + " UNION ALL (SELECT 'last', status, NULL, " + SUMMARY_COLUMNS + " FROM appointments "
+            + "WHERE client_id = :clientId AND \"time\" <= :now AND status <> 'CANCELLED' ORDER BY \"time\" DESC LIMIT 1)"
+            + " UNION ALL (SELECT 'recent', status, NULL, " + SUMMARY_COLUMNS + " FROM appointments "
+            + "WHERE client_id = :clientId AND \"time\" <= :now ORDER BY \"time\" DESC, id DESC LIMIT :historyRows)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Map<String, Object>> findFields(List<String> fields, Specification<Appointment> filter, Sort sort) {
+        return findFields(fields, filter, sort, 0);
+    }
+
+    @Override
+    public List<Map<String, Object>> findFields(List<String> fields, Specification<Appointment> filter, Sort sort,
+                                                int maxResults) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Appointment> root = query.from(Appointment.class);
+
+        List<Selection<?>> selections = new ArrayList<>(fields.size());
+        for (String field : fields) {
+            if (!PROJECTABLE_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field);
+            }
+            selections.add(root.get(field).alias(field));
+        }
+        query.multiselect(selections);
+        if (filter != null) {
+            query.where(filter.toPredicate(root, query, cb));
+        }
+        if (sort != null && sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+
+        TypedQuery<Tuple> typed = entityManager.createQuery(query);
+        if (maxResults > 0) {
+            typed.setMaxResults(maxResults);
+        }
+        List<Tuple> tuples = typed.getResultList();
+        List<Map<String, Object>> rows = new ArrayList<>(tuples.size());
+        for (Tuple tuple : tuples) {
+            Map<String, Object> row = new AppointmentRow();
+            for (int i = 0; i < fields.size(); i++) {
+                row.put(fields.get(i), tuple.get(i));
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @Override
+    public List<Appointment> findFirst(Specification<Appointment> filter, Sort sort, int maxResults) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Appointment> query = cb.createQuery(Appointment.class);
+        Root<Appointment> root = query.from(Appointment.class);
+        if (filter != null) {
+            query.where(filter.toPredicate(root, query, cb));
+        }
+        if (sort != null && sort.isSorted()) {
+            query.orderBy(QueryUtils.toOrders(sort, root, cb));
+        }
+        return entityManager.createQuery(query).setMaxResults(maxResults).getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Appointment> updateStatus(Appointment.AppointmentStatus status,
+                                          Collection<Appointment.AppointmentStatus> fromStatuses,
+                                          LocalDateTime from, LocalDateTime to, String clientId,
+                                          Collection<String> ids, LocalDateTime now) {
+        // Native because JPQL has no RETURNING; the time bounds let Postgres prune partitions
+        StringBuilder sql = new StringBuilder("UPDATE appointments SET status = :status, "
+                + "version = COALESCE(version, 0) + 1, updated_at = :now WHERE status IN (:fromStatuses)");
+        if (from != null) {
+            sql.append(" AND \"time\" >= :from");
+        }
+        if (to != null) {
+            sql.append(" AND \"time\" < :to");
+        }
+        if (clientId != null) {
+            sql.append(" AND client_id = :clientId");
+        }
+        if (ids != null) {
+            sql.append(" AND id IN (:ids)");
+        }
+        sql.append(" RETURNING *");
+
+        List<String> statusNames = new ArrayList<>(fromStatuses.size());
+        for (Appointment.AppointmentStatus fromStatus : fromStatuses) {
+            statusNames.add(fromStatus.name());
+        }
+        Query query = entityManager.createNativeQuery(sql.toString(), Appointment.class)
+                .setParameter("status", status.name())
+                .setParameter("now", now)
+                .setParameter("fromStatuses", statusNames);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (clientId != null) {
+            query.setParameter("clientId", clientId);
+        }
+        if (ids != null) {
+            query.setParameter("ids", ids);
+        }
+        return query.getResultList();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> summarizeClient(String clientId, LocalDateTime now, int historyLimit) {
+        // One row more than the page, to tell whether there is older history
+        List<Object[]> rows = entityManager.createNativeQuery(CLIENT_SUMMARY_SQL)
+                .setParameter("clientId", clientId)
+                .setParameter("now", now)
+                .setParameter("historyRows", historyLimit + 1)
+                .getResultList();
+
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Appointment.AppointmentStatus status : Appointment.AppointmentStatus.values()) {
+            counts.put(status.name(), 0L);
+        }
+        long total = 0;
+        Map<String, Object> next = null;
+        Map<String, Object> last = null;
+        List<Map<String, Object>> recent = new ArrayList<>();
+        boolean moreHistory = false;
+        for (Object[] row : rows) {
+            String part = (String) row[0];
+            if ("count".equals(part)) {
+                long n = ((Number) row[2]).longValue();
+                counts.put((String) row[1], n);
+                total += n;
+            } else if ("next".equals(part)) {
+                next = summaryAppointment(clientId, row);
+            } else if ("last".equals(part)) {
+                last = summaryAppointment(clientId, row);
+            } else if (recent.size() < historyLimit) {
+                recent.add(summaryAppointment(clientId, row));
+            } else {
+                moreHistory = true;
+            }
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("clientId", clientId);
+        summary.put("total", total);
+        summary.put("counts", counts);
+        summary.put("next", next);
+        summary.put("last", last);
+        summary.put("recent", recent);
+        summary.put("moreHistory", moreHistory);
+        return summary;
+    }
+
+    private static Map<String, Object> summaryAppointment(String clientId, Object[] row) {
+        Map<String, Object> appointment = new AppointmentRow();
+        appointment.put("id", row[3]);
+        appointment.put("clientId", clientId);
+        appointment.put("time", row[4] != null ? ((Timestamp) row[4]).toLocalDateTime() : null);
+        appointment.put("notes", row[5]);
+        appointment.put("practitionerId", row[6]);
+        appointment.put("roomId", row[7]);
+        appointment.put("status", row[1]);
+        return appointment;
+    }
+}
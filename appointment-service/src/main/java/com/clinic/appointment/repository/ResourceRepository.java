@@ -0,0 +1,16 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.Resource;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ResourceRepository extends JpaRepository<Resource, String> {
+
+    // Bookable resources of one type, e.g. the candidates for an "any practitioner" booking
+    List<Resource> findByTypeAndActiveTrueOrderByIdAsc(Resource.ResourceType type);
+
+    List<Resource> findByTypeOrderByIdAsc(Resource.ResourceType type);
+}
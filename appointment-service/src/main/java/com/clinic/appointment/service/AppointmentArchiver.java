@@ -0,0 +1,105 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.archive.AppointmentArchive;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.repository.AppointmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Moves closed appointments past the retention threshold out of Postgres and into the archive tier
+@Component
+public class AppointmentArchiver {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentArchiver.class);
+
+    private static final List<Appointment.AppointmentStatus> CLOSED_STATUSES = Arrays.asList(
+            Appointment.AppointmentStatus.COMPLETED,
+            Appointment.AppointmentStatus.CANCELLED,
+            Appointment.AppointmentStatus.NO_SHOW);
+
+    private final AppointmentRepository appointmentRepository;
+    private final AppointmentArchive appointmentArchive;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${appointments.archive.after-months:24}")
+    private int afterMonths;
+
+    @Value("${appointments.archive.batch-size:5000}")
+    private int batchSize;
+
+    public AppointmentArchiver(AppointmentRepository appointmentRepository, AppointmentArchive appointmentArchive,
+                               ApplicationEventPublisher eventPublisher, TransactionTemplate transactionTemplate) {
+        this.appointmentRepository = appointmentRepository;
+        this.appointmentArchive = appointmentArchive;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @Scheduled(cron = "${appointments.archive.cron:0 45 2 * * *}")
+    public void archiveClosedAppointments() {
+        if (!appointmentArchive.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime cutoff = LocalDate.now().minusMonths(afterMonths).atStartOfDay();
+        logger.info("Starting archive of closed appointments before {}", cutoff);
+
+        int archivedCount = 0;
+        try {
+            Integer moved;
+            do {
+                moved = transactionTemplate.execute(status -> archiveBatch(cutoff));
+                archivedCount += moved != null ? moved : 0;
+            } while (moved != null && moved > 0);
+
+            logger.info("Archive completed. Archived appointments: {}", archivedCount);
+        } catch (Exception e) {
+            logger.error("Error during appointment archiving after {} appointments: {}", archivedCount, e.getMessage(), e);
+        }
+    }
+
+    // The segment is written before the rows are deleted, so a crash can only leave
+    // a row in both tiers (reads prefer the live copy), never in neither
+    private int archiveBatch(LocalDateTime cutoff) {
+        List<Appointment> batch = appointmentRepository.findArchivable(cutoff, CLOSED_STATUSES, PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        Path segment;
+        try {
+            segment = appointmentArchive.append(batch);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write archive segment: " + e.getMessage(), e);
+        }
+
+        try {
+            appointmentRepository.deleteAllByIdInBatch(batch.stream().map(Appointment::getId).collect(Collectors.toList()));
+        } catch (RuntimeException e) {
+            try {
+                appointmentArchive.discard(segment);
+            } catch (IOException discardError) {
+                e.addSuppressed(discardError);
+            }
+            throw e;
+        }
+
+        eventPublisher.publishEvent(AppointmentsChangedEvent.removed(batch));
+        return batch.size();
+    }
+}
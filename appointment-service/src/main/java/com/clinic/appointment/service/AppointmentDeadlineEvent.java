@@ -0,0 +1,37 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+
+// Published by AppointmentTimers after the change has committed, on the timer thread.
+// Exactly one instance publishes each event; AppointmentNotifier sends it on to clients.
+public class AppointmentDeadlineEvent {
+
+    public enum Kind {
+        // The appointment is coming up; remindedAt is now set
+        REMINDER,
+        // The appointment is over and was moved to COMPLETED or NO_SHOW
+        CLOSED
+    }
+
+    private final Kind kind;
+    private final Appointment appointment;
+
+    public AppointmentDeadlineEvent(Kind kind, Appointment appointment) {
+        this.kind = kind;
+        this.appointment = appointment;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Appointment getAppointment() {
+        return appointment;
+    }
+
+    @Override
+    public String toString() {
+        return kind + " " + appointment.getId() + " (client " + appointment.getClientId() + ", "
+                + appointment.getTime() + ", " + appointment.getStatus() + ")";
+    }
+}
@@ -0,0 +1,80 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Sends the reminders and closings fired by AppointmentTimers on to whatever notifies
+// clients: each event is POSTed as JSON to the webhook url. Without a url they are only
+// logged on the "notifications" logger. Runs on the timer thread, so the webhook gets short
+// timeouts, and a failed delivery is logged and not retried (remindedAt is already set).
+@Component
+public class AppointmentNotifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentNotifier.class);
+    private static final Logger notifications = LoggerFactory.getLogger("notifications");
+
+    private final RestTemplate restTemplate;
+
+    @Value("${appointments.notifications.webhook-url:}")
+    private String webhookUrl;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public AppointmentNotifier(RestTemplateBuilder restTemplateBuilder,
+                               @Value("${appointments.notifications.timeout-ms:2000}") long timeoutMillis) {
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(timeoutMillis))
+                .setReadTimeout(Duration.ofMillis(timeoutMillis))
+                .build();
+    }
+
+    @EventListener
+    public void onDeadline(AppointmentDeadlineEvent event) {
+        Map<String, Object> payload = payload(event);
+        if (webhookUrl == null || webhookUrl.isEmpty()) {
+            notifications.info("{}", payload);
+            return;
+        }
+        try {
+            restTemplate.postForEntity(webhookUrl, payload, Void.class);
+            delivered.incrementAndGet();
+        } catch (RuntimeException e) {
+            failed.incrementAndGet();
+            logger.warn("Could not deliver {} notification for appointment {}: {}", event.getKind(),
+                    event.getAppointment().getId(), e.getMessage());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("webhook", webhookUrl != null && !webhookUrl.isEmpty());
+        stats.put("delivered", delivered.get());
+        stats.put("failed", failed.get());
+        return stats;
+    }
+
+    private static Map<String, Object> payload(AppointmentDeadlineEvent event) {
+        Appointment appointment = event.getAppointment();
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("kind", event.getKind());
+        payload.put("appointmentId", appointment.getId());
+        payload.put("clientId", appointment.getClientId());
+        payload.put("time", String.valueOf(appointment.getTime()));
+        payload.put("status", appointment.getStatus());
+        payload.put("practitionerId", appointment.getPractitionerId());
+        payload.put("roomId", appointment.getRoomId());
+        return payload;
+    }
+}
@@ -0,0 +1,66 @@
+package com.clinic.appointment.service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+// One page of a list in (time, id) order. The cursor is the position of the last item,
+// encoded opaquely; the next page starts strictly after it, so rows inserted or removed
+// before that position never shift later pages the way an offset would.
+public class AppointmentPage {
+
+    private final List<?> items;
+    private final String nextCursor;
+
+    public AppointmentPage(List<?> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<?> getItems() {
+        return items;
+    }
+
+    // null on the last page
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public static String encodeCursor(LocalDateTime time, String id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((time + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static Position decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Position(LocalDateTime.parse(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public static final class Position {
+        private final LocalDateTime time;
+        private final String id;
+
+        private Position(LocalDateTime time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        public LocalDateTime getTime() {
+            return time;
+        }
+
+        public String getId() {
+            return id;
+        }
+    }
+}
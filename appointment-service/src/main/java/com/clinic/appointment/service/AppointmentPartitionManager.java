@@ -0,0 +1,203 @@
+package com.clinic.appointment.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.Set;
+import java.util.TreeSet;
+
+// Keeps the appointments table range-partitioned by month on "time", so that
+// upcoming and per-day queries only touch the partitions they need.
+// Depends on the entity manager factory so Hibernate's schema update has run first.
+@Component
+@DependsOn("entityManagerFactory")
+public class AppointmentPartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentPartitionManager.class);
+
+    private static final String TABLE = "appointments";
+    private static final String PARTITION_PREFIX = "appointments_p";
+    private static final String DEFAULT_PARTITION = "appointments_pdefault";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // Shared by all instances so only one of them changes partitions at a time
+    private static final long LOCK_KEY = 7_301_028L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${appointments.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${appointments.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    // 0 keeps every partition attached
+    @Value("${appointments.partitioning.retention-months:0}")
+    private int retentionMonths;
+
+    public AppointmentPartitionManager(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Appointment partitioning is disabled");
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                lock();
+                if (!isPartitioned()) {
+                    migrateToPartitionedTable();
+                }
+                createPagingIndexes();
+            });
+        } catch (Exception e) {
+            logger.error("Error converting appointments to a partitioned table: {}", e.getMessage(), e);
+            return;
+        }
+
+        maintainPartitions();
+    }
+
+    // Runs nightly: pre-creates the coming months and detaches expired ones
+    @Scheduled(cron = "${appointments.partitioning.cron:0 15 2 * * *}")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                lock();
+                if (!isPartitioned()) {
+                    logger.warn("Appointments table is not partitioned, skipping partition maintenance");
+                    return;
+                }
+
+                Set<YearMonth> attached = attachedPartitions();
+                YearMonth current = YearMonth.now();
+
+                for (int i = 0; i <= monthsAhead; i++) {
+                    YearMonth month = current.plusMonths(i);
+                    if (!attached.contains(month)) {
+                        createPartition(month);
+                    }
+                }
+
+                if (retentionMonths > 0) {
+                    YearMonth oldestKept = current.minusMonths(retentionMonths);
+                    for (YearMonth month : attached) {
+                        if (month.isBefore(oldestKept)) {
+                            jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partitionName(month));
+                            logger.info("Detached appointment partition {}", partitionName(month));
+                        }
+                    }
+                }
+            });
+        } catch (Exception e) {
+            logger.error("Error during appointment partition maintenance: {}", e.getMessage(), e);
+        }
+    }
+
+    private void lock() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + LOCK_KEY + ")");
+    }
+
+    private boolean isPartitioned() {
+        String kind = jdbcTemplate.queryForObject(
+                "SELECT c.relkind::text FROM pg_class c WHERE c.oid = to_regclass(?)", String.class, TABLE);
+        return "p".equals(kind);
+    }
+
+    // One-off rewrite of the plain table Hibernate created into a partitioned one.
+    // The primary key has to include the partition key, so it becomes (id, time).
+    private void migrateToPartitionedTable() {
+        logger.info("Converting {} to a table partitioned by month", TABLE);
+
+        jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+
+        Timestamp earliest = jdbcTemplate.queryForObject("SELECT MIN(\"time\") FROM " + TABLE, Timestamp.class);
+        YearMonth current = YearMonth.now();
+        YearMonth first = earliest != null && YearMonth.from(earliest.toLocalDateTime()).isBefore(current)
+                ? YearMonth.from(earliest.toLocalDateTime())
+                : current;
+
+        String staging = TABLE + "_partitioned";
+        jdbcTemplate.execute("CREATE TABLE " + staging + " (LIKE " + TABLE + " INCLUDING DEFAULTS) PARTITION BY RANGE (\"time\")");
+        jdbcTemplate.execute("ALTER TABLE " + staging + " ADD PRIMARY KEY (id, \"time\")");
+        // Catches rows beyond the pre-created months; they are moved out when their month is created
+        jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + staging + " DEFAULT");
+        for (YearMonth month = first; !month.isAfter(current.plusMonths(monthsAhead)); month = month.plusMonths(1)) {
+            jdbcTemplate.execute("CREATE TABLE " + partitionName(month) + " PARTITION OF " + staging
+                    + " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+        }
+
+        int copied = jdbcTemplate.update("INSERT INTO " + staging + " SELECT * FROM " + TABLE);
+        jdbcTemplate.execute("DROP TABLE " + TABLE);
+        jdbcTemplate.execute("ALTER TABLE " + staging + " RENAME TO " + TABLE);
+        jdbcTemplate.execute("CREATE INDEX appointments_time_idx ON " + TABLE + " (\"time\")");
+        jdbcTemplate.execute("CREATE INDEX appointments_client_time_idx ON " + TABLE + " (client_id, \"time\")");
+
+        logger.info("Partitioned {} from {}, copied {} appointments", TABLE, first, copied);
+    }
+
+    // Keyset pages of upcoming appointments read in (time, id) order and stop after LIMIT rows;
+    // the status index serves the same pages filtered by status. Created on the parent, so
+    // Postgres builds them on every partition, including ones attached later.
+    private void createPagingIndexes() {
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS appointments_time_id_idx ON " + TABLE + " (\"time\", id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS appointments_status_time_id_idx ON " + TABLE
+                + " (status, \"time\", id)");
+    }
+
+    private Set<YearMonth> attachedPartitions() {
+        Set<YearMonth> months = new TreeSet<>();
+        for (String name : jdbcTemplate.queryForList(
+                "SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = to_regclass(?)", String.class, TABLE)) {
+            String suffix = name.substring(Math.min(name.length(), PARTITION_PREFIX.length()));
+            if (name.startsWith(PARTITION_PREFIX) && suffix.matches("\\d{6}")) {
+                months.add(YearMonth.parse(suffix, SUFFIX));
+            }
+        }
+        return months;
+    }
+
+    // Rows for this month may already sit in the default partition, so they are
+    // moved into the new table before it is attached
+    private void createPartition(YearMonth month) {
+        String name = partitionName(month);
+        Timestamp from = Timestamp.valueOf(month.atDay(1).atStartOfDay());
+        Timestamp to = Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay());
+
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+        int moved = jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION
+                + " WHERE \"time\" >= ? AND \"time\" < ?", from, to);
+        if (moved > 0) {
+            jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE \"time\" >= ? AND \"time\" < ?", from, to);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+
+        logger.info("Created appointment partition {} ({} rows moved from default)", name, moved);
+    }
+
+    private String partitionName(YearMonth month) {
+        return PARTITION_PREFIX + month.format(SUFFIX);
+    }
+}
@@ -0,0 +1,318 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.AppointmentRow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Full-text search over appointment notes, through a GIN index on a stored tsvector column
+// (notes_search). Ranking reads the stored vector instead of parsing every matching note
+// again, which is most of the cost of a query that matches many rows. The column is kept by
+// a trigger rather than declared GENERATED, because partitions are made with
+// CREATE TABLE ... LIKE and filled with INSERT ... SELECT *, which do not carry a generated
+// column; a trigger and an index on the parent also reach partitions attached later. Rows
+// written before the column existed are filled in the background after startup, a month at a
+// time, and do not match until then. Queries use web search syntax ("quoted phrases", or,
+// -excluded) and come back best match first, with a highlighted excerpt. Archived
+// appointments are not searched. Runs after the partition manager, whose one-off migration
+// replaces the table (and with it the trigger).
+//
+// A row trigger on a partitioned table needs PostgreSQL 13. On an older server, or if the
+// setup fails otherwise, search reports itself unavailable instead of answering from a
+// column nothing maintains.
+@Component
+@DependsOn({"entityManagerFactory", "appointmentPartitionManager"})
+public class AppointmentSearch {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentSearch.class);
+
+    private static final String COLUMN = "notes_search";
+    private static final String INDEX = "appointments_notes_search_idx";
+    private static final String TRIGGER = "appointments_notes_search";
+
+    private static final int MIN_SERVER_VERSION = 130000;
+
+    private final JdbcTemplate jdbcTemplate;
+    // Validated in init(); the index and every query must use the same configuration
+    private final String config;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+    private final AtomicLong slowest = new AtomicLong();
+    private final AtomicLong backfilled = new AtomicLong();
+    private volatile boolean backfillDone;
+    private volatile boolean available;
+    private volatile String unavailableReason = "not set up yet";
+
+    @Value("${appointments.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${appointments.search.default-limit:20}")
+    private int defaultLimit;
+
+    @Value("${appointments.search.max-limit:100}")
+    private int maxLimit;
+
+    public AppointmentSearch(JdbcTemplate jdbcTemplate, @Value("${appointments.search.config:english}") String config) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.config = config;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            unavailableReason = "disabled";
+            logger.info("Appointment search is disabled");
+            return;
+        }
+        if (!config.matches("[a-z_]+")) {
+            throw new IllegalStateException("Invalid text search configuration: " + config);
+        }
+        try {
+            Integer serverVersion = jdbcTemplate.queryForObject("SELECT current_setting('server_version_num')::int", Integer.class);
+            if (serverVersion == null || serverVersion < MIN_SERVER_VERSION) {
+                unavailableReason = "needs PostgreSQL 13 or later, server is " + serverVersion;
+                logger.error("Appointment notes search is unavailable: the notes trigger on the partitioned table {}",
+                        unavailableReason);
+                return;
+            }
+            jdbcTemplate.execute("ALTER TABLE appointments ADD COLUMN IF NOT EXISTS " + COLUMN + " tsvector");
+            jdbcTemplate.execute("CREATE OR REPLACE FUNCTION index_appointment_notes() RETURNS trigger AS $$ BEGIN "
+                    + "NEW." + COLUMN + " := " + document("NEW.notes") + "; RETURN NEW; END $$ LANGUAGE plpgsql");
+            Integer triggers = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_trigger WHERE tgname = ? AND tgrelid = 'appointments'::regclass", Integer.class, TRIGGER);
+            if (triggers == null || triggers == 0) {
+                jdbcTemplate.execute("CREATE TRIGGER " + TRIGGER + " BEFORE INSERT OR UPDATE OF notes ON appointments "
+                        + "FOR EACH ROW EXECUTE PROCEDURE index_appointment_notes()");
+                logger.info("Created the appointment notes search trigger");
+            }
+            // Built on every partition; later partitions get it when they are attached
+            long start = System.nanoTime();
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + INDEX + " ON appointments USING GIN (" + COLUMN + ")");
+            logger.info("Appointment notes search index ready in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            available = true;
+            unavailableReason = null;
+        } catch (RuntimeException e) {
+            unavailableReason = "setup failed: " + e.getMessage();
+            logger.error("Appointment notes search is unavailable, could not set it up: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startBackfill() {
+        if (!available) {
+            return;
+        }
+        Thread thread = new Thread(this::backfill, "notes-search-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // One UPDATE per month of rows, so no single transaction holds locks on the whole table.
+    // Safe to run on several instances at once: a row filled by one is skipped by the others.
+    private void backfill() {
+        try {
+            Map<String, Object> range = jdbcTemplate.queryForMap(
+                    "SELECT min(\"time\") AS first, max(\"time\") AS last FROM appointments WHERE " + COLUMN + " IS NULL");
+            Timestamp first = (Timestamp) range.get("first");
+            Timestamp last = (Timestamp) range.get("last");
+            if (first != null) {
+                logger.info("Indexing notes of appointments from {} to {} for search", first, last);
+                long start = System.nanoTime();
+                LocalDateTime month = first.toLocalDateTime().toLocalDate().withDayOfMonth(1).atStartOfDay();
+                for (; !month.isAfter(last.toLocalDateTime()); month = month.plusMonths(1)) {
+                    backfilled.addAndGet(jdbcTemplate.update("UPDATE appointments SET " + COLUMN + " = " + document("notes")
+                            + " WHERE \"time\" >= ? AND \"time\" < ? AND " + COLUMN + " IS NULL",
+                            Timestamp.valueOf(month), Timestamp.valueOf(month.plusMonths(1))));
+                }
+                logger.info("Indexed notes of {} appointments for search in {} s", backfilled.get(),
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+            }
+            backfillDone = true;
+        } catch (RuntimeException e) {
+            logger.error("Could not index the notes of existing appointments, they will not be found until restart: {}",
+                    e.getMessage());
+        }
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    // Requested page size, defaulted and capped
+    public int pageLimit(Integer requested) {
+        if (requested == null) {
+            return defaultLimit;
+        }
+        if (requested < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        return Math.min(requested, maxLimit);
+    }
+
+    // One page of appointments whose notes match the query, best match first (then newest),
+    // optionally only in [from, to), in the given statuses, or for one client. The next page
+    // starts strictly after the cursor (the last result's rank, time and id), like the upcoming
+    // pages, so appointments added meanwhile do not shift it. limit + 1 rows are read to tell
+    // whether there is a next page.
+    public AppointmentPage search(String query, LocalDateTime from, LocalDateTime to,
+                                  Collection<Appointment.AppointmentStatus> statuses, String clientId,
+                                  String cursor, int limit) {
+        if (!available) {
+            throw new IllegalStateException("Appointment search is unavailable: " + unavailableReason);
+        }
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("q must not be empty");
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+
+        StringBuilder matches = new StringBuilder("SELECT a.id, a.client_id, a.\"time\", a.notes, a.practitioner_id, a.room_id, ")
+                .append("a.status, ts_rank_cd(a.").append(COLUMN).append(", q.query) AS rank, q.query ")
+                .append("FROM appointments a, websearch_to_tsquery('").append(config).append("', ?) AS q(query) ")
+                .append("WHERE a.").append(COLUMN).append(" @@ q.query");
+        List<Object> args = new ArrayList<>();
+        args.add(query);
+        if (from != null) {
+            matches.append(" AND a.\"time\" >= ?");
+            args.add(Timestamp.valueOf(from));
+        }
+        if (to != null) {
+            matches.append(" AND a.\"time\" < ?");
+            args.add(Timestamp.valueOf(to));
+        }
+        if (statuses != null && !statuses.isEmpty()) {
+            matches.append(" AND a.status IN (").append(String.join(", ", Collections.nCopies(statuses.size(), "?"))).append(")");
+            for (Appointment.AppointmentStatus status : statuses) {
+                args.add(status.name());
+            }
+        }
+        if (clientId != null) {
+            matches.append(" AND a.client_id = ?");
+            args.add(clientId);
+        }
+
+        StringBuilder page = new StringBuilder("SELECT * FROM (").append(matches).append(") m");
+        if (cursor != null) {
+            Position after = decodeCursor(cursor);
+            page.append(" WHERE rank < ? OR (rank = ? AND (\"time\", id) < (?, ?))");
+            args.add(after.rank);
+            args.add(after.rank);
+            args.add(Timestamp.valueOf(after.time));
+            args.add(after.id);
+        }
+        page.append(" ORDER BY rank DESC, \"time\" DESC, id DESC LIMIT ?");
+        args.add(limit + 1);
+
+        // The excerpt is only made for the rows on the page
+        String sql = "SELECT id, client_id, \"time\", notes, practitioner_id, room_id, status, rank, ts_headline('"
+                + config + "', coalesce(notes, ''), query, 'MaxFragments=2, MinWords=5, MaxWords=15') AS headline FROM ("
+                + page + ") p ORDER BY rank DESC, \"time\" DESC, id DESC";
+
+        long start = System.nanoTime();
+        List<Map<String, Object>> results = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> result = new AppointmentRow();
+            result.put("id", rs.getString("id"));
+            result.put("clientId", rs.getString("client_id"));
+            result.put("time", rs.getTimestamp("time").toLocalDateTime());
+            result.put("notes", rs.getString("notes"));
+            result.put("practitionerId", rs.getString("practitioner_id"));
+            result.put("roomId", rs.getString("room_id"));
+            result.put("status", rs.getString("status"));
+            result.put("rank", rs.getFloat("rank"));
+            result.put("headline", rs.getString("headline"));
+            return result;
+        }, args.toArray());
+        record(System.nanoTime() - start);
+
+        String nextCursor = null;
+        if (results.size() > limit) {
+            results = new ArrayList<>(results.subList(0, limit));
+            Map<String, Object> last = results.get(limit - 1);
+            nextCursor = encodeCursor((Float) last.get("rank"), (LocalDateTime) last.get("time"), (String) last.get("id"));
+        }
+        logger.debug("Search for '{}' returned {} appointments (more: {})", query, results.size(), nextCursor != null);
+        return new AppointmentPage(results, nextCursor);
+    }
+
+    public Map<String, Object> getStats() {
+        long count = searches.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("available", available);
+        if (!available) {
+            stats.put("unavailableReason", unavailableReason);
+        }
+        stats.put("config", config);
+        stats.put("backfilled", backfilled.get());
+        stats.put("backfillDone", backfillDone);
+        stats.put("searches", count);
+        stats.put("averageMillis", count == 0 ? 0.0 : totalMicros.get() / 1000.0 / count);
+        stats.put("slowestMillis", slowest.get() / 1000.0);
+        return stats;
+    }
+
+    private void record(long nanos) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+        searches.incrementAndGet();
+        totalMicros.addAndGet(micros);
+        slowest.accumulateAndGet(micros, Math::max);
+    }
+
+    private String document(String column) {
+        return "to_tsvector('" + config + "', coalesce(" + column + ", ''))";
+    }
+
+    static String encodeCursor(float rank, LocalDateTime time, String id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((rank + "|" + time + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Position decodeCursor(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = decoded.split("\\|", 3);
+            if (parts.length < 3) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return new Position(Float.parseFloat(parts[0]), LocalDateTime.parse(parts[1]), parts[2]);
+        } catch (DateTimeParseException e) {
+            // A bad rank is a NumberFormatException, itself an IllegalArgumentException
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    static final class Position {
+        final float rank;
+        final LocalDateTime time;
+        final String id;
+
+        Position(float rank, LocalDateTime time, String id) {
+            this.rank = rank;
+            this.time = time;
+            this.id = id;
+        }
+    }
+}
@@ -1,18 +1,51 @@
 package com.clinic.appointment.service;
 
+import com.clinic.appointment.archive.AppointmentArchive;
 import com.clinic.appointment.external.ExternalAppointmentApi;
 import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.AppointmentRow;
+import com.clinic.appointment.model.BulkStatusChange;
+import com.clinic.appointment.model.Resource;
 import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.common.sync.SyncCoordinator;
+import com.clinic.common.sync.SyncShard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 @Service
 @Transactional
@@ -20,46 +53,412 @@ public class AppointmentService {
 
     private static final Logger logger = LoggerFactory.getLogger(AppointmentService.class);
 
+    private static final Sort BY_TIME = Sort.by("time");
+    private static final Sort BY_TIME_AND_ID = Sort.by("time", "id");
+
     private final AppointmentRepository appointmentRepository;
     private final ExternalAppointmentApi externalAppointmentApi;
-
-    public AppointmentService(AppointmentRepository appointmentRepository, ExternalAppointmentApi externalAppointmentApi) {
+    private final ApplicationEventPublisher eventPublisher;
+    private final AppointmentArchive appointmentArchive;
+    private final SyncCoordinator syncCoordinator;
+    private final AppointmentSyncPipeline syncPipeline;
+    private final HotQueryCache hotQueryCache;
+    private final ScheduleView scheduleView;
+    private final AppointmentTimers appointmentTimers;
+    private final AppointmentNotifier appointmentNotifier;
+    private final SlotReservations slotReservations;
+    private final ResourceService resourceService;
+    private final ClientDirectory clientDirectory;
+    private final ClientSummaryCache clientSummaries;
+    private final UtilizationAnalytics utilizationAnalytics;
+    private final AppointmentSearch appointmentSearch;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${appointments.upcoming.default-limit:50}")
+    private int defaultPageLimit;
+
+    @Value("${appointments.upcoming.max-limit:500}")
+    private int maxPageLimit;
+
+    @Value("${appointments.client-summary.history-default:10}")
+    private int defaultHistoryLimit;
+
+    // Also how much history a cached summary holds
+    @Value("${appointments.client-summary.history-max:50}")
+    private int maxHistoryLimit;
+
+    @Value("${appointments.bulk.max-ids:5000}")
+    private int maxBulkIds;
+
+    @Value("${appointments.booking.max-retries:3}")
+    private int maxOptimisticRetries;
+
+    @Value("${appointments.booking.retry-backoff-ms:20}")
+    private long retryBackoffMillis;
+
+    private final AtomicLong optimisticRetries = new AtomicLong();
+
+    public AppointmentService(AppointmentRepository appointmentRepository, ExternalAppointmentApi externalAppointmentApi,
+                              ApplicationEventPublisher eventPublisher, AppointmentArchive appointmentArchive,
+                              SyncCoordinator syncCoordinator, AppointmentSyncPipeline syncPipeline,
+                              HotQueryCache hotQueryCache, ScheduleView scheduleView,
+                              AppointmentTimers appointmentTimers, AppointmentNotifier appointmentNotifier,
+                              SlotReservations slotReservations,
+                              ResourceService resourceService, ClientDirectory clientDirectory,
+                              ClientSummaryCache clientSummaries, UtilizationAnalytics utilizationAnalytics,
+                              AppointmentSearch appointmentSearch, TransactionTemplate transactionTemplate) {
         this.appointmentRepository = appointmentRepository;
         this.externalAppointmentApi = externalAppointmentApi;
+        this.eventPublisher = eventPublisher;
+        this.appointmentArchive = appointmentArchive;
+        this.syncCoordinator = syncCoordinator;
+        this.syncPipeline = syncPipeline;
+        this.hotQueryCache = hotQueryCache;
+        this.scheduleView = scheduleView;
+        this.appointmentTimers = appointmentTimers;
+        this.appointmentNotifier = appointmentNotifier;
+        this.slotReservations = slotReservations;
+        this.resourceService = resourceService;
+        this.clientDirectory = clientDirectory;
+        this.clientSummaries = clientSummaries;
+        this.utilizationAnalytics = utilizationAnalytics;
+        this.appointmentSearch = appointmentSearch;
+        this.transactionTemplate = transactionTemplate;
     }
 
+    @Transactional(readOnly = true)
     public List<Appointment> getAllAppointments() {
-        logger.info("Fetching all appointments from database");
+        logger.debug("Fetching all appointments from database");
         return appointmentRepository.findAll();
     }
 
+    @Transactional(readOnly = true)
     public List<Appointment> getUpcomingAppointments() {
-        logger.info("Fetching upcoming appointments");
-        return appointmentRepository.findUpcomingAppointments(LocalDateTime.now());
+        return getUpcomingAppointments(upcomingCutoff());
+    }
+
+    // Cutoff is passed in so the caller can tag the response with the same instant
+    @Transactional(readOnly = true)
+    public List<Appointment> getUpcomingAppointments(LocalDateTime after) {
+        return hotQueryCache.get("upcoming-" + after, () -> {
+            ScheduleView.Tail tail = scheduleView.after(after);
+            if (tail == null) {
+                logger.debug("Fetching upcoming appointments after {}", after);
+                return Collections.unmodifiableList(appointmentRepository.findUpcomingAppointments(after));
+            }
+            logger.debug("Fetching upcoming appointments after {} from the schedule view, database from {}",
+                    after, tail.getWindowEnd());
+            List<Appointment> upcoming = new ArrayList<>(tail.getAppointments());
+            upcoming.addAll(appointmentRepository.findAppointmentsFrom(tail.getWindowEnd()));
+            return Collections.unmodifiableList(upcoming);
+        });
     }
 
+    // Truncated to the minute so that one ETag covers one result set per collection version
+    public LocalDateTime upcomingCutoff() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    @Transactional(readOnly = true)
     public List<Appointment> getAppointmentsByClientId(String clientId) {
-        logger.info("Fetching appointments for client: {}", clientId);
-        return appointmentRepository.findByClientId(clientId);
+        logger.debug("Fetching appointments for client: {}", clientId);
+        return mergeArchived(appointmentRepository.findByClientId(clientId), appointmentArchive.findByClientId(clientId));
     }
 
+    @Transactional(readOnly = true)
     public List<Appointment> getAppointmentsByStatus(Appointment.AppointmentStatus status) {
-        logger.info("Fetching appointments by status: {}", status);
+        logger.debug("Fetching appointments by status: {}", status);
         return appointmentRepository.findByStatus(status);
     }
 
+    @Transactional(readOnly = true)
     public List<Appointment> getTodaysAppointments() {
-        logger.info("Fetching today's appointments");
-        return appointmentRepository.findAppointmentsByDate(LocalDateTime.now());
+        return getAppointmentsOn(LocalDate.now());
     }
 
+    @Transactional(readOnly = true)
+    public List<Appointment> getAppointmentsOn(LocalDate date) {
+        return hotQueryCache.get("on-" + date, () -> {
+            List<Appointment> inView = scheduleView.between(date.atStartOfDay(), date.plusDays(1).atStartOfDay(), false);
+            if (inView != null) {
+                logger.debug("Fetching appointments on {} from the schedule view", date);
+                return Collections.unmodifiableList(inView);
+            }
+            logger.debug("Fetching appointments on {}", date);
+            return Collections.unmodifiableList(
+                    appointmentRepository.findAppointmentsByDate(date.atStartOfDay(), date.plusDays(1).atStartOfDay()));
+        });
+    }
+
+    @Transactional(readOnly = true)
     public List<Appointment> getAppointmentsBetween(LocalDateTime startTime, LocalDateTime endTime) {
-        logger.info("Fetching appointments between {} and {}", startTime, endTime);
-        return appointmentRepository.findAppointmentsBetween(startTime, endTime);
+        // The view only spans recent weeks, never the archived months
+        List<Appointment> inView = scheduleView.between(startTime, endTime, true);
+        if (inView != null) {
+            logger.debug("Fetching appointments between {} and {} from the schedule view", startTime, endTime);
+            return inView;
+        }
+        logger.debug("Fetching appointments between {} and {}", startTime, endTime);
+        return mergeArchived(appointmentRepository.findAppointmentsBetween(startTime, endTime),
+                appointmentArchive.findBetween(startTime, endTime));
+    }
+
+    // Combines live rows with archived ones, ordered by time. A row that is in both
+    // tiers (archiving interrupted before the delete) is reported once, from the live table.
+    private List<Appointment> mergeArchived(List<Appointment> live, List<Appointment> archived) {
+        if (archived.isEmpty()) {
+            return live;
+        }
+
+        Map<String, Appointment> byId = new LinkedHashMap<>();
+        for (Appointment appointment : archived) {
+            byId.put(appointment.getId(), appointment);
+        }
+        for (Appointment appointment : live) {
+            byId.put(appointment.getId(), appointment);
+        }
+
+        List<Appointment> merged = new ArrayList<>(byId.values());
+        merged.sort(Comparator.comparing(Appointment::getTime));
+        return merged;
+    }
+
+    // Parses a fields= parameter; null when absent, meaning full entities
+    public List<String> selectFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!AppointmentRepository.PROJECTABLE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field '" + name + "', expected any of "
+                        + AppointmentRepository.PROJECTABLE_FIELDS);
+            }
+            if (!selected.contains(name)) {
+                selected.add(name);
+            }
+        }
+        return selected;
     }
 
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllAppointments(List<String> fields) {
+        logger.debug("Fetching fields {} of all appointments", fields);
+        return appointmentRepository.findFields(fields, null, Sort.unsorted());
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getUpcomingAppointments(LocalDateTime after, List<String> fields) {
+        return hotQueryCache.get("upcoming-" + after + "-" + fields, () -> {
+            ScheduleView.Tail tail = scheduleView.after(after);
+            if (tail == null) {
+                logger.debug("Fetching fields {} of upcoming appointments after {}", fields, after);
+                return Collections.unmodifiableList(appointmentRepository.findFields(fields,
+                        (root, query, cb) -> cb.greaterThan(root.get("time"), after), BY_TIME));
+            }
+            logger.debug("Fetching fields {} of upcoming appointments after {} from the schedule view, database from {}",
+                    fields, after, tail.getWindowEnd());
+            List<Map<String, Object>> upcoming = toRows(tail.getAppointments(), fields);
+            upcoming.addAll(appointmentRepository.findFields(fields,
+                    (root, query, cb) -> cb.greaterThanOrEqualTo(root.get("time"), tail.getWindowEnd()), BY_TIME));
+            return Collections.unmodifiableList(upcoming);
+        });
+    }
+
+    // Requested page size, defaulted and capped so no caller can ask for the whole future
+    public int pageLimit(Integer requested) {
+        if (requested == null) {
+            return defaultPageLimit;
+        }
+        if (requested < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        return Math.min(requested, maxPageLimit);
+    }
+
+    // One page of upcoming appointments in (time, id) order, optionally only one status and/or
+    // client, starting after the cursor (null for the first page). Only limit + 1 rows are read:
+    // the part inside the schedule view is walked in memory, and the database is asked for the
+    // rest with a keyset condition and a LIMIT, ordered by the (time, id) index. The extra row
+    // only tells whether there is a next page. fields null means full entities.
+    @Transactional(readOnly = true)
+    public AppointmentPage getUpcomingPage(LocalDateTime after, Appointment.AppointmentStatus status, String clientId,
+                                           String cursor, int limit, List<String> fields) {
+        String key = "upcoming-page-" + after + "-" + status + "-" + clientId + "-" + cursor + "-" + limit + "-" + fields;
+        return hotQueryCache.get(key, () -> {
+            // A cursor from an earlier minute may point at appointments that have started since
+            AppointmentPage.Position position = cursor != null ? AppointmentPage.decodeCursor(cursor) : null;
+            LocalDateTime fromTime = position != null && position.getTime().isAfter(after) ? position.getTime() : after;
+            String fromId = position != null && position.getTime().isAfter(after) ? position.getId() : null;
+
+            ScheduleView.Tail tail = scheduleView.after(fromTime, fromId,
+                    a -> (status == null || status == a.getStatus()) && (clientId == null || clientId.equals(a.getClientId())),
+                    limit + 1);
+            List<Appointment> inView = tail != null ? tail.getAppointments() : Collections.emptyList();
+            int remaining = limit + 1 - inView.size();
+            Specification<Appointment> rest = upcomingFilter(status, clientId, keysetAfter(fromTime, fromId));
+            if (tail != null) {
+                rest = rest.and((root, query, cb) -> cb.greaterThanOrEqualTo(root.get("time"), tail.getWindowEnd()));
+            }
+            logger.debug("Fetching page of {} upcoming appointments after {} (status {}, client {}), {} from the schedule view",
+                    limit, fromTime, status, clientId, inView.size());
+
+            if (fields == null) {
+                List<Appointment> rows = new ArrayList<>(inView);
+                if (remaining > 0) {
+                    rows.addAll(appointmentRepository.findFirst(rest, BY_TIME_AND_ID, remaining));
+                }
+                return toPage(rows, limit, Appointment::getTime, Appointment::getId);
+            }
+
+            // The cursor needs id and time, so they are read even when not requested
+            List<String> selected = new ArrayList<>(fields);
+            if (!selected.contains("id")) {
+                selected.add("id");
+            }
+            if (!selected.contains("time")) {
+                selected.add("time");
+            }
+            List<Map<String, Object>> rows = toRows(inView, selected);
+            if (remaining > 0) {
+                rows.addAll(appointmentRepository.findFields(selected, rest, BY_TIME_AND_ID, remaining));
+            }
+            AppointmentPage page = toPage(rows, limit, row -> (LocalDateTime) row.get("time"), row -> (String) row.get("id"));
+            for (Object row : page.getItems()) {
+                ((Map<?, ?>) row).keySet().retainAll(fields);
+            }
+            return page;
+        });
+    }
+
+    private static Specification<Appointment> upcomingFilter(Appointment.AppointmentStatus status, String clientId,
+                                                             Specification<Appointment> position) {
+        Specification<Appointment> filter = Specification.where(position);
+        if (status != null) {
+            filter = filter.and((root, query, cb) -> cb.equal(root.get("status"), status));
+        }
+        if (clientId != null) {
+            filter = filter.and((root, query, cb) -> cb.equal(root.get("clientId"), clientId));
+        }
+        return filter;
+    }
+
+    // (time, id) > (fromTime, fromId), or time > fromTime without an id. The plain lower
+    // bound on time is repeated so Postgres can prune partitions and range-scan the index.
+    private static Specification<Appointment> keysetAfter(LocalDateTime fromTime, String fromId) {
+        if (fromId == null) {
+            return (root, query, cb) -> cb.greaterThan(root.get("time"), fromTime);
+        }
+        return (root, query, cb) -> cb.and(
+                cb.greaterThanOrEqualTo(root.get("time"), fromTime),
+                cb.or(cb.greaterThan(root.get("time"), fromTime), cb.greaterThan(root.get("id"), fromId)));
+    }
+
+    private static <T> AppointmentPage toPage(List<T> rows, int limit, Function<T, LocalDateTime> time,
+                                              Function<T, String> id) {
+        if (rows.size() <= limit) {
+            return new AppointmentPage(Collections.unmodifiableList(rows), null);
+        }
+        T last = rows.get(limit - 1);
+        return new AppointmentPage(Collections.unmodifiableList(new ArrayList<>(rows.subList(0, limit))),
+                AppointmentPage.encodeCursor(time.apply(last), id.apply(last)));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAppointmentsOn(LocalDate date, List<String> fields) {
+        return hotQueryCache.get("on-" + date + "-" + fields, () -> {
+            List<Appointment> inView = scheduleView.between(date.atStartOfDay(), date.plusDays(1).atStartOfDay(), false);
+            if (inView != null) {
+                logger.debug("Fetching fields {} of appointments on {} from the schedule view", fields, date);
+                return Collections.unmodifiableList(toRows(inView, fields));
+            }
+            logger.debug("Fetching fields {} of appointments on {}", fields, date);
+            return Collections.unmodifiableList(appointmentRepository.findFields(fields, (root, query, cb) -> cb.and(
+                    cb.greaterThanOrEqualTo(root.get("time"), date.atStartOfDay()),
+                    cb.lessThan(root.get("time"), date.plusDays(1).atStartOfDay())), BY_TIME));
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAppointmentsByStatus(Appointment.AppointmentStatus status, List<String> fields) {
+        logger.debug("Fetching fields {} of appointments by status: {}", fields, status);
+        return appointmentRepository.findFields(fields,
+                (root, query, cb) -> cb.equal(root.get("status"), status), Sort.unsorted());
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAppointmentsByClientId(String clientId, List<String> fields) {
+        logger.debug("Fetching fields {} of appointments for client: {}", fields, clientId);
+        return mergeArchivedFields(fields, (root, query, cb) -> cb.equal(root.get("clientId"), clientId),
+                appointmentArchive.findByClientId(clientId));
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAppointmentsBetween(LocalDateTime startTime, LocalDateTime endTime, List<String> fields) {
+        List<Appointment> inView = scheduleView.between(startTime, endTime, true);
+        if (inView != null) {
+            logger.debug("Fetching fields {} of appointments between {} and {} from the schedule view", fields, startTime, endTime);
+            return toRows(inView, fields);
+        }
+        logger.debug("Fetching fields {} of appointments between {} and {}", fields, startTime, endTime);
+        return mergeArchivedFields(fields, (root, query, cb) -> cb.between(root.get("time"), startTime, endTime),
+                appointmentArchive.findBetween(startTime, endTime));
+    }
+
+    // Projected counterpart of mergeArchived. The merge needs id and time, so they are
+    // read even when not requested and dropped again afterwards.
+    private List<Map<String, Object>> mergeArchivedFields(List<String> fields, Specification<Appointment> filter,
+                                                          List<Appointment> archived) {
+        if (archived.isEmpty()) {
+            return appointmentRepository.findFields(fields, filter, BY_TIME);
+        }
+
+        List<String> selected = new ArrayList<>(fields);
+        if (!selected.contains("id")) {
+            selected.add("id");
+        }
+        if (!selected.contains("time")) {
+            selected.add("time");
+        }
+
+        Map<String, Map<String, Object>> byId = new LinkedHashMap<>();
+        for (Appointment appointment : archived) {
+            byId.put(appointment.getId(), toRow(appointment, selected));
+        }
+        for (Map<String, Object> row : appointmentRepository.findFields(selected, filter, Sort.unsorted())) {
+            byId.put((String) row.get("id"), row);
+        }
+
+        List<Map<String, Object>> merged = new ArrayList<>(byId.values());
+        merged.sort(Comparator.comparing(row -> (LocalDateTime) row.get("time")));
+        for (Map<String, Object> row : merged) {
+            row.keySet().retainAll(fields);
+        }
+        return merged;
+    }
+
+    // Same shape as the rows findFields returns, for appointments already in memory
+    private List<Map<String, Object>> toRows(List<Appointment> appointments, List<String> fields) {
+        List<Map<String, Object>> rows = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            rows.add(toRow(appointment, fields));
+        }
+        return rows;
+    }
+
+    private Map<String, Object> toRow(Appointment appointment, List<String> fields) {
+        BeanWrapper bean = PropertyAccessorFactory.forBeanPropertyAccess(appointment);
+        Map<String, Object> row = new AppointmentRow();
+        for (String field : fields) {
+            row.put(field, bean.getPropertyValue(field));
+        }
+        return row;
+    }
+
+    @Transactional(readOnly = true)
     public Optional<Appointment> getAppointmentById(String id) {
-        logger.info("Fetching appointment by id: {}", id);
+        logger.debug("Fetching appointment by id: {}", id);
         return appointmentRepository.findById(id);
     }
 
@@ -72,10 +471,13 @@ public class AppointmentService {
                 appointment.setId(UUID.randomUUID().toString());
             }
 
-            // Check for time conflicts
-            if (appointmentRepository.existsByTimeAndNotCancelled(appointment.getTime())) {
-                throw new IllegalArgumentException("Appointment slot is already booked");
-            }
+            // The client must exist in client-service; answered from the local copy of its ids
+            clientDirectory.requireKnown(appointment.getClientId());
+
+            // Check for conflicts with the practitioner's and room's other bookings (or the
+            // clinic-wide timeline without a practitioner) and pick one for "any"; the slots
+            // stay locked until this booking commits
+            resourceService.reserve(appointment, true, true);
 
             // Validate appointment time is in the future
             if (appointment.getTime().isBefore(LocalDateTime.now())) {
@@ -87,22 +489,35 @@ public class AppointmentService {
                 appointment.setStatus(Appointment.AppointmentStatus.SCHEDULED);
             }
 
-            // Save to local database first
-            Appointment savedAppointment = appointmentRepository.save(appointment);
+            // New rows always start from a fresh version, stamped now so other instances'
+            // schedule views pick them up
+            appointment.setVersion(null);
+            appointment.setUpdatedAt(LocalDateTime.now());
+
+            // Save to local database first; flushed so the unique slot index is checked here
+            Appointment savedAppointment = saveBooking(appointment);
+            eventPublisher.publishEvent(AppointmentsChangedEvent.changed(savedAppointment));
             logger.info("Appointment saved locally: {}", savedAppointment.getId());
 
-            // Try to sync with external API
-            try {
-                if (externalAppointmentApi.isApiAvailable()) {
-                    Appointment externalAppointment = externalAppointmentApi.createAppointment(appointment);
-                    if (externalAppointment != null) {
-                        logger.info("Appointment synced with external API: {}", externalAppointment.getId());
+            // Try to sync with external API, once the booking has committed. Registered after
+            // the slot lock, so the lock is already released and other bookings for the slot
+            // do not wait for the remote calls.
+            afterCompletion(committed -> {
+                if (!committed) {
+                    return;
+                }
+                try {
+                    if (externalAppointmentApi.isApiAvailable()) {
+                        Appointment externalAppointment = externalAppointmentApi.createAppointment(appointment);
+                        if (externalAppointment != null) {
+                            logger.info("Appointment synced with external API: {}", externalAppointment.getId());
+                        }
                     }
+                } catch (Exception e) {
+                    logger.warn("Failed to sync appointment with external API: {}", e.getMessage());
+                    // Continue with local appointment even if external sync fails
                 }
-            } catch (Exception e) {
-                logger.warn("Failed to sync appointment with external API: {}", e.getMessage());
-                // Continue with local appointment even if external sync fails
-            }
+            });
 
             return savedAppointment;
 
@@ -112,7 +527,15 @@ public class AppointmentService {
         }
     }
 
+    // A version sent by the caller is their precondition and fails at once. Without one, a
+    // concurrent change between our read and write is retried on the fresh row.
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Appointment updateAppointment(String id, Appointment appointmentDetails) {
+        return withOptimisticRetry("update of " + id, appointmentDetails.getVersion() == null,
+                () -> applyUpdate(id, appointmentDetails));
+    }
+
+    private Appointment applyUpdate(String id, Appointment appointmentDetails) {
         logger.info("Updating appointment: {}", id);
         
         Optional<Appointment> existingAppointment = appointmentRepository.findById(id);
@@ -121,16 +544,40 @@ public class AppointmentService {
         }
 
         Appointment appointment = existingAppointment.get();
+
+        // Reject the update if the caller edited an older version
+        if (appointmentDetails.getVersion() != null && !appointmentDetails.getVersion().equals(appointment.getVersion())) {
+            throw new ObjectOptimisticLockingFailureException(Appointment.class, id);
+        }
         
         // Update fields
+        boolean moves = appointmentDetails.getTime() != null && !appointment.getTime().equals(appointmentDetails.getTime());
+        boolean reopens = appointment.getStatus() == Appointment.AppointmentStatus.CANCELLED
+                && appointmentDetails.getStatus() != null && appointmentDetails.getStatus() != Appointment.AppointmentStatus.CANCELLED;
+        boolean active = appointmentDetails.getStatus() != null
+                ? appointmentDetails.getStatus() != Appointment.AppointmentStatus.CANCELLED
+                : appointment.getStatus() != Appointment.AppointmentStatus.CANCELLED;
+        String practitionerId = appointmentDetails.getPractitionerId() != null
+                ? appointmentDetails.getPractitionerId() : appointment.getPractitionerId();
+        String roomId = appointmentDetails.getRoomId() != null ? appointmentDetails.getRoomId() : appointment.getRoomId();
+        boolean changesPractitioner = !Objects.equals(practitionerId, appointment.getPractitionerId());
+        boolean changesRoom = !Objects.equals(roomId, appointment.getRoomId());
+        if ((active && (moves || reopens || changesPractitioner || changesRoom))
+                || Resource.ANY.equalsIgnoreCase(practitionerId) || Resource.ANY.equalsIgnoreCase(roomId)) {
+            // Check the appointment as it will be against the other bookings of the resources it
+            // moves into (it does not count against itself there) under their slots' locks
+            Appointment booking = new Appointment(id, appointment.getClientId(), moves ? appointmentDetails.getTime() : appointment.getTime());
+            booking.setPractitionerId(practitionerId);
+            booking.setRoomId(roomId);
+            resourceService.reserve(booking, moves || reopens || changesPractitioner, moves || reopens || changesRoom);
+            practitionerId = booking.getPractitionerId();
+            roomId = booking.getRoomId();
+        }
         if (appointmentDetails.getTime() != null) {
-            // Check for time conflicts (excluding current appointment)
-            if (!appointment.getTime().equals(appointmentDetails.getTime()) &&
-                appointmentRepository.existsByTimeAndNotCancelled(appointmentDetails.getTime())) {
-                throw new IllegalArgumentException("Appointment slot is already booked");
-            }
             appointment.setTime(appointmentDetails.getTime());
         }
+        appointment.setPractitionerId(practitionerId);
+        appointment.setRoomId(roomId);
         
         if (appointmentDetails.getNotes() != null) {
             appointment.setNotes(appointmentDetails.getNotes());
@@ -142,13 +589,22 @@ public class AppointmentService {
 
         appointment.setUpdatedAt(LocalDateTime.now());
         
-        Appointment updatedAppointment = appointmentRepository.save(appointment);
+        Appointment updatedAppointment = saveBooking(appointment);
+        eventPublisher.publishEvent(AppointmentsChangedEvent.changed(updatedAppointment));
         logger.info("Successfully updated appointment: {}", updatedAppointment.getId());
         
         return updatedAppointment;
     }
 
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void cancelAppointment(String id) {
+        withOptimisticRetry("cancellation of " + id, true, () -> {
+            applyCancel(id);
+            return null;
+        });
+    }
+
+    private void applyCancel(String id) {
         logger.info("Cancelling appointment: {}", id);
         
         Optional<Appointment> existingAppointment = appointmentRepository.findById(id);
@@ -160,29 +616,194 @@ public class AppointmentService {
         appointment.setStatus(Appointment.AppointmentStatus.CANCELLED);
         appointment.setUpdatedAt(LocalDateTime.now());
         
-        appointmentRepository.save(appointment);
+        appointmentRepository.saveAndFlush(appointment);
+        eventPublisher.publishEvent(AppointmentsChangedEvent.changed(appointment));
         logger.info("Successfully cancelled appointment: {}", id);
     }
 
+    // The unique index on the clinic-wide timeline backs up the locked conflict check, e.g.
+    // against a writer that bypasses the slot locks
+    private Appointment saveBooking(Appointment appointment) {
+        try {
+            return appointmentRepository.saveAndFlush(appointment);
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Slot {} was booked concurrently: {}", appointment.getTime(), e.getMostSpecificCause().getMessage());
+            throw new IllegalArgumentException("Appointment slot is already booked", e);
+        }
+    }
+
+    // Runs after the surrounding transaction ends, with whether it committed
+    private void afterCompletion(Consumer<Boolean> action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    action.accept(status == STATUS_COMMITTED);
+                }
+            });
+        } else {
+            action.accept(true);
+        }
+    }
+
+    // Runs the action in its own transaction, and again on a fresh one if it lost an
+    // optimistic-locking race and retrying is allowed, up to appointments.booking.max-retries times
+    private <T> T withOptimisticRetry(String what, boolean retry, Supplier<T> action) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> action.get());
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (!retry || attempt >= maxOptimisticRetries) {
+                    throw e;
+                }
+                optimisticRetries.incrementAndGet();
+                logger.info("Concurrent change during {}, retrying ({} of {})", what, attempt + 1, maxOptimisticRetries);
+                // Jittered, so writers that collided once do not collide again in lockstep
+                try {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(retryBackoffMillis * (attempt + 1) + 1));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // Changes the status of every appointment matching the request in one statement, e.g.
+    // cancelling a whole day when the clinic closes. Returns the ids that changed.
+    public List<String> changeStatus(BulkStatusChange change) {
+        LocalDateTime from = change.getFrom();
+        LocalDateTime to = change.getTo();
+        if (change.getDate() != null) {
+            if (from != null || to != null) {
+                throw new IllegalArgumentException("Give either date or from/to, not both");
+            }
+            from = change.getDate().atStartOfDay();
+            to = change.getDate().plusDays(1).atStartOfDay();
+        }
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        List<String> ids = change.getIds();
+        if (ids != null && (ids.isEmpty() || ids.size() > maxBulkIds)) {
+            throw new IllegalArgumentException("ids must list between 1 and " + maxBulkIds + " appointments");
+        }
+        if (from == null && to == null && change.getClientId() == null && ids == null) {
+            throw new IllegalArgumentException("Select appointments by date, from/to, clientId or ids");
+        }
+
+        Set<Appointment.AppointmentStatus> fromStatuses = change.getFromStatuses() != null && !change.getFromStatuses().isEmpty()
+                ? EnumSet.copyOf(change.getFromStatuses())
+                : EnumSet.of(Appointment.AppointmentStatus.SCHEDULED, Appointment.AppointmentStatus.CONFIRMED);
+        // The update is one statement without slot reservations, so it may only close
+        // appointments or move them between open statuses, never reopen a cancelled one
+        if (fromStatuses.contains(Appointment.AppointmentStatus.CANCELLED)
+                && change.getStatus() != Appointment.AppointmentStatus.CANCELLED) {
+            throw new IllegalArgumentException("Cancelled appointments cannot be reopened in bulk; update them one at a time");
+        }
+        // Rows already in the target status are left alone, so a repeated request changes nothing
+        fromStatuses.remove(change.getStatus());
+        if (fromStatuses.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        logger.info("Changing status to {} for appointments in {} (from {}, to {}, client {}, {} ids)", change.getStatus(),
+                fromStatuses, from, to, change.getClientId(), ids != null ? ids.size() : "any");
+        List<Appointment> updated = appointmentRepository.updateStatus(change.getStatus(), fromStatuses, from, to,
+                change.getClientId(), ids, LocalDateTime.now());
+        List<String> updatedIds = new ArrayList<>(updated.size());
+        for (Appointment appointment : updated) {
+            updatedIds.add(appointment.getId());
+        }
+        if (!updated.isEmpty()) {
+            eventPublisher.publishEvent(AppointmentsChangedEvent.changed(updated));
+        }
+        logger.info("Changed status of {} appointments to {}", updated.size(), change.getStatus());
+        return updatedIds;
+    }
+
     public void deleteAppointment(String id) {
         logger.info("Deleting appointment: {}", id);
         
-        if (!appointmentRepository.existsById(id)) {
+        // Loaded rather than checked for, since the client's summary changes with it
+        Optional<Appointment> existingAppointment = appointmentRepository.findById(id);
+        if (!existingAppointment.isPresent()) {
             throw new IllegalArgumentException("Appointment not found with id: " + id);
         }
         
-        appointmentRepository.deleteById(id);
+        appointmentRepository.delete(existingAppointment.get());
+        eventPublisher.publishEvent(AppointmentsChangedEvent.removed(Collections.singletonList(existingAppointment.get())));
         logger.info("Successfully deleted appointment: {}", id);
     }
 
+    // A client's profile in one call: counts by status, next and last appointment, and a page
+    // of the most recent history (historyLimit, defaulted and capped). Cached per client with
+    // history-max appointments of history; shorter pages are cut from it.
+    @Transactional(readOnly = true)
+    public Map<String, Object> getClientSummary(String clientId, Integer historyLimit) {
+        if (historyLimit != null && historyLimit < 0) {
+            throw new IllegalArgumentException("historyLimit must not be negative");
+        }
+        int limit = historyLimit != null ? Math.min(historyLimit, maxHistoryLimit) : defaultHistoryLimit;
+        Map<String, Object> summary = clientSummaries.get(clientId,
+                () -> appointmentRepository.summarizeClient(clientId, LocalDateTime.now(), maxHistoryLimit));
+        List<?> recent = (List<?>) summary.get("recent");
+        if (recent.size() <= limit) {
+            return summary;
+        }
+        Map<String, Object> page = new LinkedHashMap<>(summary);
+        page.put("recent", new ArrayList<>(recent.subList(0, limit)));
+        page.put("moreHistory", true);
+        return page;
+    }
+
+    // Appointments whose notes match a full-text query, best match first; see AppointmentSearch
+    @Transactional(readOnly = true)
+    public boolean isSearchAvailable() {
+        return appointmentSearch.isAvailable();
+    }
+
+    public AppointmentPage searchAppointments(String query, LocalDateTime from, LocalDateTime to,
+                                              Set<Appointment.AppointmentStatus> statuses, String clientId,
+                                              String cursor, Integer limit) {
+        return appointmentSearch.search(query, from, to, statuses, clientId, cursor, appointmentSearch.pageLimit(limit));
+    }
+
+    // Not transactional here: the analytics open a read-only transaction per part of the range
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Map<String, Object> getUtilization(LocalDateTime from, LocalDateTime to, Integer parallelism,
+                                              Integer capacity, boolean includeArchive) {
+        return utilizationAnalytics.getUtilization(from, to, parallelism, capacity, includeArchive);
+    }
+
+    @Transactional(readOnly = true)
     public long countAppointmentsByStatus(Appointment.AppointmentStatus status) {
         return appointmentRepository.countByStatus(status);
     }
 
     // Scheduled method to sync appointments from external API every 5 minutes
+    // Not transactional itself: the pipeline stages commit their own batches
     @Scheduled(fixedDelay = 300000) // 5 minutes = 300,000 milliseconds
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void syncAppointments() {
-        logger.info("Starting scheduled sync of appointments from external API");
+        Optional<SyncShard> shard;
+        try {
+            shard = syncCoordinator.begin("appointment-sync");
+        } catch (Exception e) {
+            logger.error("Could not coordinate appointment sync: {}", e.getMessage(), e);
+            return;
+        }
+
+        if (!shard.isPresent()) {
+            logger.info("Appointment sync is owned by another instance, skipping");
+            return;
+        }
+        syncAppointments(shard.get());
+    }
+
+    // Syncs only the records in the given shard of the upstream feed
+    private void syncAppointments(SyncShard shard) {
+        logger.info("Starting sync of appointments from external API ({})", shard);
         
         try {
             if (!externalAppointmentApi.isApiAvailable()) {
@@ -190,52 +811,59 @@ public class AppointmentService {
                 return;
             }
 
-            List<Appointment> externalAppointments = externalAppointmentApi.fetchAppointments();
-            
-            if (externalAppointments.isEmpty()) {
-                logger.warn("No appointments received from external API");
-                return;
-            }
-
-            int syncedCount = 0;
-            int updatedCount = 0;
-
-            for (Appointment externalAppointment : externalAppointments) {
-                Optional<Appointment> existingAppointment = appointmentRepository.findById(externalAppointment.getId());
-                
-                if (existingAppointment.isPresent()) {
-                    // Update existing appointment if data has changed
-                    Appointment existing = existingAppointment.get();
-                    if (!existing.getTime().equals(externalAppointment.getTime()) ||
-                        !existing.getClientId().equals(externalAppointment.getClientId())) {
-                        
-                        existing.setTime(externalAppointment.getTime());
-                        existing.setClientId(externalAppointment.getClientId());
-                        existing.setUpdatedAt(LocalDateTime.now());
-                        appointmentRepository.save(existing);
-                        updatedCount++;
-                        logger.debug("Updated appointment: {}", existing.getId());
-                    }
-                } else {
-                    // Save new appointment
-                    externalAppointment.setCreatedAt(LocalDateTime.now());
-                    externalAppointment.setUpdatedAt(LocalDateTime.now());
-                    appointmentRepository.save(externalAppointment);
-                    syncedCount++;
-                    logger.debug("Synced new appointment: {}", externalAppointment.getId());
-                }
-            }
-
-            logger.info("Sync completed. New appointments: {}, Updated appointments: {}", syncedCount, updatedCount);
+            AppointmentSyncPipeline.SyncResult result = syncPipeline.run(shard);
+            logger.info("Sync completed. New appointments: {}, Updated appointments: {}", result.getInserted(), result.getUpdated());
 
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Appointment sync interrupted");
         } catch (Exception e) {
             logger.error("Error during appointment sync: {}", e.getMessage(), e);
         }
     }
 
-    // Manual sync method that can be called via API
+    // Manual sync method that can be called via API; always covers the whole feed
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void manualSync() {
         logger.info("Manual sync requested");
-        syncAppointments();
+        syncAppointments(SyncShard.ALL);
+    }
+
+    public Map<String, Object> getLastSyncStats() {
+        return syncPipeline.getLastRunStats();
+    }
+
+    public Map<String, Object> getQueryCacheStats() {
+        return hotQueryCache.getStats();
+    }
+
+    public Map<String, Object> getClientSummaryStats() {
+        return clientSummaries.getStats();
+    }
+
+    public Map<String, Object> getSearchStats() {
+        return appointmentSearch.getStats();
+    }
+
+    public Map<String, Object> getAnalyticsStats() {
+        return utilizationAnalytics.getStats();
+    }
+
+    public Map<String, Object> getScheduleViewStats() {
+        return scheduleView.getStats();
+    }
+
+    public Map<String, Object> getTimerStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(appointmentTimers.getStats());
+        stats.put("notifications", appointmentNotifier.getStats());
+        return stats;
+    }
+
+    public Map<String, Object> getBookingStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(slotReservations.getStats());
+        stats.putAll(resourceService.getAllocationStats());
+        stats.put("optimisticRetries", optimisticRetries.get());
+        stats.put("clients", clientDirectory.getStats());
+        return stats;
     }
 }
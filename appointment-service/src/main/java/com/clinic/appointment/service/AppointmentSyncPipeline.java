@@ -0,0 +1,359 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.external.ExternalAppointmentApi;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.common.sync.SyncFingerprint;
+import com.clinic.common.sync.SyncHashIndex;
+import com.clinic.common.sync.SyncShard;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Staged appointment sync: fetch -> diff -> write.
+// Pages are fetched concurrently, each page is diffed on a fork-join pool, and changed
+// rows are written in one batched transaction per page. Bounded queues between the
+// stages apply backpressure, so a slow database throttles fetching instead of buffering the feed.
+// In shard mode a paginated feed is split by page, so each instance only downloads its own
+// pages; a feed that comes in one piece is downloaded whole and split by id hash.
+@Component
+public class AppointmentSyncPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentSyncPipeline.class);
+
+    // Identity sentinels that close the queues
+    private static final List<Appointment> END_OF_PAGES = new ArrayList<>();
+    private static final WriteBatch END_OF_WRITES = new WriteBatch(Collections.emptyList(), Collections.emptyList());
+
+    private final AppointmentRepository appointmentRepository;
+    private final ExternalAppointmentApi externalAppointmentApi;
+    private final ApplicationEventPublisher eventPublisher;
+    private final TransactionTemplate transactionTemplate;
+    private final ForkJoinPool diffPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    // When false the feed is downloaded in one request and split into pages locally
+    @Value("${sync.pipeline.paginated:false}")
+    private boolean paginated;
+
+    @Value("${sync.pipeline.page-size:500}")
+    private int pageSize;
+
+    @Value("${sync.pipeline.fetch-concurrency:4}")
+    private int fetchConcurrency;
+
+    @Value("${sync.pipeline.queue-capacity:8}")
+    private int queueCapacity;
+
+    private volatile Map<String, Object> lastRunStats = Collections.emptyMap();
+
+    public AppointmentSyncPipeline(AppointmentRepository appointmentRepository, ExternalAppointmentApi externalAppointmentApi,
+                                   ApplicationEventPublisher eventPublisher, TransactionTemplate transactionTemplate) {
+        this.appointmentRepository = appointmentRepository;
+        this.externalAppointmentApi = externalAppointmentApi;
+        this.eventPublisher = eventPublisher;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        diffPool.shutdownNow();
+    }
+
+    public Map<String, Object> getLastRunStats() {
+        return lastRunStats;
+    }
+
+    public SyncResult run(SyncShard shard) throws InterruptedException, ExecutionException {
+        StageMetrics fetch = new StageMetrics();
+        StageMetrics diff = new StageMetrics();
+        StageMetrics write = new StageMetrics();
+        AtomicLong unchanged = new AtomicLong();
+
+        BlockingQueue<List<Appointment>> pages = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<WriteBatch> writes = new ArrayBlockingQueue<>(queueCapacity);
+
+        ExecutorService stages = Executors.newFixedThreadPool(2, new CustomizableThreadFactory("sync-stage-"));
+        ExecutorService fetchers = Executors.newFixedThreadPool(fetchConcurrency, new CustomizableThreadFactory("sync-fetch-"));
+        long started = System.nanoTime();
+
+        try {
+            Future<SyncResult> writer = stages.submit(() -> writeStage(writes, write));
+            boolean byPage = paginated && shard.getCount() > 1;
+            Future<?> fetcher = stages.submit(() -> {
+                fetchStage(fetchers, pages, byPage ? shard : SyncShard.ALL, fetch);
+                return null;
+            });
+
+            // Every record on a page of the shard is the shard's
+            diffStage(pages, writes, writer, byPage ? SyncShard.ALL : shard, diff, unchanged);
+            put(writes, END_OF_WRITES, writer);
+
+            // Surfaces a failed fetch even though the pages that did arrive were written
+            fetcher.get();
+            SyncResult result = writer.get();
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("wallMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            stats.put("inserted", result.getInserted());
+            stats.put("updated", result.getUpdated());
+            stats.put("unchanged", unchanged.get());
+            stats.put("fetch", fetch.toMap());
+            stats.put("diff", diff.toMap());
+            stats.put("write", write.toMap());
+            lastRunStats = stats;
+            logger.info("Sync pipeline stats: {}", stats);
+
+            return result;
+        } finally {
+            fetchers.shutdownNow();
+            stages.shutdownNow();
+        }
+    }
+
+    // Each worker claims the next page number of the shard until one of them sees a short page
+    private void fetchStage(ExecutorService fetchers, BlockingQueue<List<Appointment>> pages, SyncShard shard,
+                            StageMetrics metrics) throws InterruptedException, ExecutionException {
+        try {
+            if (!paginated) {
+                long start = System.nanoTime();
+                List<Appointment> feed = externalAppointmentApi.fetchAppointments();
+                metrics.record(feed.size(), System.nanoTime() - start);
+                for (int from = 0; from < feed.size(); from += pageSize) {
+                    pages.put(feed.subList(from, Math.min(from + pageSize, feed.size())));
+                }
+                return;
+            }
+
+            AtomicInteger nextPage = new AtomicInteger();
+            AtomicBoolean lastPageSeen = new AtomicBoolean();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < fetchConcurrency; i++) {
+                workers.add(fetchers.submit(() -> {
+                    while (!lastPageSeen.get()) {
+                        int page = shard.page(nextPage.getAndIncrement());
+                        long start = System.nanoTime();
+                        List<Appointment> items = externalAppointmentApi.fetchAppointmentsPage(page, pageSize);
+                        metrics.record(items.size(), System.nanoTime() - start);
+                        if (items.size() < pageSize) {
+                            lastPageSeen.set(true);
+                        }
+                        if (!items.isEmpty()) {
+                            pages.put(items);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            pages.put(END_OF_PAGES);
+        }
+    }
+
+    // Runs on the calling thread; only the rows in this instance's shard are considered
+    private void diffStage(BlockingQueue<List<Appointment>> pages, BlockingQueue<WriteBatch> writes, Future<?> writer,
+                           SyncShard shard, StageMetrics metrics, AtomicLong unchanged) throws InterruptedException, ExecutionException {
+        while (true) {
+            List<Appointment> page = pages.take();
+            if (page == END_OF_PAGES) {
+                return;
+            }
+
+            long start = System.nanoTime();
+            // Keyed by id so a record repeated within a page is only written once
+            Map<String, Appointment> owned = new LinkedHashMap<>();
+            for (Appointment appointment : page) {
+                if (shard.owns(appointment.getId())) {
+                    owned.put(appointment.getId(), appointment);
+                }
+            }
+            if (owned.isEmpty()) {
+                metrics.record(page.size(), System.nanoTime() - start);
+                continue;
+            }
+
+            // Only the stored fingerprints are read; entities are loaded by the writer for changed rows
+            SyncHashIndex stored = new SyncHashIndex(owned.size());
+            for (Object[] row : appointmentRepository.findSyncHashes(owned.keySet())) {
+                stored.put((String) row[0], row[1] != null ? (Long) row[1] : SyncFingerprint.NONE);
+            }
+
+            // The index is read-only from here, so the workers can share it
+            Map<Boolean, List<Appointment>> changes = diffPool.submit(() -> owned.values().parallelStream()
+                    .filter(upstream -> isNewOrChanged(upstream, stored))
+                    .collect(Collectors.partitioningBy(upstream -> stored.containsKey(upstream.getId()))))
+                    .get();
+            unchanged.addAndGet(owned.size() - changes.get(false).size() - changes.get(true).size());
+            metrics.record(page.size(), System.nanoTime() - start);
+
+            WriteBatch batch = new WriteBatch(changes.get(false), changes.get(true));
+            if (!batch.isEmpty()) {
+                put(writes, batch, writer);
+            }
+        }
+    }
+
+    // Rows never fingerprinted hold SyncFingerprint.NONE, which no fingerprint equals,
+    // so they are rewritten once and skipped from then on
+    private boolean isNewOrChanged(Appointment upstream, SyncHashIndex stored) {
+        long hash = fingerprint(upstream);
+        upstream.setSyncHash(hash);
+        return stored.get(upstream.getId()) != hash;
+    }
+
+    // Every field the writer copies from upstream, so notes and status changes are picked up too
+    private long fingerprint(Appointment upstream) {
+        return SyncFingerprint.of(upstream.getId(), upstream.getClientId(), upstream.getTime(),
+                upstream.getNotes(), upstream.getStatus());
+    }
+
+    private SyncResult writeStage(BlockingQueue<WriteBatch> writes, StageMetrics metrics) throws InterruptedException {
+        int inserted = 0;
+        int updated = 0;
+        while (true) {
+            WriteBatch batch = writes.take();
+            if (batch == END_OF_WRITES) {
+                return new SyncResult(inserted, updated);
+            }
+
+            long start = System.nanoTime();
+            transactionTemplate.executeWithoutResult(status -> apply(batch));
+            metrics.record(batch.size(), System.nanoTime() - start);
+            inserted += batch.inserts.size();
+            updated += batch.updates.size();
+        }
+    }
+
+    // Only the changed rows are loaded here; dirty checking and inserts flush as JDBC batches
+    private void apply(WriteBatch batch) {
+        LocalDateTime now = LocalDateTime.now();
+
+        List<Appointment> written = new ArrayList<>(batch.size());
+        // An update may move an appointment to another client; both summaries change
+        Set<String> previousClientIds = new HashSet<>();
+        if (!batch.updates.isEmpty()) {
+            Map<String, Appointment> upstreamById = batch.updates.stream()
+                    .collect(Collectors.toMap(Appointment::getId, Function.identity()));
+            for (Appointment existing : appointmentRepository.findAllById(upstreamById.keySet())) {
+                written.add(existing);
+                previousClientIds.add(existing.getClientId());
+                Appointment upstream = upstreamById.get(existing.getId());
+                existing.setTime(upstream.getTime());
+                existing.setClientId(upstream.getClientId());
+                existing.setNotes(upstream.getNotes());
+                if (upstream.getStatus() != null) {
+                    existing.setStatus(upstream.getStatus());
+                }
+                existing.setSyncHash(upstream.getSyncHash());
+                existing.setUpdatedAt(now);
+            }
+        }
+
+        for (Appointment appointment : batch.inserts) {
+            appointment.setCreatedAt(now);
+            appointment.setUpdatedAt(now);
+            appointment.setVersion(null);
+        }
+        written.addAll(appointmentRepository.saveAll(batch.inserts));
+
+        eventPublisher.publishEvent(AppointmentsChangedEvent.changed(written, previousClientIds));
+    }
+
+    // Blocks while the queue is full, but gives up if the consuming stage has died
+    private <T> void put(BlockingQueue<T> queue, T item, Future<?> consumer) throws InterruptedException, ExecutionException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (consumer.isDone()) {
+                consumer.get();
+                throw new IllegalStateException("Sync write stage stopped unexpectedly");
+            }
+        }
+    }
+
+    private static final class WriteBatch {
+        private final List<Appointment> inserts;
+        private final List<Appointment> updates;
+
+        private WriteBatch(List<Appointment> inserts, List<Appointment> updates) {
+            this.inserts = inserts;
+            this.updates = updates;
+        }
+
+        private boolean isEmpty() {
+            return inserts.isEmpty() && updates.isEmpty();
+        }
+
+        private int size() {
+            return inserts.size() + updates.size();
+        }
+    }
+
+    // Items processed and time spent inside one stage, for spotting the bottleneck
+    private static final class StageMetrics {
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong items = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+
+        private void record(int count, long nanos) {
+            batches.incrementAndGet();
+            items.addAndGet(count);
+            busyNanos.addAndGet(nanos);
+        }
+
+        private Map<String, Object> toMap() {
+            long millis = TimeUnit.NANOSECONDS.toMillis(busyNanos.get());
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("batches", batches.get());
+            map.put("items", items.get());
+            map.put("busyMillis", millis);
+            map.put("itemsPerSecond", millis > 0 ? items.get() * 1000 / millis : items.get());
+            return map;
+        }
+    }
+
+    public static final class SyncResult {
+        private final int inserted;
+        private final int updated;
+
+        public SyncResult(int inserted, int updated) {
+            this.inserted = inserted;
+            this.updated = updated;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.repository.AppointmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Reminders and automatic closing of appointments that are over, driven by a hashed timing
+// wheel instead of polling the table. Open (SCHEDULED/CONFIRMED) appointments from a few days
+// back to horizon-hours ahead each get a reminder timer at time - reminder-lead and a close
+// timer at time + close-after: CONFIRMED ones become COMPLETED, ones never confirmed NO_SHOW.
+//
+// The wheel is rebuilt from the database at startup and every resync-ms, which also extends
+// the horizon and picks up changes made by other instances; this instance's own writes
+// re-arm their timers once they commit. A due timer re-reads its appointment and only acts
+// if it is still open at the same time, and the write goes through the version check, so
+// when several instances fire the same timer exactly one of them wins. remindedAt makes the
+// reminder survive restarts: one that came due while no instance was running goes out on
+// the first tick after startup, and one already sent is not armed again.
+@Component
+public class AppointmentTimers {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentTimers.class);
+
+    private static final Set<Appointment.AppointmentStatus> OPEN = EnumSet.of(
+            Appointment.AppointmentStatus.SCHEDULED,
+            Appointment.AppointmentStatus.CONFIRMED);
+
+    private final AppointmentRepository appointmentRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${appointments.timers.enabled:true}")
+    private boolean enabled;
+
+    @Value("${appointments.timers.tick-ms:1000}")
+    private long tickMillis;
+
+    // Rounded up to a power of two; with 1 s ticks 4096 slots cover about 68 minutes per turn
+    @Value("${appointments.timers.wheel-size:4096}")
+    private int wheelSize;
+
+    @Value("${appointments.timers.reminder-lead-minutes:1440}")
+    private long reminderLeadMinutes;
+
+    @Value("${appointments.timers.close-after-minutes:60}")
+    private long closeAfterMinutes;
+
+    // Must exceed reminder-lead plus resync-ms, or some reminders are armed late
+    @Value("${appointments.timers.horizon-hours:48}")
+    private long horizonHours;
+
+    // Appointments older than this are left alone, so a long outage does not close months at once
+    @Value("${appointments.timers.recovery-days:7}")
+    private long recoveryDays;
+
+    @Value("${appointments.timers.resync-ms:900000}")
+    private long resyncMillis;
+
+    private final Object lock = new Object();
+
+    // Guarded by lock
+    private TimingWheel<Deadline> wheel;
+    private final Map<String, Registration> registrations = new HashMap<>();
+    private LocalDateTime horizonEnd;
+    private long sequence;
+
+    private ScheduledExecutorService executor;
+    private volatile LocalDateTime lastResync;
+
+    private final AtomicLong remindersSent = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong noShows = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    public AppointmentTimers(AppointmentRepository appointmentRepository, TransactionTemplate transactionTemplate,
+                             ApplicationEventPublisher eventPublisher) {
+        this.appointmentRepository = appointmentRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            logger.info("Appointment timers are disabled");
+            return;
+        }
+        synchronized (lock) {
+            wheel = new TimingWheel<>(tickMillis, wheelSize, System.currentTimeMillis());
+        }
+        // One thread for ticks and resyncs, so a long sync or archive run never delays a tick
+        executor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("appointment-timers-"));
+        executor.scheduleWithFixedDelay(this::resync, 0, resyncMillis, TimeUnit.MILLISECONDS);
+        executor.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // Re-arms the timers of committed writes, including the ones the timers make themselves
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(AppointmentsChangedEvent.UPDATE_VIEWS)
+    public void onChange(AppointmentsChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            if (wheel == null) {
+                return;
+            }
+            for (String id : event.getRemovedIds()) {
+                unregister(id);
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (Appointment appointment : event.getChanged()) {
+                register(appointment, now, ++sequence);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        synchronized (lock) {
+            if (wheel != null) {
+                stats.put("tickMillis", tickMillis);
+                stats.put("wheelSize", wheel.getWheelSize());
+                stats.put("timers", wheel.size());
+                stats.put("appointments", registrations.size());
+                stats.put("horizonEnd", horizonEnd);
+            }
+        }
+        stats.put("lastResync", lastResync);
+        stats.put("remindersSent", remindersSent.get());
+        stats.put("completed", completed.get());
+        stats.put("noShows", noShows.get());
+        stats.put("skipped", skipped.get());
+        return stats;
+    }
+
+    // Rebuilds the timers from the database. Appointments this instance changed while the
+    // query ran keep the timers their commit armed, since the query may have read them stale.
+    void resync() {
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime to = now.plusHours(horizonHours);
+            long startSequence;
+            synchronized (lock) {
+                startSequence = sequence;
+                horizonEnd = to;
+            }
+            long start = System.nanoTime();
+            List<Appointment> open = readOnlyTransaction.execute(status ->
+                    appointmentRepository.findByStatusInAndTimeFrom(OPEN, now.minusDays(recoveryDays), to));
+
+            synchronized (lock) {
+                Set<String> loaded = new HashSet<>();
+                for (Appointment appointment : open) {
+                    loaded.add(appointment.getId());
+                    Registration current = registrations.get(appointment.getId());
+                    if (current == null || current.sequence <= startSequence) {
+                        register(appointment, now, startSequence);
+                    }
+                }
+                registrations.entrySet().removeIf(e -> {
+                    if (e.getValue().sequence > startSequence || loaded.contains(e.getKey())) {
+                        return false;
+                    }
+                    e.getValue().cancel(wheel);
+                    return true;
+                });
+            }
+            lastResync = now;
+            logger.info("Appointment timers armed for {} open appointments until {} in {} ms", open.size(), to,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (RuntimeException e) {
+            logger.error("Appointment timer resync failed, keeping the current timers: {}", e.getMessage(), e);
+        }
+    }
+
+    void tick() {
+        List<Deadline> due;
+        synchronized (lock) {
+            due = wheel.advance(System.currentTimeMillis());
+            for (Deadline deadline : due) {
+                Registration registration = registrations.get(deadline.id);
+                if (registration != null && registration.fired(deadline)) {
+                    registrations.remove(deadline.id);
+                }
+            }
+        }
+        for (Deadline deadline : due) {
+            try {
+                fire(deadline);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // Changed since it was read, most likely by another instance firing the same timer
+                skipped.incrementAndGet();
+                logger.debug("Appointment {} changed concurrently, skipping its {} timer", deadline.id, deadline.kind);
+            } catch (RuntimeException e) {
+                logger.error("Error firing {} timer for appointment {}: {}", deadline.kind, deadline.id, e.getMessage(), e);
+            }
+        }
+    }
+
+    private void fire(Deadline deadline) {
+        AppointmentDeadlineEvent event = transactionTemplate.execute(status -> {
+            Appointment appointment = appointmentRepository.findById(deadline.id).orElse(null);
+            // Moved, closed or cancelled since the timer was armed
+            if (appointment == null || !OPEN.contains(appointment.getStatus())
+                    || !appointment.getTime().equals(deadline.time)) {
+                return null;
+            }
+
+            LocalDateTime now = LocalDateTime.now();
+            AppointmentDeadlineEvent.Kind kind;
+            if (deadline.kind == AppointmentDeadlineEvent.Kind.REMINDER) {
+                if (appointment.getRemindedAt() != null) {
+                    return null;
+                }
+                appointment.setRemindedAt(now);
+                kind = AppointmentDeadlineEvent.Kind.REMINDER;
+            } else {
+                appointment.setStatus(appointment.getStatus() == Appointment.AppointmentStatus.CONFIRMED
+                        ? Appointment.AppointmentStatus.COMPLETED
+                        : Appointment.AppointmentStatus.NO_SHOW);
+                kind = AppointmentDeadlineEvent.Kind.CLOSED;
+            }
+            appointment.setUpdatedAt(now);
+
+            Appointment saved = appointmentRepository.saveAndFlush(appointment);
+            eventPublisher.publishEvent(AppointmentsChangedEvent.changed(saved));
+            return new AppointmentDeadlineEvent(kind, saved);
+        });
+
+        if (event == null) {
+            skipped.incrementAndGet();
+            return;
+        }
+        if (event.getKind() == AppointmentDeadlineEvent.Kind.REMINDER) {
+            remindersSent.incrementAndGet();
+        } else if (event.getAppointment().getStatus() == Appointment.AppointmentStatus.COMPLETED) {
+            completed.incrementAndGet();
+        } else {
+            noShows.incrementAndGet();
+        }
+        logger.info("Appointment timer fired: {}", event);
+        eventPublisher.publishEvent(event);
+    }
+
+    // Callers hold the lock
+    private void register(Appointment appointment, LocalDateTime now, long registrationSequence) {
+        unregister(appointment.getId());
+        LocalDateTime time = appointment.getTime();
+        if (!OPEN.contains(appointment.getStatus()) || horizonEnd == null || !time.isBefore(horizonEnd)
+                || time.isBefore(now.minusDays(recoveryDays))) {
+            return;
+        }
+
+        Registration registration = new Registration(registrationSequence);
+        if (appointment.getRemindedAt() == null && time.isAfter(now)) {
+            Deadline reminder = new Deadline(appointment.getId(), time, AppointmentDeadlineEvent.Kind.REMINDER);
+            registration.reminder = wheel.schedule(reminder, toMillis(time.minusMinutes(reminderLeadMinutes)));
+        }
+        Deadline close = new Deadline(appointment.getId(), time, AppointmentDeadlineEvent.Kind.CLOSED);
+        registration.close = wheel.schedule(close, toMillis(time.plusMinutes(closeAfterMinutes)));
+        registrations.put(appointment.getId(), registration);
+    }
+
+    // Callers hold the lock
+    private void unregister(String id) {
+        Registration existing = registrations.remove(id);
+        if (existing != null) {
+            existing.cancel(wheel);
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+
+    private static final class Deadline {
+        private final String id;
+        // The appointment time the timer was armed for; a moved appointment has new timers
+        private final LocalDateTime time;
+        private final AppointmentDeadlineEvent.Kind kind;
+
+        private Deadline(String id, LocalDateTime time, AppointmentDeadlineEvent.Kind kind) {
+            this.id = id;
+            this.time = time;
+            this.kind = kind;
+        }
+    }
+
+    private static final class Registration {
+        // Orders local registrations against a resync that started earlier
+        private final long sequence;
+        private TimingWheel.Timer<Deadline> reminder;
+        private TimingWheel.Timer<Deadline> close;
+
+        private Registration(long sequence) {
+            this.sequence = sequence;
+        }
+
+        // Forgets the timer that just fired; true when none is left
+        private boolean fired(Deadline deadline) {
+            if (reminder != null && reminder.getTask() == deadline) {
+                reminder = null;
+            } else if (close != null && close.getTask() == deadline) {
+                close = null;
+            }
+            return reminder == null && close == null;
+        }
+
+        private void cancel(TimingWheel<Deadline> wheel) {
+            if (reminder != null) {
+                wheel.cancel(reminder);
+            }
+            if (close != null) {
+                wheel.cancel(close);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Published inside every transaction that writes appointments; the caches and views that
+// depend on them (ScheduleView, AppointmentTimers, ClientSummaryCache, CollectionVersion)
+// handle it once it commits, and never hear of a write that rolled back. Writers publish
+// this one event instead of telling each of them.
+public class AppointmentsChangedEvent {
+
+    // Listener order: views and caches are brought up to date before CollectionVersion
+    // re-reads the version, so a request that gets the new version never reads them stale
+    public static final int UPDATE_VIEWS = 0;
+    public static final int PUBLISH_VERSION = 1;
+
+    // Saved rows, as they were committed
+    private final List<Appointment> changed;
+    private final List<String> removedIds;
+    // Clients of the changed and removed rows, whose summaries are now out of date
+    private final Set<String> clientIds;
+
+    private AppointmentsChangedEvent(List<Appointment> changed, List<String> removedIds, Set<String> clientIds) {
+        this.changed = changed;
+        this.removedIds = removedIds;
+        this.clientIds = clientIds;
+    }
+
+    public static AppointmentsChangedEvent changed(Appointment appointment) {
+        return changed(Collections.singletonList(appointment));
+    }
+
+    public static AppointmentsChangedEvent changed(Collection<Appointment> appointments) {
+        return new AppointmentsChangedEvent(new ArrayList<>(appointments), Collections.emptyList(), clientsOf(appointments));
+    }
+
+    // For updates that may have moved appointments away from other clients
+    public static AppointmentsChangedEvent changed(Collection<Appointment> appointments, Collection<String> previousClientIds) {
+        AppointmentsChangedEvent event = changed(appointments);
+        for (String clientId : previousClientIds) {
+            if (clientId != null) {
+                event.clientIds.add(clientId);
+            }
+        }
+        return event;
+    }
+
+    public static AppointmentsChangedEvent removed(Collection<Appointment> appointments) {
+        List<String> ids = new ArrayList<>(appointments.size());
+        for (Appointment appointment : appointments) {
+            ids.add(appointment.getId());
+        }
+        return new AppointmentsChangedEvent(Collections.emptyList(), ids, clientsOf(appointments));
+    }
+
+    public List<Appointment> getChanged() {
+        return changed;
+    }
+
+    public List<String> getRemovedIds() {
+        return removedIds;
+    }
+
+    public Set<String> getClientIds() {
+        return clientIds;
+    }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && removedIds.isEmpty();
+    }
+
+    private static Set<String> clientsOf(Collection<Appointment> appointments) {
+        Set<String> clientIds = new LinkedHashSet<>();
+        for (Appointment appointment : appointments) {
+            if (appointment.getClientId() != null) {
+                clientIds.add(appointment.getClientId());
+            }
+        }
+        return clientIds;
+    }
+
+    @Override
+    public String toString() {
+        return changed.size() + " changed, " + removedIds.size() + " removed";
+    }
+}
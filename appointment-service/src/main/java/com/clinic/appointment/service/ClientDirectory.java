@@ -0,0 +1,253 @@
+package com.clinic.appointment.service;
+
+import com.clinic.common.tracing.Tracer;
+import com.clinic.common.tracing.TracingInterceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local copy of client-service's client ids, so a booking can check its client without a
+// call per request. Seeded from a snapshot of all ids, then kept current by pulling the
+// client change feed every poll-ms, with a fresh snapshot every reseed-minutes as a safety
+// net. An id that is not in the copy is confirmed with client-service before a booking is
+// rejected, since the client may have been created since the last pull. While the copy is
+// not loaded, or client-service cannot be reached, bookings are let through unchecked
+// rather than failed.
+@Component
+public class ClientDirectory {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientDirectory.class);
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT =
+            new ParameterizedTypeReference<Map<String, Object>>() {};
+
+    private final RestTemplate restTemplate;
+    private final ClientIdSet ids = new ClientIdSet();
+
+    @Value("${clients.validation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${clients.service.url:http://localhost:8081}")
+    private String clientServiceUrl;
+
+    @Value("${clients.directory.reseed-minutes:60}")
+    private long reseedMinutes;
+
+    @Value("${clients.directory.page-size:1000}")
+    private int pageSize;
+
+    // Changes just before a snapshot's position are read again after it: their transactions
+    // may not have committed when the snapshot was taken
+    @Value("${clients.directory.replay:1000}")
+    private long replay;
+
+    // How long a gap in the feed positions may stay open before it is taken for a rolled-back
+    // change rather than one that has not committed yet
+    @Value("${clients.directory.gap-timeout-ms:10000}")
+    private long gapTimeoutMillis;
+
+    // Written by the refresh thread only
+    private volatile boolean loaded;
+    private volatile long cursor;
+    private volatile long snapshotSeq;
+    private long snapshotAt;
+    private long gapAfter = -1;
+    private long gapSince;
+
+    private final AtomicLong known = new AtomicLong();
+    private final AtomicLong confirmed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong unchecked = new AtomicLong();
+    private final AtomicLong snapshots = new AtomicLong();
+    private final AtomicLong changesApplied = new AtomicLong();
+    private final AtomicLong refreshErrors = new AtomicLong();
+
+    public ClientDirectory(RestTemplateBuilder restTemplateBuilder, Tracer tracer,
+                           @Value("${clients.service.connect-timeout-ms:1000}") long connectTimeoutMillis,
+                           @Value("${clients.service.read-timeout-ms:3000}") long readTimeoutMillis) {
+        // Its own timeouts: a confirmation happens inside a booking and must not hang it
+        this.restTemplate = restTemplateBuilder
+                .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
+                .additionalInterceptors(new TracingInterceptor(tracer))
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAtStartup() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${clients.directory.poll-ms:5000}", initialDelayString = "${clients.directory.poll-ms:5000}")
+    public void scheduledRefresh() {
+        if (enabled) {
+            refresh();
+        }
+    }
+
+    // Throws IllegalArgumentException when client-service does not know the client
+    public void requireKnown(String clientId) {
+        if (!enabled || clientId == null) {
+            return;
+        }
+        if (!loaded) {
+            unchecked.incrementAndGet();
+            logger.debug("Client ids not loaded yet, booking for {} is not checked", clientId);
+            return;
+        }
+        if (ids.contains(clientId)) {
+            known.incrementAndGet();
+            return;
+        }
+        Boolean exists = confirm(clientId);
+        if (exists == null) {
+            unchecked.incrementAndGet();
+            return;
+        }
+        if (!exists) {
+            rejected.incrementAndGet();
+            throw new IllegalArgumentException("Unknown client: " + clientId);
+        }
+        confirmed.incrementAndGet();
+        ids.add(clientId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("loaded", loaded);
+        stats.put("ids", ids.size());
+        stats.put("tableBytes", ids.tableBytes());
+        stats.put("cursor", cursor);
+        stats.put("snapshotSeq", snapshotSeq);
+        stats.put("known", known.get());
+        stats.put("confirmed", confirmed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("unchecked", unchecked.get());
+        stats.put("snapshots", snapshots.get());
+        stats.put("changesApplied", changesApplied.get());
+        stats.put("refreshErrors", refreshErrors.get());
+        return stats;
+    }
+
+    // Serialized so the startup load never overlaps a scheduled pull
+    private synchronized void refresh() {
+        try {
+            if (!loaded || System.currentTimeMillis() - snapshotAt >= TimeUnit.MINUTES.toMillis(reseedMinutes)) {
+                loadSnapshot();
+            }
+            pullChanges();
+        } catch (RestClientException | IllegalStateException e) {
+            refreshErrors.incrementAndGet();
+            logger.warn("Could not refresh client ids from {}: {}", clientServiceUrl, e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void loadSnapshot() {
+        long start = System.nanoTime();
+        Map<String, Object> snapshot = get("/clients/ids");
+        List<String> snapshotIds = (List<String>) snapshot.getOrDefault("ids", Collections.emptyList());
+        ids.replaceAll(snapshotIds);
+        snapshotSeq = ((Number) snapshot.get("seq")).longValue();
+        snapshotAt = System.currentTimeMillis();
+        cursor = Math.max(0, snapshotSeq - replay);
+        gapAfter = -1;
+        loaded = true;
+        snapshots.incrementAndGet();
+        logger.info("Loaded {} client ids at change {} in {} ms", ids.size(), snapshotSeq,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Applies changes in feed order. The position only moves past a gap (a change whose
+    // transaction has not committed, or never will) once the gap has been open for
+    // gap-timeout-ms; changes after it are applied meanwhile and simply read again.
+    @SuppressWarnings("unchecked")
+    private void pullChanges() {
+        while (true) {
+            Map<String, Object> page = get("/clients/ids/changes?after=" + cursor + "&limit=" + pageSize);
+            if (Boolean.TRUE.equals(page.get("reset")) && cursor >= snapshotSeq) {
+                // Pruned before this copy read them; only a snapshot can catch up
+                logger.warn("Client changes after {} are no longer available, reloading all ids", cursor);
+                loadSnapshot();
+                continue;
+            }
+            List<Map<String, Object>> changes = (List<Map<String, Object>>) page.getOrDefault("changes", Collections.emptyList());
+            long next = cursor;
+            boolean blocked = false;
+            for (Map<String, Object> change : changes) {
+                long seq = ((Number) change.get("seq")).longValue();
+                String id = (String) change.get("id");
+                if (Boolean.TRUE.equals(change.get("deleted"))) {
+                    ids.remove(id);
+                } else {
+                    ids.add(id);
+                }
+                changesApplied.incrementAndGet();
+                if (!blocked) {
+                    if (seq == next + 1 || gapExpired(next)) {
+                        next = seq;
+                    } else {
+                        blocked = true;
+                    }
+                }
+            }
+            boolean advanced = next != cursor;
+            cursor = next;
+            if (changes.size() < pageSize || !advanced) {
+                return;
+            }
+        }
+    }
+
+    private boolean gapExpired(long position) {
+        long now = System.currentTimeMillis();
+        if (gapAfter != position) {
+            gapAfter = position;
+            gapSince = now;
+            return false;
+        }
+        return now - gapSince >= gapTimeoutMillis;
+    }
+
+    // true or false as client-service answers, null when it cannot be asked
+    private Boolean confirm(String clientId) {
+        try {
+            restTemplate.headForHeaders(clientServiceUrl + "/clients/{id}", clientId);
+            return true;
+        } catch (HttpClientErrorException.NotFound e) {
+            return false;
+        } catch (RestClientException e) {
+            logger.warn("Could not confirm client {} with client-service, booking is not checked: {}", clientId, e.getMessage());
+            return null;
+        }
+    }
+
+    private Map<String, Object> get(String path) {
+        Map<String, Object> body = restTemplate.exchange(clientServiceUrl + path, HttpMethod.GET, null, JSON_OBJECT).getBody();
+        if (body == null) {
+            throw new IllegalStateException("Empty response from " + path);
+        }
+        return body;
+    }
+}
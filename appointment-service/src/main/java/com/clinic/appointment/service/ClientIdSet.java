@@ -0,0 +1,179 @@
+package com.clinic.appointment.service;
+
+import com.clinic.common.sync.SyncFingerprint;
+
+import java.util.Collection;
+import java.util.concurrent.locks.StampedLock;
+
+// Set of client ids held as 64-bit fingerprints in one open-addressing long array (linear
+// probing, at most half full), about 16 bytes per id instead of the ~100 of a HashSet of
+// Strings. Two ids sharing a fingerprint is possible but, at 64 bits, far rarer than a
+// client being deleted between a lookup and the booking's commit, so a lookup is treated as
+// exact. Lookups take no lock: they read optimistically and retry under the read lock only
+// if a write got in between.
+final class ClientIdSet {
+
+    private static final long EMPTY = 0;
+
+    private final StampedLock lock = new StampedLock();
+    private long[] table;
+    private int size;
+
+    ClientIdSet() {
+        table = new long[16];
+    }
+
+    boolean contains(String id) {
+        long fingerprint = fingerprint(id);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = probe(table, fingerprint) >= 0;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                found = probe(table, fingerprint) >= 0;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return found;
+    }
+
+    boolean add(String id) {
+        long fingerprint = fingerprint(id);
+        long stamp = lock.writeLock();
+        try {
+            if (probe(table, fingerprint) >= 0) {
+                return false;
+            }
+            if ((size + 1) * 2 > table.length) {
+                table = rehash(table, table.length * 2);
+            }
+            insert(table, fingerprint);
+            size++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    boolean remove(String id) {
+        long fingerprint = fingerprint(id);
+        long stamp = lock.writeLock();
+        try {
+            long[] t = table;
+            int slot = probe(t, fingerprint);
+            if (slot < 0) {
+                return false;
+            }
+            // Backward-shift deletion: later entries of the probe run move up into the gap, so
+            // lookups never need tombstones
+            int mask = t.length - 1;
+            int gap = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long entry = t[next];
+                if (entry == EMPTY) {
+                    break;
+                }
+                int home = (int) entry & mask;
+                boolean stays = gap <= next ? (gap < home && home <= next) : (gap < home || home <= next);
+                if (!stays) {
+                    t[gap] = entry;
+                    gap = next;
+                }
+            }
+            t[gap] = EMPTY;
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Swaps in a new set of ids; built before taking the lock, so lookups do not wait on it
+    void replaceAll(Collection<String> ids) {
+        int capacity = 16;
+        while (capacity < ids.size() * 2) {
+            capacity <<= 1;
+        }
+        long[] fresh = new long[capacity];
+        int count = 0;
+        for (String id : ids) {
+            long fingerprint = fingerprint(id);
+            if (probe(fresh, fingerprint) < 0) {
+                insert(fresh, fingerprint);
+                count++;
+            }
+        }
+        long stamp = lock.writeLock();
+        try {
+            table = fresh;
+            size = count;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    long tableBytes() {
+        return table.length * 8L;
+    }
+
+    // Slot holding the fingerprint, or -1. Bounded by the table length, so an optimistic read
+    // of a table that is being changed still returns (and is then discarded).
+    private static int probe(long[] t, long fingerprint) {
+        int mask = t.length - 1;
+        int slot = (int) fingerprint & mask;
+        for (int i = 0; i < t.length; i++) {
+            long entry = t[slot];
+            if (entry == fingerprint) {
+                return slot;
+            }
+            if (entry == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static void insert(long[] t, long fingerprint) {
+        int mask = t.length - 1;
+        int slot = (int) fingerprint & mask;
+        while (t[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = fingerprint;
+    }
+
+    private static long[] rehash(long[] old, int capacity) {
+        long[] fresh = new long[capacity];
+        for (long entry : old) {
+            if (entry != EMPTY) {
+                insert(fresh, entry);
+            }
+        }
+        return fresh;
+    }
+
+    // SyncFingerprint's FNV-1a, then a 64-bit finalizer so the low bits used for the slot are
+    // well mixed; never EMPTY
+    static long fingerprint(String id) {
+        long hash = SyncFingerprint.of(id);
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == EMPTY ? 1 : hash;
+    }
+}
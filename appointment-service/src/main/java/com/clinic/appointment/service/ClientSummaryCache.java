@@ -0,0 +1,76 @@
+package com.clinic.appointment.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Client profile summaries, one entry per client. Unlike HotQueryCache an entry is not
+// tagged with the collection version: a write only drops the summary of the client it
+// touched, once it commits, so busy booking traffic for other clients does not empty the
+// cache. A load that overlaps the write is dropped along with it. The ttl bounds how long
+// writes made through another instance can go unseen, and an entry also ends when its next
+// appointment starts, since that is when it would move into the history. Results are shared
+// between requests and must be treated as read-only.
+@Component
+public class ClientSummaryCache {
+
+    private static final long UNTAGGED = 0;
+
+    private final SingleFlightCache<Map<String, Object>> cache;
+
+    private final boolean enabled;
+    private final long ttlMillis;
+
+    public ClientSummaryCache(@Value("${appointments.client-summary.cache.enabled:true}") boolean enabled,
+                              @Value("${appointments.client-summary.cache.ttl-ms:30000}") long ttlMillis,
+                              @Value("${appointments.client-summary.cache.max-entries:10000}") int maxEntries) {
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.cache = new SingleFlightCache<>("Client summary", maxEntries, this::lifetime);
+    }
+
+    public Map<String, Object> get(String clientId, Supplier<Map<String, Object>> load) {
+        if (!enabled) {
+            return load.get();
+        }
+        return cache.get(clientId, UNTAGGED, load);
+    }
+
+    // Drops the summaries of the clients a committed write touched
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(AppointmentsChangedEvent.UPDATE_VIEWS)
+    public void onChange(AppointmentsChangedEvent event) {
+        if (enabled) {
+            event.getClientIds().forEach(cache::invalidate);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ttlMillis", ttlMillis);
+        cache.addStats(stats);
+        return stats;
+    }
+
+    // The ttl, or less if the next appointment starts sooner
+    private long lifetime(Map<String, Object> summary) {
+        Object next = summary.get("next");
+        if (next instanceof Map) {
+            Object time = ((Map<?, ?>) next).get("time");
+            if (time instanceof LocalDateTime) {
+                long untilNext = ((LocalDateTime) time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                        - System.currentTimeMillis();
+                return Math.min(ttlMillis, untilNext);
+            }
+        }
+        return ttlMillis;
+    }
+}
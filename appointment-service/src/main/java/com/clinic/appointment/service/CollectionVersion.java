@@ -0,0 +1,33 @@
+package com.clinic.appointment.service;
+
+import com.clinic.common.datasource.ReadWriteRoutingDataSource;
+import com.clinic.common.etag.TableVersion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Version of the appointments collection, counted in the database (see TableVersion).
+// Lets the controllers answer conditional GETs before running any query.
+// Set up after the partition manager, whose conversion replaces the table and its triggers.
+@Component
+@DependsOn({"entityManagerFactory", "appointmentPartitionManager"})
+public class CollectionVersion extends TableVersion {
+
+    public CollectionVersion(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             ReadWriteRoutingDataSource routingDataSource,
+                             @Value("${appointments.collection-version.max-staleness-ms:1000}") long maxStalenessMillis,
+                             @Value("${appointments.collection-version.schema.enabled:true}") boolean schemaEnabled) {
+        super("appointments", jdbcTemplate, transactionTemplate, routingDataSource, maxStalenessMillis, schemaEnabled);
+    }
+
+    // After the views, so a reader that sees the new version finds them updated too
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(AppointmentsChangedEvent.PUBLISH_VERSION)
+    public void onChange(AppointmentsChangedEvent event) {
+        refresh();
+    }
+}
@@ -0,0 +1,51 @@
+package com.clinic.appointment.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Micro-cache for the dashboard queries every front-desk screen polls (/today, /upcoming).
+// Concurrent identical queries share one in-flight database call, and its result is reused
+// for a short ttl. Entries are tagged with the CollectionVersion they were loaded under, so
+// a committed write invalidates them: at once when it went through this instance, within
+// the version's max-staleness when it was made elsewhere. Results are shared between
+// requests and must be treated as read-only.
+@Component
+public class HotQueryCache {
+
+    private final CollectionVersion collectionVersion;
+    private final SingleFlightCache<Object> cache;
+
+    private final boolean enabled;
+    private final long ttlMillis;
+
+    // max-entries: keys embed the date or cutoff minute, so old keys stop being asked for on their own
+    public HotQueryCache(CollectionVersion collectionVersion,
+                         @Value("${appointments.query-cache.enabled:true}") boolean enabled,
+                         @Value("${appointments.query-cache.ttl-ms:1000}") long ttlMillis,
+                         @Value("${appointments.query-cache.max-entries:200}") int maxEntries) {
+        this.collectionVersion = collectionVersion;
+        this.enabled = enabled;
+        this.ttlMillis = ttlMillis;
+        this.cache = new SingleFlightCache<>("Query", maxEntries, value -> ttlMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        return (T) cache.get(key, collectionVersion.current(), query);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("ttlMillis", ttlMillis);
+        cache.addStats(stats);
+        return stats;
+    }
+}
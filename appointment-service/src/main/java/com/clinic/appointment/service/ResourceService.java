@@ -0,0 +1,313 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.Resource;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.repository.ResourceRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Practitioners and rooms, their calendars, and the booking side of them: checking that an
+// appointment fits the capacity of the resources it names, and picking one when it asks for
+// "any". Calendar reads come from the per-resource indexes of the schedule view where the
+// range is loaded and from the (resource, time) indexes in the database otherwise. Capacity
+// checks always ask the database, under the slot locks, because the view only sees other
+// instances' bookings after its next reload.
+@Service
+@Transactional
+public class ResourceService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResourceService.class);
+
+    private final ResourceRepository resourceRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final ScheduleView scheduleView;
+    private final SlotReservations slotReservations;
+
+    // Most slots one availability request may span
+    @Value("${appointments.resources.max-availability-slots:2000}")
+    private int maxAvailabilitySlots;
+
+    private final AtomicLong allocations = new AtomicLong();
+    private final AtomicLong allocationFailures = new AtomicLong();
+
+    public ResourceService(ResourceRepository resourceRepository, AppointmentRepository appointmentRepository,
+                           ScheduleView scheduleView, SlotReservations slotReservations) {
+        this.resourceRepository = resourceRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.scheduleView = scheduleView;
+        this.slotReservations = slotReservations;
+    }
+
+    @Transactional(readOnly = true)
+    public List<Resource> getResources(Resource.ResourceType type) {
+        logger.debug("Fetching resources of type {}", type != null ? type : "any");
+        return type != null ? resourceRepository.findByTypeOrderByIdAsc(type) : resourceRepository.findAll();
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<Resource> getResourceById(String id) {
+        return resourceRepository.findById(id);
+    }
+
+    public Resource createResource(Resource resource) {
+        if (resource.getId() == null || resource.getId().isEmpty()) {
+            resource.setId(UUID.randomUUID().toString());
+        }
+        if (Resource.ANY.equalsIgnoreCase(resource.getId())) {
+            throw new IllegalArgumentException("'" + Resource.ANY + "' is reserved and cannot be a resource id");
+        }
+        if (resourceRepository.existsById(resource.getId())) {
+            throw new IllegalArgumentException("Resource already exists with id: " + resource.getId());
+        }
+        Resource saved = resourceRepository.save(resource);
+        logger.info("Created {} {} ({}, capacity {})", saved.getType(), saved.getId(), saved.getName(), saved.getCapacity());
+        return saved;
+    }
+
+    // The type is fixed: appointments refer to a resource by the role they booked it for.
+    // Lowering the capacity leaves existing bookings alone; it only limits new ones.
+    public Resource updateResource(String id, Resource details) {
+        Resource resource = resourceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Resource not found with id: " + id));
+        if (details.getType() != null && details.getType() != resource.getType()) {
+            throw new IllegalArgumentException("The type of resource " + id + " cannot change");
+        }
+        if (details.getName() != null) {
+            resource.setName(details.getName());
+        }
+        resource.setCapacity(details.getCapacity());
+        resource.setActive(details.isActive());
+        resource.setUpdatedAt(LocalDateTime.now());
+        Resource saved = resourceRepository.save(resource);
+        logger.info("Updated resource {}", saved);
+        return saved;
+    }
+
+    // Slots of slotMinutes from from (inclusive) to to (exclusive), each with how many
+    // appointments the resource has then and how many more it takes. One range read of the
+    // resource's calendar, so the cost grows with its bookings in the range, not the clinic's.
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAvailability(String id, LocalDateTime from, LocalDateTime to, int slotMinutes) {
+        if (slotMinutes < 1) {
+            throw new IllegalArgumentException("slotMinutes must be at least 1");
+        }
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (Duration.between(from, to).toMinutes() / slotMinutes >= maxAvailabilitySlots) {
+            throw new IllegalArgumentException("At most " + maxAvailabilitySlots + " slots per request");
+        }
+        Resource resource = resourceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Resource not found with id: " + id));
+
+        Map<LocalDateTime, Integer> booked = new HashMap<>();
+        for (LocalDateTime time : bookedTimes(resource, from, to)) {
+            booked.merge(time, 1, Integer::sum);
+        }
+
+        List<Map<String, Object>> slots = new ArrayList<>();
+        for (LocalDateTime time = from; time.isBefore(to); time = time.plusMinutes(slotMinutes)) {
+            int count = booked.getOrDefault(time, 0);
+            Map<String, Object> slot = new LinkedHashMap<>();
+            slot.put("time", time);
+            slot.put("booked", count);
+            slot.put("free", resource.isActive() ? Math.max(0, resource.getCapacity() - count) : 0);
+            slots.add(slot);
+        }
+        logger.debug("Availability of {} from {} to {}: {} slots, {} of them booked", id, from, to, slots.size(), booked.size());
+        return slots;
+    }
+
+    // Active resources of the type that still take an appointment at this time, least booked first
+    @Transactional(readOnly = true)
+    public List<Resource> getFreeResources(Resource.ResourceType type, LocalDateTime time) {
+        List<Resource> free = new ArrayList<>();
+        for (Candidate candidate : candidates(type, time)) {
+            if (candidate.free) {
+                free.add(candidate.resource);
+            }
+        }
+        return free;
+    }
+
+    // Called inside the booking transaction with the appointment as it will be saved. Locks
+    // the slots it occupies and checks each against the resource's capacity; a practitioner
+    // or room given as "any" is replaced by one that is free. checkPractitioner covers the
+    // clinic-wide timeline for appointments without a practitioner; an update passes false
+    // for a resource it neither moves in time nor changes.
+    public void reserve(Appointment appointment, boolean checkPractitioner, boolean checkRoom) {
+        LocalDateTime time = appointment.getTime();
+        boolean clinic = checkPractitioner && appointment.getPractitionerId() == null;
+        boolean anyPractitioner = Resource.ANY.equalsIgnoreCase(appointment.getPractitionerId());
+        boolean anyRoom = Resource.ANY.equalsIgnoreCase(appointment.getRoomId());
+        List<Resource> practitioners = resolve(appointment.getPractitionerId(), Resource.ResourceType.PRACTITIONER,
+                checkPractitioner, time);
+        List<Resource> rooms = resolve(appointment.getRoomId(), Resource.ResourceType.ROOM, checkRoom, time);
+
+        // A slot that is already full stays full until a cancellation, so a booking that can
+        // only fail is turned away here instead of queueing for the slot's lock to learn that
+        check(clinic, practitioners, anyPractitioner, Resource.ResourceType.PRACTITIONER, time);
+        check(false, rooms, anyRoom, Resource.ResourceType.ROOM, time);
+
+        // Everything the booking may occupy, every candidate of an "any" included, is locked
+        // in one go and so in the global lock order; taking a candidate's lock only after
+        // another one's could deadlock against a booking that names both
+        List<String> slots = new ArrayList<>();
+        if (clinic) {
+            slots.add(SlotReservations.slot(time));
+        }
+        for (Resource resource : practitioners) {
+            slots.add(SlotReservations.slot(resource.getId(), time));
+        }
+        for (Resource resource : rooms) {
+            slots.add(SlotReservations.slot(resource.getId(), time));
+        }
+        slotReservations.lock(slots.toArray(new String[0]));
+
+        Resource practitioner = check(clinic, practitioners, anyPractitioner, Resource.ResourceType.PRACTITIONER, time);
+        Resource room = check(false, rooms, anyRoom, Resource.ResourceType.ROOM, time);
+        if (anyPractitioner) {
+            appointment.setPractitionerId(allocated(practitioner, time));
+        }
+        if (anyRoom) {
+            appointment.setRoomId(allocated(room, time));
+        }
+    }
+
+    public Map<String, Object> getAllocationStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("allocations", allocations.get());
+        stats.put("allocationFailures", allocationFailures.get());
+        return stats;
+    }
+
+    // The resources the booking has to be checked against: the named one, every candidate
+    // for "any" (best first), or none
+    private List<Resource> resolve(String id, Resource.ResourceType type, boolean booking, LocalDateTime time) {
+        if (Resource.ANY.equalsIgnoreCase(id)) {
+            List<Resource> candidates = new ArrayList<>();
+            for (Candidate candidate : candidates(type, time)) {
+                candidates.add(candidate.resource);
+            }
+            return candidates;
+        }
+        if (id == null) {
+            return Collections.emptyList();
+        }
+        Resource resource = bookable(id, type, booking);
+        return booking ? Collections.singletonList(resource) : Collections.emptyList();
+    }
+
+    // Throws unless the slot has room; returns the first resource with room (for a named one,
+    // that one). Asks the database, so it is only exact under the slot locks.
+    private Resource check(boolean clinic, List<Resource> resources, boolean any, Resource.ResourceType type,
+                           LocalDateTime time) {
+        if (clinic && appointmentRepository.existsByTimeAndNotCancelled(time)) {
+            throw new IllegalArgumentException("Appointment slot is already booked");
+        }
+        for (Resource resource : resources) {
+            if (countAt(resource, time) < resource.getCapacity()) {
+                return resource;
+            }
+        }
+        if (any) {
+            allocationFailures.incrementAndGet();
+            throw new IllegalArgumentException("No " + label(type) + " is free at " + time);
+        }
+        if (!resources.isEmpty()) {
+            throw new IllegalArgumentException("The " + label(type) + " " + resources.get(0).getId()
+                    + " is already booked at " + time);
+        }
+        return null;
+    }
+
+    private String allocated(Resource resource, LocalDateTime time) {
+        allocations.incrementAndGet();
+        logger.info("Allocated {} {} for {}", label(resource.getType()), resource.getId(), time);
+        return resource.getId();
+    }
+
+    // Every active resource of the type, ordered by what the calendar says about the slot
+    private List<Candidate> candidates(Resource.ResourceType type, LocalDateTime time) {
+        LocalDateTime dayStart = time.toLocalDate().atStartOfDay();
+        LocalDateTime dayEnd = dayStart.plusDays(1);
+        List<Candidate> candidates = new ArrayList<>();
+        for (Resource resource : resourceRepository.findByTypeAndActiveTrueOrderByIdAsc(type)) {
+            Integer atTime = scheduleView.bookedAt(resource.getId(), time);
+            List<Appointment> day = scheduleView.bookings(resource.getId(), dayStart, dayEnd);
+            int booked = atTime != null ? atTime : (int) countAt(resource, time);
+            int load = day != null ? day.size() : bookedTimes(resource, dayStart, dayEnd).size();
+            candidates.add(new Candidate(resource, booked < resource.getCapacity(), load));
+        }
+        candidates.sort(Comparator.comparing((Candidate c) -> !c.free).thenComparingInt(c -> c.load));
+        return candidates;
+    }
+
+    private List<LocalDateTime> bookedTimes(Resource resource, LocalDateTime from, LocalDateTime to) {
+        List<Appointment> inView = scheduleView.bookings(resource.getId(), from, to);
+        if (inView != null) {
+            List<LocalDateTime> times = new ArrayList<>(inView.size());
+            for (Appointment appointment : inView) {
+                times.add(appointment.getTime());
+            }
+            return times;
+        }
+        return resource.getType() == Resource.ResourceType.PRACTITIONER
+                ? appointmentRepository.findActiveTimesForPractitioner(resource.getId(), from, to)
+                : appointmentRepository.findActiveTimesForRoom(resource.getId(), from, to);
+    }
+
+    private long countAt(Resource resource, LocalDateTime time) {
+        return resource.getType() == Resource.ResourceType.PRACTITIONER
+                ? appointmentRepository.countActiveForPractitionerAt(resource.getId(), time)
+                : appointmentRepository.countActiveForRoomAt(resource.getId(), time);
+    }
+
+    // The named resource, which has to exist with the right type; it also has to be active
+    // unless the booking is not being checked against it (an inactive practitioner keeps
+    // the appointments already made with them)
+    private Resource bookable(String id, Resource.ResourceType type, boolean booking) {
+        Resource resource = resourceRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Unknown " + label(type) + ": " + id));
+        if (resource.getType() != type) {
+            throw new IllegalArgumentException(id + " is a " + label(resource.getType()) + ", not a " + label(type));
+        }
+        if (booking && !resource.isActive()) {
+            throw new IllegalArgumentException("The " + label(type) + " " + id + " is not taking bookings");
+        }
+        return resource;
+    }
+
+    private static String label(Resource.ResourceType type) {
+        return type.name().toLowerCase();
+    }
+
+    private static final class Candidate {
+        private final Resource resource;
+        private final boolean free;
+        private final int load;
+
+        private Candidate(Resource resource, boolean free, int load) {
+            this.resource = resource;
+            this.free = free;
+            this.load = load;
+        }
+    }
+}
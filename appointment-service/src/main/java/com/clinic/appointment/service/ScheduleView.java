@@ -0,0 +1,538 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.repository.AppointmentRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// In-memory copy of the appointments in a rolling window (a few days back to a few weeks
+// ahead), ordered by time and id in a ConcurrentSkipListMap. Range reads that fall inside
+// the window are answered from memory without locks; anything reaching outside it goes to
+// the database. Writes on this instance are applied after their transaction commits; the
+// window is reloaded periodically, which also moves it forward.
+//
+// Other instances write to the same table, so when the CollectionVersion has moved since the
+// last catch-up, a read catches up first: rows whose updated_at is past the last catch-up
+// (through an index on updated_at) and ids a trigger recorded in appointment_deletions are
+// applied like local writes. A write anywhere moves that version, and the controllers tag a
+// response with it before reading the view, so no tag is handed out for a view that has not
+// looked for the writes it counts. The lookback overlaps by catch-up-overlap-ms to cover
+// clock skew between instances and transactions that commit after stamping their rows;
+// whatever is still missed is fixed by the next reload. If the catch-up fails, reads go to
+// the database instead of the view.
+//
+// Each practitioner and room also gets its own skip list of the active (not cancelled)
+// appointments it is booked for, so how many bookings a resource has at a slot, or what it
+// has over a range, is a seek into that resource's calendar instead of a scan of the window.
+@Component
+public class ScheduleView {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleView.class);
+
+    // Every id sorts between these, so they select all entries at a boundary time
+    private static final String MIN_ID = "";
+    private static final String MAX_ID = "\uffff";
+
+    private static final Comparator<Key> ORDER = Comparator.comparing((Key k) -> k.time).thenComparing(k -> k.id);
+
+    private static final String DELETIONS = "appointment_deletions";
+
+    private final AppointmentRepository appointmentRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final CollectionVersion collectionVersion;
+
+    @Value("${appointments.schedule-view.enabled:true}")
+    private boolean enabled;
+
+    @Value("${appointments.schedule-view.past-days:7}")
+    private int pastDays;
+
+    @Value("${appointments.schedule-view.future-days:42}")
+    private int futureDays;
+
+    @Value("${appointments.schedule-view.catch-up-overlap-ms:30000}")
+    private long catchUpOverlapMillis;
+
+    // How long deletions are kept for other instances to catch up on
+    @Value("${appointments.schedule-view.deletion-retention-ms:900000}")
+    private long deletionRetentionMillis;
+
+    // Published together so a reader never pairs one window's bounds with another's entries
+    private volatile Snapshot snapshot;
+
+    // Writes that commit while a reload is reading the window; replayed onto the new snapshot
+    private List<Change> pendingChanges;
+
+    private final Object writeLock = new Object();
+
+    // Guards the catch-up state; the first stale reader catches up, the others wait for it
+    private final Object catchUpLock = new Object();
+    // Local time the last catch-up (or the first load) started; its lookback starts here
+    private LocalDateTime caughtUpTo;
+    // Collection version read before the last successful catch-up (or the first load)
+    private volatile long caughtUpVersion;
+    private volatile boolean catchUpFailed;
+
+    private final AtomicLong catchUps = new AtomicLong();
+    private final AtomicLong caughtUpRows = new AtomicLong();
+    private final AtomicLong caughtUpDeletions = new AtomicLong();
+
+    public ScheduleView(AppointmentRepository appointmentRepository, JdbcTemplate jdbcTemplate,
+                        TransactionTemplate transactionTemplate, CollectionVersion collectionVersion) {
+        this.appointmentRepository = appointmentRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.collectionVersion = collectionVersion;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadAtStartup() {
+        if (!enabled) {
+            return;
+        }
+        // Without the deletion log other instances' deletes would go unseen until a reload,
+        // so the view stays unloaded and every read goes to the database
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + DELETIONS
+                    + " (id varchar(255) NOT NULL, deleted_at timestamp NOT NULL)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + DELETIONS + "_deleted_at_idx ON " + DELETIONS + " (deleted_at)");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS appointments_updated_at_idx ON appointments (updated_at)");
+            // localtimestamp is in the session time zone, which the driver sets to the JVM's,
+            // so it compares with the updated_at the instances write
+            jdbcTemplate.execute("CREATE OR REPLACE FUNCTION record_appointment_deletion() RETURNS trigger AS $$ BEGIN "
+                    + "INSERT INTO " + DELETIONS + " (id, deleted_at) VALUES (OLD.id, localtimestamp); RETURN NULL; END $$ "
+                    + "LANGUAGE plpgsql");
+            Integer triggers = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_trigger WHERE tgname = ? AND tgrelid = 'appointments'::regclass",
+                    Integer.class, DELETIONS);
+            if (triggers == null || triggers == 0) {
+                jdbcTemplate.execute("CREATE TRIGGER " + DELETIONS + " AFTER DELETE ON appointments "
+                        + "FOR EACH ROW EXECUTE PROCEDURE record_appointment_deletion()");
+                logger.info("Created the appointment deletion trigger");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Schedule view is not loaded, could not set up its deletion log: {}", e.getMessage());
+            return;
+        }
+        reload();
+    }
+
+    @Scheduled(fixedDelayString = "${appointments.schedule-view.reload-ms:300000}",
+            initialDelayString = "${appointments.schedule-view.reload-ms:300000}")
+    public void scheduledReload() {
+        if (enabled && snapshot != null) {
+            reload();
+            try {
+                jdbcTemplate.update("DELETE FROM " + DELETIONS + " WHERE deleted_at < ?",
+                        LocalDateTime.now().minus(deletionRetentionMillis, ChronoUnit.MILLIS));
+            } catch (RuntimeException e) {
+                logger.warn("Could not prune the appointment deletion log: {}", e.getMessage());
+            }
+        }
+    }
+
+    // Serialized so a scheduled reload never overlaps the startup load or a manual one
+    public synchronized void reload() {
+        LocalDate today = LocalDate.now();
+        LocalDateTime from = today.minusDays(pastDays).atStartOfDay();
+        LocalDateTime to = today.plusDays(futureDays + 1L).atStartOfDay();
+
+        synchronized (writeLock) {
+            pendingChanges = new ArrayList<>();
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        long version = collectionVersion.current();
+        long start = System.nanoTime();
+        List<Appointment> rows;
+        try {
+            rows = readOnlyTransaction.execute(status -> appointmentRepository.findAppointmentsByDate(from, to));
+        } catch (RuntimeException e) {
+            synchronized (writeLock) {
+                pendingChanges = null;
+            }
+            logger.error("Schedule view reload failed, keeping the previous window: {}", e.getMessage(), e);
+            return;
+        }
+
+        Snapshot loaded = new Snapshot(from, to);
+        for (Appointment row : rows) {
+            loaded.put(copyOf(row));
+        }
+        synchronized (writeLock) {
+            for (Change change : pendingChanges) {
+                loaded.apply(change);
+            }
+            pendingChanges = null;
+            snapshot = loaded;
+        }
+        synchronized (catchUpLock) {
+            // A failed catch-up is retried with the next version; a reload also starts it over
+            if (caughtUpTo == null || catchUpFailed) {
+                caughtUpTo = startedAt;
+                caughtUpVersion = version;
+                catchUpFailed = false;
+            }
+        }
+        logger.info("Schedule view loaded {} appointments from {} to {} in {} ms", loaded.entries.size(), from, to,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // Appointments with from <= time < to (or <= to), or null when the range is not
+    // entirely inside the loaded window and the caller has to ask the database
+    public List<Appointment> between(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+        Snapshot current = current();
+        if (current == null || from.isBefore(current.from)
+                || (toInclusive ? !to.isBefore(current.to) : to.isAfter(current.to))) {
+            return null;
+        }
+        return range(current, new Key(from, MIN_ID), toInclusive ? new Key(to, MAX_ID) : new Key(to, MIN_ID));
+    }
+
+    // Appointments after the given time up to the end of the window, together with that end,
+    // or null when the window is not loaded or the given time is not inside it
+    public Tail after(LocalDateTime after) {
+        Snapshot current = current();
+        if (current == null || after.isBefore(current.from) || !after.isBefore(current.to)) {
+            return null;
+        }
+        return new Tail(range(current, new Key(after, MAX_ID), new Key(current.to, MIN_ID)), current.to);
+    }
+
+    // Walks the window in (time, id) order from just after the given position (id null for
+    // everything after that time) and collects at most limit appointments the filter accepts,
+    // without copying the rest of the window. Null when the window is not loaded or that time
+    // is not inside it; if fewer than limit come back, the caller continues at the window end.
+    public Tail after(LocalDateTime time, String id, Predicate<Appointment> filter, int limit) {
+        Snapshot current = current();
+        if (current == null || time.isBefore(current.from) || !time.isBefore(current.to)) {
+            return null;
+        }
+        Key low = new Key(time, id != null ? id : MAX_ID);
+        Key high = new Key(current.to, MIN_ID);
+        List<Appointment> matches = new ArrayList<>();
+        if (ORDER.compare(low, high) < 0) {
+            for (Appointment appointment : current.entries.subMap(low, false, high, false).values()) {
+                if (filter.test(appointment)) {
+                    matches.add(appointment);
+                    if (matches.size() >= limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new Tail(matches, current.to);
+    }
+
+    // Active appointments the resource has at exactly this time, or null when the time is
+    // outside the loaded window and the caller has to ask the database
+    public Integer bookedAt(String resourceId, LocalDateTime time) {
+        Snapshot current = current();
+        if (current == null || time.isBefore(current.from) || !time.isBefore(current.to)) {
+            return null;
+        }
+        ConcurrentSkipListMap<Key, Appointment> calendar = current.byResource.get(resourceId);
+        return calendar == null ? 0 : calendar.subMap(new Key(time, MIN_ID), true, new Key(time, MAX_ID), true).size();
+    }
+
+    // Active appointments of the resource with from <= time < to in time order, or null when
+    // the range is not entirely inside the loaded window
+    public List<Appointment> bookings(String resourceId, LocalDateTime from, LocalDateTime to) {
+        Snapshot current = current();
+        if (current == null || from.isBefore(current.from) || to.isAfter(current.to)) {
+            return null;
+        }
+        ConcurrentSkipListMap<Key, Appointment> calendar = current.byResource.get(resourceId);
+        if (calendar == null || !from.isBefore(to)) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(calendar.subMap(new Key(from, MIN_ID), true, new Key(to, MIN_ID), false).values());
+    }
+
+    // Applies a committed write
+    @TransactionalEventListener(fallbackExecution = true)
+    @Order(AppointmentsChangedEvent.UPDATE_VIEWS)
+    public void onChange(AppointmentsChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        for (String id : event.getRemovedIds()) {
+            record(new Change(id, null));
+        }
+        for (Appointment appointment : event.getChanged()) {
+            record(new Change(appointment.getId(), copyOf(appointment)));
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Snapshot current = snapshot;
+        stats.put("enabled", enabled);
+        stats.put("loaded", current != null);
+        if (current != null) {
+            stats.put("from", current.from);
+            stats.put("to", current.to);
+            stats.put("appointments", current.entries.size());
+            stats.put("resources", current.byResource.size());
+        }
+        stats.put("catchUps", catchUps.get());
+        stats.put("caughtUpRows", caughtUpRows.get());
+        stats.put("caughtUpDeletions", caughtUpDeletions.get());
+        stats.put("catchUpFailed", catchUpFailed);
+        return stats;
+    }
+
+    // The loaded window, caught up first if the collection version moved since the last
+    // catch-up; null (read the database) when it is not loaded or the catch-up failed
+    private Snapshot current() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        long version = collectionVersion.current();
+        if (version == caughtUpVersion) {
+            return catchUpFailed ? null : current;
+        }
+        synchronized (catchUpLock) {
+            if (version != caughtUpVersion) {
+                catchUp(version);
+            }
+            return catchUpFailed ? null : snapshot;
+        }
+    }
+
+    // Callers hold the catch-up lock
+    private void catchUp(long version) {
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime since = caughtUpTo.minus(catchUpOverlapMillis, ChronoUnit.MILLIS);
+        try {
+            List<Appointment> rows = readOnlyTransaction.execute(status -> {
+                List<Appointment> updated = new ArrayList<>();
+                for (Appointment row : appointmentRepository.findUpdatedSince(since)) {
+                    updated.add(copyOf(row));
+                }
+                return updated;
+            });
+            List<String> deleted = jdbcTemplate.queryForList(
+                    "SELECT id FROM " + DELETIONS + " WHERE deleted_at > ?", String.class, since);
+            // Deletions first, so a row synced back in under the same id is not dropped again
+            for (String id : deleted) {
+                record(new Change(id, null));
+            }
+            for (Appointment row : rows) {
+                record(new Change(row.getId(), row));
+            }
+            caughtUpTo = startedAt;
+            caughtUpVersion = version;
+            catchUpFailed = false;
+            catchUps.incrementAndGet();
+            caughtUpRows.addAndGet(rows.size());
+            caughtUpDeletions.addAndGet(deleted.size());
+        } catch (RuntimeException e) {
+            if (!catchUpFailed) {
+                logger.warn("Schedule view could not catch up, reading from the database: {}", e.getMessage());
+            }
+            catchUpFailed = true;
+        }
+    }
+
+    private void record(Change change) {
+        synchronized (writeLock) {
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+            Snapshot current = snapshot;
+            if (current != null) {
+                current.apply(change);
+            }
+        }
+    }
+
+    // low inclusive, high exclusive
+    private static List<Appointment> range(Snapshot current, Key low, Key high) {
+        if (ORDER.compare(low, high) >= 0) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(current.entries.subMap(low, true, high, false).values());
+    }
+
+    // Detached copy, so later changes to the managed entity never leak into the view
+    private static Appointment copyOf(Appointment source) {
+        Appointment copy = new Appointment(source.getId(), source.getClientId(), source.getTime(),
+                source.getNotes(), source.getStatus());
+        copy.setPractitionerId(source.getPractitionerId());
+        copy.setRoomId(source.getRoomId());
+        copy.setCreatedAt(source.getCreatedAt());
+        copy.setUpdatedAt(source.getUpdatedAt());
+        copy.setVersion(source.getVersion());
+        copy.setSyncHash(source.getSyncHash());
+        copy.setRemindedAt(source.getRemindedAt());
+        return copy;
+    }
+
+    public static final class Tail {
+        private final List<Appointment> appointments;
+        private final LocalDateTime windowEnd;
+
+        private Tail(List<Appointment> appointments, LocalDateTime windowEnd) {
+            this.appointments = appointments;
+            this.windowEnd = windowEnd;
+        }
+
+        public List<Appointment> getAppointments() {
+            return appointments;
+        }
+
+        // Appointments at or after this time are not in the view
+        public LocalDateTime getWindowEnd() {
+            return windowEnd;
+        }
+    }
+
+    private static final class Snapshot {
+        private final LocalDateTime from;
+        private final LocalDateTime to;
+        private final ConcurrentSkipListMap<Key, Appointment> entries = new ConcurrentSkipListMap<>(ORDER);
+        // Current position of each appointment, to find the old entry when its time moves
+        private final ConcurrentHashMap<String, Key> keys = new ConcurrentHashMap<>();
+        // Per-resource calendars, same keys as entries
+        private final ConcurrentHashMap<String, ConcurrentSkipListMap<Key, Appointment>> byResource = new ConcurrentHashMap<>();
+
+        private Snapshot(LocalDateTime from, LocalDateTime to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        private void put(Appointment appointment) {
+            Key key = new Key(appointment.getTime(), appointment.getId());
+            entries.put(key, appointment);
+            keys.put(appointment.getId(), key);
+            index(key, appointment);
+        }
+
+        // Callers hold the write lock. The new entry goes in before the old one comes out,
+        // so a concurrent reader may briefly see both but never neither.
+        private void apply(Change change) {
+            Key old = keys.get(change.id);
+            if (old != null && change.appointment != null && isOlder(change.appointment, entries.get(old))) {
+                return;
+            }
+            boolean inWindow = change.appointment != null
+                    && !change.appointment.getTime().isBefore(from) && change.appointment.getTime().isBefore(to);
+            Key key = null;
+            Appointment previous = old != null ? entries.get(old) : null;
+            if (inWindow) {
+                key = new Key(change.appointment.getTime(), change.id);
+                entries.put(key, change.appointment);
+                keys.put(change.id, key);
+                index(key, change.appointment);
+            } else {
+                keys.remove(change.id);
+            }
+            if (previous != null) {
+                unindex(old, previous, key, inWindow ? change.appointment : null);
+            }
+            if (old != null && !old.equals(key)) {
+                entries.remove(old);
+            }
+        }
+
+        private void index(Key key, Appointment appointment) {
+            for (String resourceId : activeResources(appointment)) {
+                byResource.computeIfAbsent(resourceId, id -> new ConcurrentSkipListMap<>(ORDER)).put(key, appointment);
+            }
+        }
+
+        // Drops the old entry from every calendar the replacement did not just overwrite it in
+        private void unindex(Key oldKey, Appointment previous, Key newKey, Appointment replacement) {
+            List<String> kept = replacement != null && oldKey.equals(newKey)
+                    ? activeResources(replacement) : Collections.<String>emptyList();
+            for (String resourceId : activeResources(previous)) {
+                ConcurrentSkipListMap<Key, Appointment> calendar = byResource.get(resourceId);
+                if (calendar != null && !kept.contains(resourceId)) {
+                    calendar.remove(oldKey);
+                }
+            }
+        }
+
+        private static List<String> activeResources(Appointment appointment) {
+            if (appointment.getStatus() == Appointment.AppointmentStatus.CANCELLED) {
+                return Collections.emptyList();
+            }
+            List<String> resources = new ArrayList<>(2);
+            if (appointment.getPractitionerId() != null) {
+                resources.add(appointment.getPractitionerId());
+            }
+            if (appointment.getRoomId() != null) {
+                resources.add(appointment.getRoomId());
+            }
+            return resources;
+        }
+
+        // A replayed change can be older than what the reload read from the database, and a
+        // catch-up sees the same rows again while they are inside its lookback
+        private static boolean isOlder(Appointment incoming, Appointment current) {
+            return current != null && incoming.getVersion() != null && current.getVersion() != null
+                    && incoming.getVersion() <= current.getVersion();
+        }
+    }
+
+    private static final class Change {
+        private final String id;
+        private final Appointment appointment; // null for a delete
+
+        private Change(String id, Appointment appointment) {
+            this.id = id;
+            this.appointment = appointment;
+        }
+    }
+
+    private static final class Key {
+        private final LocalDateTime time;
+        private final String id;
+
+        private Key(LocalDateTime time, String id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return time.equals(other.time) && id.equals(other.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return time.hashCode() * 31 + id.hashCode();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.clinic.appointment.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+// Keyed cache behind HotQueryCache and ClientSummaryCache. Concurrent misses for one key share
+// a single load, and the loaded value is reused for the ttl the value is given. Every entry
+// carries the tag it was loaded under (such as a collection version) and only serves callers
+// asking with the same tag. A failed load is handed to the callers waiting on it and then
+// forgotten, so the next caller tries again. Values are shared between callers and must be
+// treated as read-only.
+final class SingleFlightCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlightCache.class);
+
+    private final String name;
+    private final int maxEntries;
+    private final ToLongFunction<? super V> ttlMillis;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    SingleFlightCache(String name, int maxEntries, ToLongFunction<? super V> ttlMillis) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    V get(String key, long tag, Supplier<? extends V> load) {
+        Entry<V> mine = new Entry<>(tag);
+        Entry<V> current = entries.get(key);
+        if (current == null || !current.isUsable(tag)) {
+            current = entries.compute(key, (k, existing) -> existing != null && existing.isUsable(tag) ? existing : mine);
+        }
+        if (current != mine) {
+            (current.result.isDone() ? hits : coalesced).incrementAndGet();
+            return await(current.result);
+        }
+
+        loads.incrementAndGet();
+        if (entries.size() > maxEntries) {
+            evict(tag);
+        }
+        try {
+            V value = load.get();
+            mine.expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis.applyAsLong(value)));
+            mine.result.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    void invalidate(String key) {
+        if (entries.remove(key) != null) {
+            invalidations.incrementAndGet();
+        }
+    }
+
+    void addStats(Map<String, Object> stats) {
+        stats.put("entries", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("loads", loads.get());
+        stats.put("invalidations", invalidations.get());
+        stats.put("evictions", evictions.get());
+    }
+
+    // Unusable entries first; if the cache is still full, arbitrary loaded ones until it is not
+    private void evict(long tag) {
+        int before = entries.size();
+        entries.values().removeIf(entry -> entry.result.isDone() && !entry.isUsable(tag));
+        Iterator<Entry<V>> it = entries.values().iterator();
+        while (entries.size() > maxEntries && it.hasNext()) {
+            if (it.next().result.isDone()) {
+                it.remove();
+            }
+        }
+        evictions.addAndGet(Math.max(0, before - entries.size()));
+        logger.debug("{} cache evicted {} entries", name, before - entries.size());
+    }
+
+    private V await(CompletableFuture<V> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            logger.warn("Shared {} load failed: {}", name, e.getMessage());
+            throw e;
+        }
+    }
+
+    private static final class Entry<V> {
+        private final long tag;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        private Entry(long tag) {
+            this.tag = tag;
+        }
+
+        // Same tag, and either still loading or loaded and not yet expired
+        private boolean isUsable(long currentTag) {
+            if (tag != currentTag || result.isCompletedExceptionally()) {
+                return false;
+            }
+            return !result.isDone() || System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
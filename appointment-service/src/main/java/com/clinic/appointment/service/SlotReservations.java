@@ -0,0 +1,246 @@
+package com.clinic.appointment.service;
+
+import com.clinic.common.sync.SyncFingerprint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Serializes bookings per slot without serializing all of them. A slot is a resource (a
+// practitioner, a room, or the clinic-wide timeline for appointments without a practitioner)
+// at one time, so bookings for different practitioners at 10:00 never wait for each other.
+// Each slot key hashes to one of a fixed set of lock stripes, so a booking only waits for
+// others that land on the same stripe. The lock is held until the booking's transaction
+// completes, so the next booking for the slot sees the committed row in its conflict check.
+//
+// Other instances do not share these locks, so each key is also taken as a transaction-scoped
+// Postgres advisory lock; that makes the capacity check in the database exact across
+// instances. The partial unique index on the clinic-wide timeline (time, for every active
+// appointment without a practitioner) stays as a backstop for writers that skip the locks.
+@Component
+@DependsOn("appointmentPartitionManager")
+public class SlotReservations {
+
+    private static final Logger logger = LoggerFactory.getLogger(SlotReservations.class);
+
+    private static final String SLOT_INDEX = "appointments_clinic_slot_key";
+    // Covered every appointment, from before bookings had resources
+    private static final String LEGACY_SLOT_INDEX = "appointments_active_slot_key";
+
+    private static final String CLINIC = "clinic";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Rounded up to a power of two
+    @Value("${appointments.booking.lock-stripes:64}")
+    private int lockStripes;
+
+    @Value("${appointments.booking.lock-timeout-ms:5000}")
+    private long lockTimeoutMillis;
+
+    // Off to leave the indexes below alone at startup, e.g. in the CDS training run
+    @Value("${appointments.booking.schema.enabled:true}")
+    private boolean schemaEnabled;
+
+    @Value("${appointments.booking.slot-constraint:true}")
+    private boolean slotConstraint;
+
+    @Value("${appointments.booking.distributed-locks:true}")
+    private boolean distributedLocks;
+
+    private ReentrantLock[] stripes;
+    private int mask;
+
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong contended = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public SlotReservations(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        int size = Integer.highestOneBit(Math.max(1, lockStripes - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        mask = size - 1;
+
+        if (!schemaEnabled) {
+            return;
+        }
+        createResourceIndexes();
+        if (slotConstraint) {
+            createSlotConstraint();
+        }
+        dropLegacySlotConstraint();
+    }
+
+    // The clinic-wide timeline at this time
+    public static String slot(LocalDateTime time) {
+        return CLINIC + "@" + time;
+    }
+
+    // One resource at this time; resource ids get their own prefix so none can alias the clinic
+    public static String slot(String resourceId, LocalDateTime time) {
+        return "r:" + resourceId + "@" + time;
+    }
+
+    // Locks the given slot keys (nulls are skipped) until the surrounding transaction
+    // completes. Stripes are always taken in index order and advisory locks in key order, so
+    // moving one booking from slot A to B never deadlocks against another moving from B to A.
+    public void lock(String... slots) {
+        boolean[] needed = new boolean[stripes.length];
+        TreeSet<Long> advisoryKeys = new TreeSet<>();
+        for (String slot : slots) {
+            if (slot != null) {
+                long hash = hash(slot);
+                needed[stripe(hash)] = true;
+                advisoryKeys.add(hash);
+            }
+        }
+
+        int held = 0;
+        ReentrantLock[] locked = new ReentrantLock[stripes.length];
+        try {
+            for (int i = 0; i < needed.length; i++) {
+                if (needed[i]) {
+                    acquire(stripes[i]);
+                    locked[held++] = stripes[i];
+                }
+            }
+        } catch (RuntimeException e) {
+            unlock(locked, held);
+            throw e;
+        }
+        holdUntilCompletion(locked, held);
+
+        if (distributedLocks && !advisoryKeys.isEmpty() && TransactionSynchronizationManager.isActualTransactionActive()) {
+            acquireAdvisory(advisoryKeys);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("stripes", stripes.length);
+        stats.put("distributedLocks", distributedLocks);
+        stats.put("acquired", acquired.get());
+        stats.put("contended", contended.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+
+    private void acquire(ReentrantLock lock) {
+        acquired.incrementAndGet();
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.incrementAndGet();
+        try {
+            if (!lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new IllegalStateException("Timed out waiting for the booking lock of the slot");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the booking lock of the slot", e);
+        }
+    }
+
+    // Waits at most the lock timeout for each key; the previous lock_timeout comes back
+    // afterwards, so the rest of the transaction is not affected
+    private void acquireAdvisory(TreeSet<Long> keys) {
+        String previousTimeout = jdbcTemplate.queryForObject("SELECT current_setting('lock_timeout')", String.class);
+        jdbcTemplate.queryForObject("SELECT set_config('lock_timeout', ?, true)", String.class, lockTimeoutMillis + "ms");
+        try {
+            for (long key : keys) {
+                jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + key + ")");
+            }
+        } catch (PessimisticLockingFailureException e) {
+            timeouts.incrementAndGet();
+            throw new IllegalStateException("Timed out waiting for the booking lock of the slot", e);
+        }
+        jdbcTemplate.queryForObject("SELECT set_config('lock_timeout', ?, true)", String.class, previousTimeout);
+    }
+
+    private static void holdUntilCompletion(ReentrantLock[] locked, int count) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    unlock(locked, count);
+                }
+            });
+        } else {
+            // Nothing to hold the lock for
+            unlock(locked, count);
+        }
+    }
+
+    private static void unlock(ReentrantLock[] locked, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            locked[i].unlock();
+        }
+    }
+
+    private int stripe(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    // 64 bits, stable across instances and restarts, unlike String.hashCode's 32; every
+    // instance has to derive the same advisory key for a slot
+    static long hash(String slot) {
+        return SyncFingerprint.of(slot);
+    }
+
+    // Conflict checks and calendar reads look up one resource at one time
+    private void createResourceIndexes() {
+        try {
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS appointments_practitioner_time_idx"
+                    + " ON appointments (practitioner_id, \"time\") WHERE practitioner_id IS NOT NULL");
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS appointments_room_time_idx"
+                    + " ON appointments (room_id, \"time\") WHERE room_id IS NOT NULL");
+        } catch (RuntimeException e) {
+            logger.error("Could not create the resource indexes on appointments: {}", e.getMessage());
+        }
+    }
+
+    // A unique index on a partitioned table has to include the partition key, which "time"
+    // is. Existing double bookings would make it fail; they are reported and left in place.
+    private void createSlotConstraint() {
+        try {
+            jdbcTemplate.execute("CREATE UNIQUE INDEX IF NOT EXISTS " + SLOT_INDEX
+                    + " ON appointments (\"time\") WHERE practitioner_id IS NULL AND status <> 'CANCELLED'");
+        } catch (RuntimeException e) {
+            logger.error("Could not create the unique slot index {}, double bookings across instances are not prevented: {}",
+                    SLOT_INDEX, e.getMessage());
+        }
+    }
+
+    // The old index over all appointments would turn every second practitioner at a time
+    // into a conflict, so it goes whether or not the new one is wanted
+    private void dropLegacySlotConstraint() {
+        try {
+            jdbcTemplate.execute("DROP INDEX IF EXISTS " + LEGACY_SLOT_INDEX);
+        } catch (RuntimeException e) {
+            logger.error("Could not drop the old slot index {}, practitioners cannot share a slot: {}",
+                    LEGACY_SLOT_INDEX, e.getMessage());
+        }
+    }
+}
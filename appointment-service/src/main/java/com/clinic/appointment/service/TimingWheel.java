@@ -0,0 +1,133 @@
+package com.clinic.appointment.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Hashed timing wheel: a ring of buckets, one per tick. A timer lands in the bucket of its
+// deadline tick modulo the ring size, so adding and cancelling are O(1), and each tick only
+// looks at the one bucket it lands on; timers more than one revolution away stay there until
+// their round comes. Deadlines are rounded up to the next tick, and timers are never fired
+// early. Not tied to a clock: the owner calls advance() with the current time.
+public class TimingWheel<T> {
+
+    private final long tickMillis;
+    private final long startMillis;
+    private final Bucket<T>[] buckets;
+    private final int mask;
+
+    // Next tick to expire, counted from startMillis
+    private long tick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        int ringSize = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+        this.buckets = (Bucket<T>[]) new Bucket<?>[ringSize];
+        for (int i = 0; i < ringSize; i++) {
+            buckets[i] = new Bucket<>();
+        }
+        this.mask = ringSize - 1;
+    }
+
+    // Past deadlines fire with the next tick
+    public synchronized Timer<T> schedule(T task, long deadlineMillis) {
+        long deadlineTick = Math.max(tick, ceilDiv(deadlineMillis - startMillis, tickMillis));
+        Timer<T> timer = new Timer<>(task, deadlineTick);
+        buckets[(int) (deadlineTick & mask)].add(timer);
+        size++;
+        return timer;
+    }
+
+    // false if the timer already fired or was cancelled
+    public synchronized boolean cancel(Timer<T> timer) {
+        if (timer.bucket == null) {
+            return false;
+        }
+        timer.bucket.remove(timer);
+        size--;
+        return true;
+    }
+
+    // Expires every tick up to now and returns the due tasks in tick order. After a pause of
+    // more than one revolution each bucket is still visited only once.
+    public synchronized List<T> advance(long nowMillis) {
+        long target = Math.floorDiv(nowMillis - startMillis, tickMillis);
+        List<T> due = new ArrayList<>();
+        for (long t = Math.max(tick, target - mask); t <= target; t++) {
+            Bucket<T> bucket = buckets[(int) (t & mask)];
+            for (Timer<T> timer = bucket.head; timer != null; ) {
+                Timer<T> next = timer.next;
+                if (timer.deadlineTick <= target) {
+                    bucket.remove(timer);
+                    size--;
+                    due.add(timer.task);
+                }
+                timer = next;
+            }
+        }
+        tick = Math.max(tick, target + 1);
+        return due;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int getWheelSize() {
+        return buckets.length;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+
+    public static final class Timer<T> {
+        private final T task;
+        private final long deadlineTick;
+        private Bucket<T> bucket;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        private Timer(T task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        public T getTask() {
+            return task;
+        }
+    }
+
+    // Doubly linked, so a cancel unlinks its timer without searching
+    private static final class Bucket<T> {
+        private Timer<T> head;
+
+        private void add(Timer<T> timer) {
+            timer.bucket = this;
+            timer.next = head;
+            if (head != null) {
+                head.prev = timer;
+            }
+            head = timer;
+        }
+
+        private void remove(Timer<T> timer) {
+            if (timer.prev != null) {
+                timer.prev.next = timer.next;
+            } else {
+                head = timer.next;
+            }
+            if (timer.next != null) {
+                timer.next.prev = timer.prev;
+            }
+            timer.bucket = null;
+            timer.prev = null;
+            timer.next = null;
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.archive.AppointmentArchive;
+import com.clinic.appointment.model.Appointment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Utilization and no-show analytics by hour of the week over ranges of months to years.
+// Postgres does the counting: each part of the range is one GROUP BY over the time range,
+// which returns at most 168 x statuses rows however many appointments it covers, so neither
+// the rows nor entities for them ever reach the JVM. Archived appointments are streamed from
+// their segments one block at a time. Counts go into primitive arrays, one per part, merged
+// at the end, so memory does not grow with the range. With parallelism above 1 the range is
+// split at month boundaries (the partitions) and the parts run side by side, each in its own
+// read-only transaction, which goes to the replica when there is one.
+@Component
+public class UtilizationAnalytics {
+
+    private static final Logger logger = LoggerFactory.getLogger(UtilizationAnalytics.class);
+
+    private static final String COUNT_SQL = "SELECT CAST(EXTRACT(ISODOW FROM \"time\") AS int) * 24 - 24 "
+            + "+ CAST(EXTRACT(HOUR FROM \"time\") AS int) AS hour_of_week, status, count(*) FROM appointments "
+            + "WHERE \"time\" >= ? AND \"time\" < ? GROUP BY 1, 2";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final AppointmentArchive appointmentArchive;
+    private final ExecutorService executor;
+
+    @Value("${appointments.analytics.max-range-days:3660}")
+    private long maxRangeDays;
+
+    @Value("${appointments.analytics.default-parallelism:1}")
+    private int defaultParallelism;
+
+    private final int maxParallelism;
+
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+
+    public UtilizationAnalytics(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                                AppointmentArchive appointmentArchive,
+                                @Value("${appointments.analytics.max-parallelism:4}") int maxParallelism,
+                                @Value("${appointments.analytics.query-timeout-seconds:120}") int queryTimeoutSeconds) {
+        // Its own template, so the timeout only applies to these scans
+        this.jdbcTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+        this.jdbcTemplate.setQueryTimeout(queryTimeoutSeconds);
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.appointmentArchive = appointmentArchive;
+        this.maxParallelism = Math.max(1, maxParallelism);
+        // Shared by all requests, so parallel scans never hold more than this many connections
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.maxParallelism, runnable -> {
+            Thread thread = new Thread(runnable, "analytics-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // Counts and rates per hour of the week for appointments in [from, to). capacity, when
+    // given, is how many appointments one hour can take, and adds utilization to the result.
+    public Map<String, Object> getUtilization(LocalDateTime from, LocalDateTime to, Integer parallelism,
+                                              Integer capacity, boolean includeArchive) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        if (Duration.between(from, to).toDays() > maxRangeDays) {
+            throw new IllegalArgumentException("At most " + maxRangeDays + " days per request");
+        }
+        if (parallelism != null && parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        if (capacity != null && capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+
+        long start = System.nanoTime();
+        List<LocalDateTime> bounds = split(from, to, Math.min(parallelism != null ? parallelism : defaultParallelism, maxParallelism));
+        List<Callable<UtilizationHeatmap>> parts = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.size(); i++) {
+            LocalDateTime partFrom = bounds.get(i);
+            LocalDateTime partTo = bounds.get(i + 1);
+            parts.add(() -> countLive(partFrom, partTo));
+        }
+        if (includeArchive && appointmentArchive.isEnabled()) {
+            parts.add(() -> countArchived(from, to));
+        }
+
+        UtilizationHeatmap heatmap = new UtilizationHeatmap();
+        for (UtilizationHeatmap part : run(parts)) {
+            heatmap.merge(part);
+        }
+
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+        runs.incrementAndGet();
+        lastRunMillis.set(elapsedMillis);
+        Map<String, Object> report = report(heatmap, from, to, capacity);
+        report.put("parts", parts.size());
+        report.put("elapsedMillis", elapsedMillis);
+        logger.info("Utilization from {} to {} in {} parts took {} ms", from, to, parts.size(), elapsedMillis);
+        return report;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("runs", runs.get());
+        stats.put("lastRunMillis", lastRunMillis.get());
+        stats.put("maxParallelism", maxParallelism);
+        stats.put("maxRangeDays", maxRangeDays);
+        return stats;
+    }
+
+    private UtilizationHeatmap countLive(LocalDateTime from, LocalDateTime to) {
+        UtilizationHeatmap heatmap = new UtilizationHeatmap();
+        readOnlyTransaction.executeWithoutResult(status -> jdbcTemplate.query(COUNT_SQL,
+                rs -> {
+                    heatmap.add(rs.getInt(1), Appointment.AppointmentStatus.valueOf(rs.getString(2)), rs.getLong(3));
+                }, from, to));
+        return heatmap;
+    }
+
+    // A row caught between the two tiers by a crashed archive run is counted twice; that is
+    // rare and small enough not to matter here
+    private UtilizationHeatmap countArchived(LocalDateTime from, LocalDateTime to) {
+        UtilizationHeatmap heatmap = new UtilizationHeatmap();
+        appointmentArchive.scanBetween(from, to, heatmap::add);
+        return heatmap;
+    }
+
+    private List<UtilizationHeatmap> run(List<Callable<UtilizationHeatmap>> parts) {
+        List<UtilizationHeatmap> results = new ArrayList<>(parts.size());
+        try {
+            if (parts.size() == 1) {
+                results.add(parts.get(0).call());
+                return results;
+            }
+            for (Future<UtilizationHeatmap> future : executor.invokeAll(parts)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Utilization scan failed: " + e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted during utilization scan", e);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException("Utilization scan failed: " + e.getMessage(), e);
+        }
+    }
+
+    // from, the month boundaries that divide the range into about equal runs of months, and to
+    private static List<LocalDateTime> split(LocalDateTime from, LocalDateTime to, int parts) {
+        List<LocalDateTime> months = new ArrayList<>();
+        LocalDateTime month = from.toLocalDate().withDayOfMonth(1).atStartOfDay().plusMonths(1);
+        for (; month.isBefore(to); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        List<LocalDateTime> bounds = new ArrayList<>();
+        bounds.add(from);
+        int count = Math.min(parts, months.size() + 1);
+        for (int i = 1; i < count; i++) {
+            bounds.add(months.get(i * (months.size() + 1) / count - 1));
+        }
+        bounds.add(to);
+        return bounds;
+    }
+
+    private static Map<String, Object> report(UtilizationHeatmap heatmap, LocalDateTime from, LocalDateTime to,
+                                              Integer capacity) {
+        Appointment.AppointmentStatus[] statuses = Appointment.AppointmentStatus.values();
+        long[] hours = hourOccurrences(from, to);
+
+        Map<String, Object> totals = new LinkedHashMap<>();
+        long total = 0;
+        for (Appointment.AppointmentStatus status : statuses) {
+            long count = heatmap.total(status);
+            totals.put(status.name(), count);
+            total += count;
+        }
+        long cancelled = heatmap.total(Appointment.AppointmentStatus.CANCELLED);
+        long completed = heatmap.total(Appointment.AppointmentStatus.COMPLETED);
+        long noShows = heatmap.total(Appointment.AppointmentStatus.NO_SHOW);
+
+        Map<String, Object> byStatus = new LinkedHashMap<>();
+        for (Appointment.AppointmentStatus status : statuses) {
+            byStatus.put(status.name(), grid(hour -> (double) heatmap.count(hour, status), true));
+        }
+        Map<String, Object> heatmaps = new LinkedHashMap<>();
+        heatmaps.put("booked", grid(hour -> (double) booked(heatmap, hour), true));
+        heatmaps.put("bookedPerHour", grid(hour -> ratio(booked(heatmap, hour), hours[hour]), false));
+        if (capacity != null) {
+            heatmaps.put("utilization", grid(hour -> ratio(booked(heatmap, hour), hours[hour] * capacity), false));
+        }
+        heatmaps.put("noShowRate", grid(hour -> ratio(heatmap.count(hour, Appointment.AppointmentStatus.NO_SHOW),
+                heatmap.count(hour, Appointment.AppointmentStatus.NO_SHOW)
+                        + heatmap.count(hour, Appointment.AppointmentStatus.COMPLETED)), false));
+        heatmaps.put("cancellationRate", grid(hour -> ratio(heatmap.count(hour, Appointment.AppointmentStatus.CANCELLED),
+                total(heatmap, hour)), false));
+        heatmaps.put("byStatus", byStatus);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("from", from);
+        report.put("to", to);
+        report.put("days", DayOfWeek.values());
+        report.put("total", total);
+        report.put("totals", totals);
+        report.put("noShowRate", ratio(noShows, noShows + completed));
+        report.put("cancellationRate", ratio(cancelled, total));
+        report.put("heatmaps", heatmaps);
+        return report;
+    }
+
+    private static long booked(UtilizationHeatmap heatmap, int hour) {
+        return total(heatmap, hour) - heatmap.count(hour, Appointment.AppointmentStatus.CANCELLED);
+    }
+
+    private static long total(UtilizationHeatmap heatmap, int hour) {
+        long total = 0;
+        for (Appointment.AppointmentStatus status : Appointment.AppointmentStatus.values()) {
+            total += heatmap.count(hour, status);
+        }
+        return total;
+    }
+
+    // Seven rows (Monday first) of 24 hours; counts as whole numbers, rates null where
+    // there was nothing to divide by
+    private static List<List<Number>> grid(HourValue value, boolean whole) {
+        List<List<Number>> rows = new ArrayList<>(7);
+        for (int day = 0; day < 7; day++) {
+            List<Number> row = new ArrayList<>(24);
+            for (int hour = 0; hour < 24; hour++) {
+                Double v = value.at(day * 24 + hour);
+                row.add(v == null ? null : whole ? (Number) v.longValue() : (Number) v);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static Double ratio(long numerator, long denominator) {
+        return denominator == 0 ? null : Math.round(numerator * 10000.0 / denominator) / 10000.0;
+    }
+
+    // How often each hour of the week occurs in [from, to), counting partly covered hours
+    private static long[] hourOccurrences(LocalDateTime from, LocalDateTime to) {
+        long[] occurrences = new long[UtilizationHeatmap.HOURS_PER_WEEK];
+        LocalDateTime first = from.truncatedTo(ChronoUnit.HOURS);
+        long hours = ChronoUnit.HOURS.between(first, to.truncatedTo(ChronoUnit.HOURS))
+                + (to.truncatedTo(ChronoUnit.HOURS).isBefore(to) ? 1 : 0);
+        long weeks = hours / UtilizationHeatmap.HOURS_PER_WEEK;
+        for (int i = 0; i < occurrences.length; i++) {
+            occurrences[i] = weeks;
+        }
+        int hour = UtilizationHeatmap.hourOfWeek(first);
+        for (long i = 0; i < hours % UtilizationHeatmap.HOURS_PER_WEEK; i++) {
+            occurrences[(int) ((hour + i) % UtilizationHeatmap.HOURS_PER_WEEK)]++;
+        }
+        return occurrences;
+    }
+
+    private interface HourValue {
+        Double at(int hourOfWeek);
+    }
+}
@@ -0,0 +1,50 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.model.Appointment;
+
+import java.time.LocalDateTime;
+
+// Appointment counts per hour of the week (Monday 00:00 is 0, Sunday 23:00 is 167) and
+// status, in one flat long array, so adding and merging never allocate however many rows
+// go through. Not thread-safe: each part of a split scan fills its own, and they are merged
+// at the end.
+final class UtilizationHeatmap {
+
+    static final int HOURS_PER_WEEK = 7 * 24;
+
+    private static final int STATUS_COUNT = Appointment.AppointmentStatus.values().length;
+
+    private final long[] counts = new long[HOURS_PER_WEEK * STATUS_COUNT];
+
+    void add(int hourOfWeek, Appointment.AppointmentStatus status, long count) {
+        counts[hourOfWeek * STATUS_COUNT + status.ordinal()] += count;
+    }
+
+    void add(Appointment appointment) {
+        if (appointment.getTime() != null && appointment.getStatus() != null) {
+            add(hourOfWeek(appointment.getTime()), appointment.getStatus(), 1);
+        }
+    }
+
+    void merge(UtilizationHeatmap other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    long count(int hourOfWeek, Appointment.AppointmentStatus status) {
+        return counts[hourOfWeek * STATUS_COUNT + status.ordinal()];
+    }
+
+    long total(Appointment.AppointmentStatus status) {
+        long total = 0;
+        for (int hour = 0; hour < HOURS_PER_WEEK; hour++) {
+            total += counts[hour * STATUS_COUNT + status.ordinal()];
+        }
+        return total;
+    }
+
+    static int hourOfWeek(LocalDateTime time) {
+        return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+    }
+}
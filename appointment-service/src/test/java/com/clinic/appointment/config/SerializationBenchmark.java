@@ -0,0 +1,161 @@
+package com.clinic.appointment.config;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.AppointmentRow;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.json.JsonTest;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Bytes and encode time of a large appointment list in each negotiated format (JSON, Smile,
+// CBOR), plain and gzipped as the server compresses them. The mappers are built the way
+// AppConfig builds the message converters, from Boot's ObjectMapper builder, so the numbers
+// match what the list endpoints send. Lists are the full entities (/appointments) and
+// projected rows (?fields=).
+//
+// Not part of the regular test run (the name does not end in Test); run it by name:
+//   mvn -pl appointment-service -am test -Dtest=SerializationBenchmark -Dsurefire.failIfNoSpecifiedTests=false
+// with -Dbenchmark.rows=<list size> (2000) and -Dbenchmark.seconds=<per measurement> (2).
+@JsonTest
+class SerializationBenchmark {
+
+    private static final int ROWS = Integer.getInteger("benchmark.rows", 2000);
+    private static final long MEASURE_NANOS = TimeUnit.SECONDS.toNanos(Integer.getInteger("benchmark.seconds", 2));
+
+    private static final List<String> PROJECTED_FIELDS = Arrays.asList("id", "clientId", "time", "status");
+
+    private static List<Appointment> appointments;
+    private static List<AppointmentRow> rows;
+
+    @Autowired
+    private ObjectProvider<Jackson2ObjectMapperBuilder> builders;
+
+    // Realistic shape: UUID ids, a few hundred clients with several bookings each, times on a
+    // 15-minute grid, mostly scheduled, notes on some
+    @BeforeAll
+    static void createLists() {
+        Random random = new Random(7);
+        List<String> clients = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, ROWS / 6); i++) {
+            clients.add(new UUID(random.nextLong(), random.nextLong()).toString());
+        }
+        Appointment.AppointmentStatus[] statuses = Appointment.AppointmentStatus.values();
+        LocalDateTime start = LocalDateTime.of(2026, 1, 5, 8, 0);
+
+        appointments = new ArrayList<>(ROWS);
+        rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            Appointment appointment = new Appointment(new UUID(random.nextLong(), random.nextLong()).toString(),
+                    clients.get(random.nextInt(clients.size())), start.plusMinutes(15L * i));
+            appointment.setStatus(random.nextInt(4) == 0 ? statuses[random.nextInt(statuses.length)]
+                    : Appointment.AppointmentStatus.SCHEDULED);
+            if (random.nextInt(3) == 0) {
+                appointment.setNotes("Follow-up visit " + random.nextInt(100));
+            }
+            appointment.setCreatedAt(start.minusDays(random.nextInt(60)).plusNanos(random.nextInt(1_000_000_000)));
+            appointment.setUpdatedAt(appointment.getCreatedAt().plusMinutes(random.nextInt(600)));
+            appointment.setVersion((long) random.nextInt(3));
+            appointments.add(appointment);
+
+            AppointmentRow row = new AppointmentRow();
+            row.put("id", appointment.getId());
+            row.put("clientId", appointment.getClientId());
+            row.put("time", appointment.getTime());
+            row.put("status", appointment.getStatus());
+            rows.add(row);
+        }
+    }
+
+    @Test
+    void encodings() throws IOException {
+        AppConfig config = new AppConfig();
+        ObjectMapper json = builders.getObject().build();
+        ObjectMapper smile = config.smileHttpMessageConverter(builders.getObject()).getObjectMapper();
+        ObjectMapper cbor = config.cborHttpMessageConverter(builders.getObject()).getObjectMapper();
+
+        System.out.printf("%n%d appointments, %d s per measurement; rows are fields=%s%n", ROWS,
+                TimeUnit.NANOSECONDS.toSeconds(MEASURE_NANOS), String.join(",", PROJECTED_FIELDS));
+        System.out.printf("%-18s %10s %10s %12s %12s%n", "list / format", "bytes", "gzipped", "encode us", "+ gzip us");
+        for (Object[] list : new Object[][] {{"entities", appointments}, {"rows", rows}}) {
+            Result baseline = measure(json, list[1]);
+            print(list[0] + " / json", baseline, baseline);
+            print(list[0] + " / smile", measure(smile, list[1]), baseline);
+            print(list[0] + " / cbor", measure(cbor, list[1]), baseline);
+        }
+
+        // The binary encodings carry the same data as JSON
+        TypeReference<List<Map<String, Object>>> listOfMaps = new TypeReference<List<Map<String, Object>>>() {};
+        List<Map<String, Object>> expected = json.readValue(json.writeValueAsBytes(appointments), listOfMaps);
+        assertThat(smile.readValue(smile.writeValueAsBytes(appointments), listOfMaps)).isEqualTo(expected);
+        assertThat(cbor.readValue(cbor.writeValueAsBytes(appointments), listOfMaps)).isEqualTo(expected);
+    }
+
+    private static Result measure(ObjectMapper mapper, Object list) throws IOException {
+        Result result = new Result();
+        byte[] encoded = mapper.writeValueAsBytes(list);
+        result.bytes = encoded.length;
+        result.gzipped = gzip(encoded).length;
+
+        // Warm-up, then the measured runs
+        for (int pass = 0; pass < 2; pass++) {
+            long encodeNanos = 0;
+            long gzipNanos = 0;
+            int runs = 0;
+            long end = System.nanoTime() + MEASURE_NANOS;
+            while (System.nanoTime() < end) {
+                long start = System.nanoTime();
+                encoded = mapper.writeValueAsBytes(list);
+                long encodedAt = System.nanoTime();
+                gzip(encoded);
+                long gzippedAt = System.nanoTime();
+                encodeNanos += encodedAt - start;
+                gzipNanos += gzippedAt - encodedAt;
+                runs++;
+            }
+            result.encodeMicros = encodeNanos / 1000.0 / runs;
+            result.gzipMicros = gzipNanos / 1000.0 / runs;
+        }
+        return result;
+    }
+
+    // Default deflate level, as Tomcat's compression uses
+    private static byte[] gzip(byte[] body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (OutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            gzip.write(body);
+        }
+        return out.toByteArray();
+    }
+
+    private static void print(String name, Result result, Result json) {
+        System.out.printf("%-18s %10d %10d %12.1f %12.1f   (%.2fx / %.2fx the JSON bytes)%n", name,
+                result.bytes, result.gzipped, result.encodeMicros, result.encodeMicros + result.gzipMicros,
+                (double) result.bytes / json.bytes, (double) result.gzipped / json.bytes);
+    }
+
+    private static final class Result {
+        int bytes;
+        int gzipped;
+        double encodeMicros;
+        double gzipMicros;
+    }
+}
@@ -0,0 +1,51 @@
+package com.clinic.appointment.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AppointmentRowTest {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    // A projected time reads the same as the full entity's, seconds included and no fraction
+    @Test
+    void timeIsWrittenLikeTheEntity() throws Exception {
+        LocalDateTime time = LocalDateTime.of(2026, 3, 2, 9, 0, 0, 500_000_000);
+        AppointmentRow row = new AppointmentRow();
+        row.put("time", time);
+
+        JsonNode projected = mapper.readTree(mapper.writeValueAsString(row));
+        JsonNode entity = mapper.readTree(mapper.writeValueAsString(new Appointment("a-1", "c-1", time)));
+
+        assertThat(projected.get("time").asText()).isEqualTo("2026-03-02T09:00:00");
+        assertThat(projected.get("time")).isEqualTo(entity.get("time"));
+    }
+
+    @Test
+    void fieldsKeepTheirOrderAndNulls() throws Exception {
+        AppointmentRow row = new AppointmentRow();
+        row.put("status", Appointment.AppointmentStatus.CONFIRMED);
+        row.put("id", "a-1");
+        row.put("notes", null);
+        row.put("time", LocalDateTime.of(2026, 3, 2, 9, 15));
+
+        assertThat(mapper.writeValueAsString(row))
+                .isEqualTo("{\"status\":\"CONFIRMED\",\"id\":\"a-1\",\"notes\":null,\"time\":\"2026-03-02T09:15:00\"}");
+    }
+
+    // Only the appointment's own time is formatted; anything else named differently is left alone
+    @Test
+    void otherValuesUseTheirDefaultSerializers() throws Exception {
+        AppointmentRow row = new AppointmentRow();
+        row.put("time", "not a date");
+        row.put("rank", 0.5f);
+
+        assertThat(mapper.writeValueAsString(row)).isEqualTo("{\"time\":\"not a date\",\"rank\":0.5}");
+    }
+}
@@ -0,0 +1,40 @@
+package com.clinic.appointment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AppointmentPageTest {
+
+    @Test
+    void cursorRoundTrips() {
+        LocalDateTime time = LocalDateTime.of(2026, 3, 2, 9, 30, 15, 123_000_000);
+
+        AppointmentPage.Position position = AppointmentPage.decodeCursor(AppointmentPage.encodeCursor(time, "id|with|bars"));
+
+        assertThat(position.getTime()).isEqualTo(time);
+        assertThat(position.getId()).isEqualTo("id|with|bars");
+    }
+
+    // Cursors go in query strings as they are
+    @Test
+    void cursorIsUrlSafe() {
+        String cursor = AppointmentPage.encodeCursor(LocalDateTime.of(2026, 3, 2, 9, 0), "???>>>~~~");
+
+        assertThat(cursor).matches("[A-Za-z0-9_-]+");
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        String noSeparator = Base64.getUrlEncoder().encodeToString("2026-03-02T09:00".getBytes());
+        String badTime = Base64.getUrlEncoder().encodeToString("yesterday|abc".getBytes());
+
+        assertThatThrownBy(() -> AppointmentPage.decodeCursor(noSeparator)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AppointmentPage.decodeCursor(badTime)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AppointmentPage.decodeCursor("not base64!")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
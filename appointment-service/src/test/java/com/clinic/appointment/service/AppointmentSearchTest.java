@@ -0,0 +1,48 @@
+package com.clinic.appointment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// The search cursor only; the queries need PostgreSQL's text search
+class AppointmentSearchTest {
+
+    @Test
+    void cursorRoundTrips() {
+        LocalDateTime time = LocalDateTime.of(2026, 3, 2, 9, 30);
+
+        AppointmentSearch.Position position = AppointmentSearch.decodeCursor(
+                AppointmentSearch.encodeCursor(0.0607927f, time, "id|with|bars"));
+
+        assertThat(position.rank).isEqualTo(0.0607927f);
+        assertThat(position.time).isEqualTo(time);
+        assertThat(position.id).isEqualTo("id|with|bars");
+    }
+
+    @Test
+    void malformedCursorIsRejected() {
+        String missingId = encode("0.5|2026-03-02T09:00");
+        String badRank = encode("high|2026-03-02T09:00|abc");
+        String badTime = encode("0.5|yesterday|abc");
+
+        assertThatThrownBy(() -> AppointmentSearch.decodeCursor(missingId)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AppointmentSearch.decodeCursor(badRank)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> AppointmentSearch.decodeCursor(badTime)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // A listing cursor is not a search cursor
+    @Test
+    void pageCursorIsRejected() {
+        String pageCursor = AppointmentPage.encodeCursor(LocalDateTime.of(2026, 3, 2, 9, 0), "abc");
+
+        assertThatThrownBy(() -> AppointmentSearch.decodeCursor(pageCursor)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static String encode(String value) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes());
+    }
+}
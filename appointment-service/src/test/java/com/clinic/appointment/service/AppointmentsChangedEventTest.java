@@ -0,0 +1,75 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.DatabaseTest;
+import com.clinic.appointment.model.Appointment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Writers publish one AppointmentsChangedEvent; the caches only act on it once the write commits
+class AppointmentsChangedEventTest extends DatabaseTest {
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private CollectionVersion collectionVersion;
+
+    @Autowired
+    private ClientSummaryCache clientSummaries;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void committedWriteMovesVersionAndDropsClientSummary() {
+        String clientId = "client-" + UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        clientSummaries.get(clientId, () -> summary(loads));
+        long before = collectionVersion.current();
+
+        LocalDateTime time = LocalDateTime.now().plusDays(30).truncatedTo(ChronoUnit.HOURS)
+                .plusMinutes(Math.floorMod(clientId.hashCode(), 60));
+        appointmentService.createAppointment(new Appointment(null, clientId, time));
+
+        assertThat(collectionVersion.current()).isGreaterThan(before);
+        clientSummaries.get(clientId, () -> summary(loads));
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void rolledBackWriteIsNotPublished() {
+        String clientId = "client-" + UUID.randomUUID();
+        AtomicInteger loads = new AtomicInteger();
+        clientSummaries.get(clientId, () -> summary(loads));
+        long before = collectionVersion.current();
+
+        Appointment appointment = new Appointment(UUID.randomUUID().toString(), clientId, LocalDateTime.now());
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(AppointmentsChangedEvent.changed(appointment));
+            status.setRollbackOnly();
+        });
+
+        assertThat(collectionVersion.current()).isEqualTo(before);
+        clientSummaries.get(clientId, () -> summary(loads));
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    private static Map<String, Object> summary(AtomicInteger loads) {
+        loads.incrementAndGet();
+        return Collections.emptyMap();
+    }
+}
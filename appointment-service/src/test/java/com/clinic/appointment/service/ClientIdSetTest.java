@@ -0,0 +1,72 @@
+package com.clinic.appointment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ClientIdSetTest {
+
+    @Test
+    void addContainsRemove() {
+        ClientIdSet ids = new ClientIdSet();
+
+        assertThat(ids.add("client-1")).isTrue();
+        assertThat(ids.add("client-1")).isFalse();
+        assertThat(ids.contains("client-1")).isTrue();
+        assertThat(ids.contains("client-2")).isFalse();
+
+        assertThat(ids.remove("client-1")).isTrue();
+        assertThat(ids.remove("client-1")).isFalse();
+        assertThat(ids.contains("client-1")).isFalse();
+        assertThat(ids.size()).isZero();
+    }
+
+    // Random adds and removes across several resizes, checked against a HashSet; removals
+    // shift later entries of a probe run back, which must never hide an id that is still there
+    @Test
+    void matchesHashSetThroughGrowthAndRemovals() {
+        ClientIdSet ids = new ClientIdSet();
+        Set<String> expected = new HashSet<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20000; i++) {
+            String id = "client-" + random.nextInt(3000);
+            if (random.nextInt(3) == 0) {
+                assertThat(ids.remove(id)).isEqualTo(expected.remove(id));
+            } else {
+                assertThat(ids.add(id)).isEqualTo(expected.add(id));
+            }
+        }
+
+        assertThat(ids.size()).isEqualTo(expected.size());
+        for (int i = 0; i < 3000; i++) {
+            String id = "client-" + i;
+            assertThat(ids.contains(id)).as(id).isEqualTo(expected.contains(id));
+        }
+    }
+
+    @Test
+    void replaceAllDropsDuplicatesAndOldIds() {
+        ClientIdSet ids = new ClientIdSet();
+        ids.add("old");
+
+        ids.replaceAll(Arrays.asList("a", "b", "a", "c"));
+
+        assertThat(ids.size()).isEqualTo(3);
+        assertThat(ids.contains("a")).isTrue();
+        assertThat(ids.contains("c")).isTrue();
+        assertThat(ids.contains("old")).isFalse();
+    }
+
+    @Test
+    void fingerprintIsStableAndNeverEmpty() {
+        assertThat(ClientIdSet.fingerprint("client-1")).isEqualTo(ClientIdSet.fingerprint("client-1"));
+        assertThat(ClientIdSet.fingerprint("client-1")).isNotEqualTo(ClientIdSet.fingerprint("client-2"));
+        assertThat(ClientIdSet.fingerprint("")).isNotZero();
+    }
+}
@@ -0,0 +1,93 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.DatabaseTest;
+import com.clinic.appointment.model.Appointment;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The version is counted by a trigger, so writes that bypass the service move it too
+class CollectionVersionTest extends DatabaseTest {
+
+    @Autowired
+    private CollectionVersion collectionVersion;
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void writeMadeDirectlyAgainstTheTableChangesTheTag() {
+        Appointment appointment = book();
+        String etag = collectionVersion.etag("all");
+        long before = collectionVersion.current();
+
+        jdbcTemplate.update("UPDATE appointments SET notes = 'changed elsewhere' WHERE id = ?", appointment.getId());
+
+        assertThat(collectionVersion.current()).isGreaterThan(before);
+        assertThat(collectionVersion.etag("all")).isNotEqualTo(etag);
+    }
+
+    // One bump per transaction, however many rows and statements it writes
+    @Test
+    void transactionCountsOnce() {
+        Appointment first = book();
+        Appointment second = book();
+        long before = collectionVersion.current();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("UPDATE appointments SET notes = 'bulk' WHERE id IN (?, ?)", first.getId(), second.getId());
+            jdbcTemplate.update("UPDATE appointments SET notes = 'again' WHERE id = ?", first.getId());
+        });
+
+        assertThat(collectionVersion.current()).isEqualTo(before + 1);
+    }
+
+    @Test
+    void rolledBackWriteLeavesTheVersion() {
+        Appointment appointment = book();
+        long before = collectionVersion.current();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("DELETE FROM appointments WHERE id = ?", appointment.getId());
+            status.setRollbackOnly();
+        });
+
+        assertThat(collectionVersion.current()).isEqualTo(before);
+    }
+
+    @Test
+    void keyedTagIsStablePerKeyAndScope() {
+        assertThat(collectionVersion.etag("search", "smith")).isEqualTo(collectionVersion.etag("search", "smith"));
+        assertThat(collectionVersion.etag("search", "smith")).isNotEqualTo(collectionVersion.etag("search", "smyth"));
+        assertThat(collectionVersion.etag("search", "smith")).isNotEqualTo(collectionVersion.etag("client", "smith"));
+        assertThat(collectionVersion.etag("search", "smith")).isNotEqualTo(collectionVersion.etag("search"));
+    }
+
+    // Keys can hold quotes, spaces and non-ASCII text; the tag must still be a valid strong entity tag
+    @Test
+    void keyedTagIsAValidStrongEntityTag() {
+        String etag = collectionVersion.etag("search", "o'brien \"jr\" ü, Zoë");
+
+        assertThat(etag).matches("\"[\\x21\\x23-\\x7e]+\"");
+    }
+
+    private Appointment book() {
+        String clientId = "client-" + UUID.randomUUID();
+        LocalDateTime time = LocalDateTime.now().plusDays(40).truncatedTo(ChronoUnit.HOURS)
+                .plusMinutes(Math.floorMod(clientId.hashCode(), 60));
+        return appointmentService.createAppointment(new Appointment(null, clientId, time));
+    }
+}
@@ -0,0 +1,136 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.DatabaseTest;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.Resource;
+import com.clinic.appointment.repository.AppointmentRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Many bookings for one slot released at the same moment: the slot locks have to let exactly
+// as many through as the slot has room for, and turn the rest away with a conflict
+class ConcurrentBookingTest extends DatabaseTest {
+
+    private static final int THREADS = 16;
+
+    // Each test books its own hour, far enough ahead to stay clear of the others
+    private static final AtomicInteger nextHour = new AtomicInteger();
+
+    @Autowired
+    private AppointmentService appointmentService;
+
+    @Autowired
+    private ResourceService resourceService;
+
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+
+    @Test
+    void clinicSlotIsBookedOnce() throws Exception {
+        LocalDateTime time = freshSlot();
+
+        Outcome outcome = bookConcurrently(i -> new Appointment(null, "client-" + i, time));
+
+        assertThat(outcome.booked).isEqualTo(1);
+        assertThat(outcome.rejected).isEqualTo(THREADS - 1);
+        assertThat(outcome.failures).isEmpty();
+        assertThat(appointmentRepository.findAppointmentsBetween(time, time)).hasSize(1);
+    }
+
+    @Test
+    void practitionerCapacityIsNotExceeded() throws Exception {
+        LocalDateTime time = freshSlot();
+        Resource practitioner = resourceService.createResource(new Resource("practitioner-" + UUID.randomUUID(),
+                "Capacity two", Resource.ResourceType.PRACTITIONER, 2));
+
+        Outcome outcome = bookConcurrently(i -> {
+            Appointment appointment = new Appointment(null, "client-" + i, time);
+            appointment.setPractitionerId(practitioner.getId());
+            return appointment;
+        });
+
+        assertThat(outcome.booked).isEqualTo(2);
+        assertThat(outcome.rejected).isEqualTo(THREADS - 2);
+        assertThat(outcome.failures).isEmpty();
+        assertThat(appointmentRepository.countActiveForPractitionerAt(practitioner.getId(), time)).isEqualTo(2);
+    }
+
+    @Test
+    void differentPractitionersDoNotConflict() throws Exception {
+        LocalDateTime time = freshSlot();
+        List<String> practitioners = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            practitioners.add(resourceService.createResource(new Resource("practitioner-" + UUID.randomUUID(),
+                    "Practitioner " + i, Resource.ResourceType.PRACTITIONER, 1)).getId());
+        }
+
+        Outcome outcome = bookConcurrently(i -> {
+            Appointment appointment = new Appointment(null, "client-" + i, time);
+            appointment.setPractitionerId(practitioners.get(i));
+            return appointment;
+        });
+
+        assertThat(outcome.booked).isEqualTo(THREADS);
+        assertThat(outcome.failures).isEmpty();
+    }
+
+    private static LocalDateTime freshSlot() {
+        return LocalDateTime.now().plusDays(3).truncatedTo(ChronoUnit.DAYS).plusHours(nextHour.getAndIncrement());
+    }
+
+    // Every thread waits at the gate so the bookings hit the slot together
+    private Outcome bookConcurrently(IntFunction<Appointment> booking) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch gate = new CountDownLatch(1);
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                Appointment appointment = booking.apply(i);
+                results.add(executor.submit(() -> {
+                    gate.await();
+                    return appointmentService.createAppointment(appointment);
+                }));
+            }
+            gate.countDown();
+
+            Outcome outcome = new Outcome();
+            for (Future<?> result : results) {
+                try {
+                    result.get(30, TimeUnit.SECONDS);
+                    outcome.booked++;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IllegalArgumentException) {
+                        outcome.rejected++;
+                    } else {
+                        outcome.failures.add(e.getCause());
+                    }
+                }
+            }
+            return outcome;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class Outcome {
+        private int booked;
+        private int rejected;
+        private final List<Throwable> failures = new ArrayList<>();
+    }
+}
@@ -0,0 +1,123 @@
+package com.clinic.appointment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightCacheTest {
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        SingleFlightCache<String> cache = new SingleFlightCache<>("Test", 10, value -> 60000);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            results.add(executor.submit(() -> cache.get("key", 1, () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                await(release);
+                return "value";
+            })));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 0; i < 7; i++) {
+                results.add(executor.submit(() -> cache.get("key", 1, () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                })));
+            }
+            // Let the waiters reach the shared load before it completes
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    void tagChangeAndInvalidateForceReload() {
+        SingleFlightCache<Integer> cache = new SingleFlightCache<>("Test", 10, value -> 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("key", 1, loads::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.get("key", 1, loads::incrementAndGet)).isEqualTo(1);
+        assertThat(cache.get("key", 2, loads::incrementAndGet)).isEqualTo(2);
+
+        cache.invalidate("key");
+        assertThat(cache.get("key", 2, loads::incrementAndGet)).isEqualTo(3);
+
+        Map<String, Object> stats = stats(cache);
+        assertThat(stats.get("loads")).isEqualTo(3L);
+        assertThat(stats.get("hits")).isEqualTo(1L);
+        assertThat(stats.get("invalidations")).isEqualTo(1L);
+    }
+
+    @Test
+    void expiredEntryIsReloaded() throws InterruptedException {
+        SingleFlightCache<Integer> cache = new SingleFlightCache<>("Test", 10, value -> value == 1 ? 20 : 60000);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertThat(cache.get("key", 0, loads::incrementAndGet)).isEqualTo(1);
+        Thread.sleep(50);
+        assertThat(cache.get("key", 0, loads::incrementAndGet)).isEqualTo(2);
+        assertThat(cache.get("key", 0, loads::incrementAndGet)).isEqualTo(2);
+    }
+
+    @Test
+    void failedLoadIsNotCached() {
+        SingleFlightCache<String> cache = new SingleFlightCache<>("Test", 10, value -> 60000);
+
+        assertThatThrownBy(() -> cache.get("key", 0, () -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(cache.get("key", 0, () -> "value")).isEqualTo("value");
+        assertThat(stats(cache).get("entries")).isEqualTo(1);
+    }
+
+    @Test
+    void staysWithinMaxEntries() {
+        SingleFlightCache<Integer> cache = new SingleFlightCache<>("Test", 5, value -> 60000);
+
+        for (int i = 0; i < 50; i++) {
+            cache.get("key-" + i, 0, () -> 0);
+        }
+
+        // The entry being loaded is added before eviction runs, so one over is allowed
+        assertThat((Integer) stats(cache).get("entries")).isLessThanOrEqualTo(6);
+    }
+
+    private static Map<String, Object> stats(SingleFlightCache<?> cache) {
+        Map<String, Object> stats = new HashMap<>();
+        cache.addStats(stats);
+        return stats;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
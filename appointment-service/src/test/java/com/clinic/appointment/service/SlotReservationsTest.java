@@ -0,0 +1,106 @@
+package com.clinic.appointment.service;
+
+import com.clinic.common.sync.SyncFingerprint;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The in-process stripes only; the advisory locks and indexes are covered by ConcurrentBookingTest
+class SlotReservationsTest {
+
+    private static final LocalDateTime TIME = LocalDateTime.of(2026, 3, 2, 10, 0);
+
+    private SlotReservations reservations;
+
+    @BeforeEach
+    void createReservations() {
+        reservations = new SlotReservations(null);
+        ReflectionTestUtils.setField(reservations, "lockStripes", 64);
+        ReflectionTestUtils.setField(reservations, "lockTimeoutMillis", 100L);
+        reservations.init();
+    }
+
+    @AfterEach
+    void clearSynchronization() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void resourceSlotsNeverAliasTheClinicTimeline() {
+        assertThat(SlotReservations.slot(TIME)).isEqualTo(SlotReservations.slot(TIME));
+        assertThat(SlotReservations.slot("clinic", TIME)).isNotEqualTo(SlotReservations.slot(TIME));
+        assertThat(SlotReservations.slot("room-1", TIME)).isNotEqualTo(SlotReservations.slot("room-1", TIME.plusMinutes(30)));
+        assertThat(SlotReservations.slot("room-1", TIME)).isNotEqualTo(SlotReservations.slot("room-2", TIME));
+    }
+
+    // Every instance has to derive the same advisory lock key for a slot
+    @Test
+    void hashIsTheSharedFingerprint() {
+        String slot = SlotReservations.slot("practitioner-7", TIME);
+
+        assertThat(SlotReservations.hash(slot)).isEqualTo(SyncFingerprint.of(slot));
+        assertThat(SlotReservations.hash(slot)).isNotEqualTo(SlotReservations.hash(SlotReservations.slot(TIME)));
+    }
+
+    @Test
+    void stripesArePowerOfTwo() {
+        ReflectionTestUtils.setField(reservations, "lockStripes", 50);
+        reservations.init();
+
+        assertThat(reservations.getStats().get("stripes")).isEqualTo(64);
+    }
+
+    @Test
+    void withoutTransactionTheLockIsReleasedAtOnce() throws Exception {
+        String slot = SlotReservations.slot(TIME);
+        reservations.lock(slot, null);
+
+        assertThat(lockFromAnotherThread(slot)).isTrue();
+    }
+
+    @Test
+    void lockIsHeldUntilTheTransactionCompletes() throws Exception {
+        String slot = SlotReservations.slot("room-1", TIME);
+        TransactionSynchronizationManager.initSynchronization();
+
+        reservations.lock(slot);
+
+        assertThat(lockFromAnotherThread(slot)).isFalse();
+        assertThat(reservations.getStats().get("timeouts")).isEqualTo(1L);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+        }
+        assertThat(lockFromAnotherThread(slot)).isTrue();
+    }
+
+    // true if another thread could take the slot before the lock timeout
+    private boolean lockFromAnotherThread(String slot) throws Exception {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                reservations.lock(slot);
+                return true;
+            } catch (IllegalStateException e) {
+                return false;
+            }
+        }).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void nullSlotsAreSkipped() {
+        reservations.lock((String) null);
+
+        assertThat(reservations.getStats().get("acquired")).isEqualTo(0L);
+    }
+}
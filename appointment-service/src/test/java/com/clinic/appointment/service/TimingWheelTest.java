@@ -0,0 +1,103 @@
+package com.clinic.appointment.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TimingWheelTest {
+
+    private static final long START = 1_000_000;
+
+    @Test
+    void deadlineIsRoundedUpAndNeverFiresEarly() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.schedule("a", START + 250);
+
+        assertThat(wheel.advance(START + 250)).isEmpty();
+        assertThat(wheel.advance(START + 299)).isEmpty();
+        assertThat(wheel.advance(START + 300)).containsExactly("a");
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void pastDeadlineFiresWithTheNextTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        wheel.advance(START + 1000);
+
+        wheel.schedule("late", START + 500);
+
+        assertThat(wheel.advance(START + 1099)).isEmpty();
+        assertThat(wheel.advance(START + 1100)).containsExactly("late");
+    }
+
+    @Test
+    void timersMoreThanOneRevolutionAwayWaitForTheirRound() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        // Same bucket as a timer due at tick 2, one and two revolutions later
+        wheel.schedule("first", START + 200);
+        wheel.schedule("second", START + 200 + 8 * 100);
+        wheel.schedule("third", START + 200 + 16 * 100);
+
+        assertThat(wheel.advance(START + 200)).containsExactly("first");
+        assertThat(wheel.advance(START + 999)).isEmpty();
+        assertThat(wheel.advance(START + 1000)).containsExactly("second");
+        assertThat(wheel.advance(START + 1800)).containsExactly("third");
+    }
+
+    @Test
+    void dueTasksComeBackInTickOrder() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 16, START);
+        for (int i = 9; i >= 0; i--) {
+            wheel.schedule(i, START + i * 10);
+        }
+
+        assertThat(wheel.advance(START + 100)).containsExactly(0, 1, 2, 3, 4, 5, 6, 7, 8, 9);
+    }
+
+    // After a pause of several revolutions every bucket is visited once and nothing is lost
+    @Test
+    void longPauseFiresEverythingDueOnce() {
+        TimingWheel<Integer> wheel = new TimingWheel<>(10, 8, START);
+        Random random = new Random(3);
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            long deadline = START + random.nextInt(5000);
+            wheel.schedule(i, deadline);
+            if (deadline <= START + 3000) {
+                expected.add(i);
+            }
+        }
+
+        List<Integer> due = wheel.advance(START + 3000);
+
+        assertThat(due).containsExactlyInAnyOrderElementsOf(expected);
+        assertThat(wheel.size()).isEqualTo(500 - expected.size());
+        assertThat(wheel.advance(START + 5000)).hasSize(500 - expected.size());
+    }
+
+    @Test
+    void cancelledTimerDoesNotFire() {
+        TimingWheel<String> wheel = new TimingWheel<>(100, 8, START);
+        TimingWheel.Timer<String> cancelled = wheel.schedule("cancelled", START + 100);
+        TimingWheel.Timer<String> fired = wheel.schedule("fired", START + 100);
+
+        assertThat(wheel.cancel(cancelled)).isTrue();
+        assertThat(wheel.cancel(cancelled)).isFalse();
+        assertThat(wheel.advance(START + 100)).containsExactly("fired");
+        assertThat(wheel.cancel(fired)).isFalse();
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void wheelSizeIsRoundedUpToAPowerOfTwo() {
+        assertThat(new TimingWheel<>(100, 8, START).getWheelSize()).isEqualTo(8);
+        assertThat(new TimingWheel<>(100, 9, START).getWheelSize()).isEqualTo(16);
+        assertThat(new TimingWheel<>(100, 1, START).getWheelSize()).isEqualTo(2);
+        assertThatThrownBy(() -> new TimingWheel<>(0, 8, START)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
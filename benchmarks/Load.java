@@ -0,0 +1,66 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Closed-loop HTTP load: each thread sends GETs back to back, cycling through the given
+// URLs, for 5 s of warm-up and then the measured seconds. Prints successful requests per
+// second; statuses of 400 and above and failed requests count as errors.
+//
+// Needs JDK 11+ and no build: java benchmarks/Load.java "<url>,<url>,..." <threads> <seconds>
+// e.g. java benchmarks/Load.java "http://localhost:8082/appointments/1,http://localhost:8082/appointments/stats/count/SCHEDULED" 16 20
+public class Load {
+
+    private static final long WARM_UP_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("usage: java Load.java <comma-separated urls> <threads> <seconds>");
+            System.exit(2);
+        }
+        String[] urls = args[0].split(",");
+        int threads = Integer.parseInt(args[1]);
+        int seconds = Integer.parseInt(args[2]);
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        AtomicLong ok = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long warmEnd = System.nanoTime() + WARM_UP_NANOS;
+        long end = warmEnd + TimeUnit.SECONDS.toNanos(seconds);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            int first = t;
+            pool.submit(() -> {
+                int i = first;
+                while (true) {
+                    long now = System.nanoTime();
+                    if (now > end) {
+                        return null;
+                    }
+                    HttpRequest request = HttpRequest.newBuilder(URI.create(urls[i++ % urls.length]))
+                            .timeout(Duration.ofSeconds(10))
+                            .build();
+                    boolean success;
+                    try {
+                        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                        success = response.statusCode() < 400;
+                    } catch (Exception e) {
+                        success = false;
+                    }
+                    if (now > warmEnd) {
+                        (success ? ok : errors).incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 60, TimeUnit.SECONDS);
+        System.out.printf("ok=%d errors=%d throughput=%.1f req/s%n", ok.get(), errors.get(), ok.get() / (double) seconds);
+    }
+}
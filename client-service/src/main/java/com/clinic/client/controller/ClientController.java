@@ -1,15 +1,23 @@
 package com.clinic.client.controller;
 
 import com.clinic.client.model.Client;
+import com.clinic.client.service.ClientChangeFeed;
 import com.clinic.client.service.ClientService;
+import com.clinic.client.service.CollectionVersion;
+import com.clinic.common.admission.AdmissionControl;
+import com.clinic.common.tracing.Tracer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.validation.Valid;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @RestController
@@ -20,18 +28,37 @@ public class ClientController {
     private static final Logger logger = LoggerFactory.getLogger(ClientController.class);
 
     private final ClientService clientService;
+    private final CollectionVersion collectionVersion;
+    private final AdmissionControl admissionControl;
+    private final Tracer tracer;
+    private final ClientChangeFeed clientChangeFeed;
 
-    public ClientController(ClientService clientService) {
+    public ClientController(ClientService clientService, CollectionVersion collectionVersion,
+                            AdmissionControl admissionControl, Tracer tracer, ClientChangeFeed clientChangeFeed) {
         this.clientService = clientService;
+        this.collectionVersion = collectionVersion;
+        this.admissionControl = admissionControl;
+        this.tracer = tracer;
+        this.clientChangeFeed = clientChangeFeed;
     }
 
     @GetMapping
-    public ResponseEntity<List<Client>> getAllClients() {
-        logger.info("GET /clients - Fetching all clients");
+    public ResponseEntity<List<?>> getAllClients(@RequestParam(required = false) String fields, WebRequest webRequest) {
+        logger.debug("GET /clients - Fetching all clients");
         try {
-            List<Client> clients = clientService.getAllClients();
-            logger.info("Successfully retrieved {} clients", clients.size());
-            return ResponseEntity.ok(clients);
+            List<String> selected = clientService.selectFields(fields);
+            String etag = collectionVersion.etag("all" + fieldsTag(selected) + representation(webRequest));
+            if (webRequest.checkNotModified(etag, collectionVersion.lastModified())) {
+                return notModified(etag);
+            }
+            List<?> clients = selected == null
+                    ? clientService.getAllClients()
+                    : clientService.getAllClients(selected);
+            logger.debug("Successfully retrieved {} clients", clients.size());
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(clients);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error fetching clients: {}", e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -39,13 +66,18 @@ public class ClientController {
     }
 
     @GetMapping("/{id}")
-    public ResponseEntity<Client> getClientById(@PathVariable String id) {
-        logger.info("GET /clients/{} - Fetching client by id", id);
+    public ResponseEntity<Client> getClientById(@PathVariable String id, WebRequest webRequest) {
+        logger.debug("GET /clients/{} - Fetching client by id", id);
         try {
+            // Clients carry no version of their own, so any client write invalidates the tag
+            String etag = collectionVersion.etag("client" + representation(webRequest), id);
+            if (webRequest.checkNotModified(etag, collectionVersion.lastModified())) {
+                return notModified(etag);
+            }
             Optional<Client> client = clientService.getClientById(id);
             if (client.isPresent()) {
-                logger.info("Successfully retrieved client: {}", client.get().getName());
-                return ResponseEntity.ok(client.get());
+                logger.debug("Successfully retrieved client: {}", client.get().getName());
+                return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(client.get());
             } else {
                 logger.warn("Client not found with id: {}", id);
                 return ResponseEntity.notFound().build();
@@ -56,13 +88,51 @@ public class ClientController {
         }
     }
 
+    // All client ids and the change feed position they were read at, for services that keep
+    // a copy of the id set
+    @GetMapping("/ids")
+    public ResponseEntity<Map<String, Object>> getClientIds() {
+        logger.debug("GET /clients/ids - Fetching client id snapshot");
+        try {
+            return ResponseEntity.ok(clientChangeFeed.snapshot());
+        } catch (Exception e) {
+            logger.error("Error fetching client id snapshot: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // Ids added and removed after a feed position, oldest first
+    @GetMapping("/ids/changes")
+    public ResponseEntity<Map<String, Object>> getClientIdChanges(@RequestParam long after,
+                                                                  @RequestParam(defaultValue = "1000") int limit) {
+        logger.debug("GET /clients/ids/changes - Fetching client id changes after {}", after);
+        try {
+            return ResponseEntity.ok(clientChangeFeed.changesAfter(after, limit));
+        } catch (Exception e) {
+            logger.error("Error fetching client id changes: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     @GetMapping("/search")
-    public ResponseEntity<List<Client>> searchClientsByName(@RequestParam String name) {
-        logger.info("GET /clients/search?name={} - Searching clients by name", name);
+    public ResponseEntity<List<?>> searchClientsByName(@RequestParam String name,
+                                                       @RequestParam(required = false) String fields,
+                                                       WebRequest webRequest) {
+        logger.debug("GET /clients/search?name={} - Searching clients by name", name);
         try {
-            List<Client> clients = clientService.searchClientsByName(name);
-            logger.info("Found {} clients matching name: {}", clients.size(), name);
-            return ResponseEntity.ok(clients);
+            List<String> selected = clientService.selectFields(fields);
+            String etag = collectionVersion.etag("search" + fieldsTag(selected) + representation(webRequest), name);
+            if (webRequest.checkNotModified(etag, collectionVersion.lastModified())) {
+                return notModified(etag);
+            }
+            List<?> clients = selected == null
+                    ? clientService.searchClientsByName(name)
+                    : clientService.searchClientsByName(name, selected);
+            logger.debug("Found {} clients matching name: {}", clients.size(), name);
+            return ResponseEntity.ok().cacheControl(CacheControl.noCache()).varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING).eTag(etag).body(clients);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Invalid fields parameter: {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             logger.error("Error searching clients by name {}: {}", name, e.getMessage(), e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
@@ -71,7 +141,7 @@ public class ClientController {
 
     @PostMapping
     public ResponseEntity<Client> createClient(@Valid @RequestBody Client client) {
-        logger.info("POST /clients - Creating new client: {}", client.getName());
+        logger.debug("POST /clients - Creating new client: {}", client.getName());
         try {
             // Check if client already exists by email or phone
             if (clientService.existsByEmail(client.getEmail())) {
@@ -85,7 +155,7 @@ public class ClientController {
             }
 
             Client savedClient = clientService.saveClient(client);
-            logger.info("Successfully created client: {}", savedClient.getName());
+            logger.debug("Successfully created client: {}", savedClient.getName());
             return ResponseEntity.status(HttpStatus.CREATED).body(savedClient);
         } catch (Exception e) {
             logger.error("Error creating client: {}", e.getMessage(), e);
@@ -95,7 +165,7 @@ public class ClientController {
 
     @PutMapping("/{id}")
     public ResponseEntity<Client> updateClient(@PathVariable String id, @Valid @RequestBody Client client) {
-        logger.info("PUT /clients/{} - Updating client", id);
+        logger.debug("PUT /clients/{} - Updating client", id);
         try {
             Optional<Client> existingClient = clientService.getClientById(id);
             if (!existingClient.isPresent()) {
@@ -105,7 +175,7 @@ public class ClientController {
 
             client.setId(id);
             Client updatedClient = clientService.saveClient(client);
-            logger.info("Successfully updated client: {}", updatedClient.getName());
+            logger.debug("Successfully updated client: {}", updatedClient.getName());
             return ResponseEntity.ok(updatedClient);
         } catch (Exception e) {
             logger.error("Error updating client {}: {}", id, e.getMessage(), e);
@@ -115,7 +185,7 @@ public class ClientController {
 
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteClient(@PathVariable String id) {
-        logger.info("DELETE /clients/{} - Deleting client", id);
+        logger.debug("DELETE /clients/{} - Deleting client", id);
         try {
             Optional<Client> existingClient = clientService.getClientById(id);
             if (!existingClient.isPresent()) {
@@ -124,7 +194,7 @@ public class ClientController {
             }
 
             clientService.deleteClient(id);
-            logger.info("Successfully deleted client with id: {}", id);
+            logger.debug("Successfully deleted client with id: {}", id);
             return ResponseEntity.noContent().build();
         } catch (Exception e) {
             logger.error("Error deleting client {}: {}", id, e.getMessage(), e);
@@ -134,7 +204,7 @@ public class ClientController {
 
     @PostMapping("/sync")
     public ResponseEntity<String> manualSync() {
-        logger.info("POST /clients/sync - Manual sync requested");
+        logger.debug("POST /clients/sync - Manual sync requested");
         try {
             clientService.manualSync();
             return ResponseEntity.ok("Sync completed successfully");
@@ -144,4 +214,47 @@ public class ClientController {
                     .body("Sync failed: " + e.getMessage());
         }
     }
+
+    @GetMapping("/admission/stats")
+    public ResponseEntity<Map<String, Object>> getAdmissionStats() {
+        logger.debug("GET /clients/admission/stats - Fetching admission control stats");
+        return ResponseEntity.ok(admissionControl.getStats());
+    }
+
+    // Latest traces kept by tail sampling, newest first; the full record is in the trace file
+    @GetMapping("/traces")
+    public ResponseEntity<List<Map<String, Object>>> getRecentTraces(@RequestParam(defaultValue = "20") int limit) {
+        logger.debug("GET /clients/traces - Fetching {} recent traces", limit);
+        return ResponseEntity.ok(tracer.getRecentTraces(limit));
+    }
+
+    @GetMapping("/traces/stats")
+    public ResponseEntity<Map<String, Object>> getTraceStats() {
+        logger.debug("GET /clients/traces/stats - Fetching tracing and sampling stats");
+        return ResponseEntity.ok(tracer.getStats());
+    }
+
+    private <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+    }
+
+    // A sparse fieldset is a different representation of the same collection
+    private String fieldsTag(List<String> fields) {
+        return fields == null ? "" : "-f." + String.join(".", fields);
+    }
+
+    // Each negotiated format, and the gzipped body Tomcat sends to clients that accept it, is a
+    // separate representation with different bytes, so each gets its own strong ETag
+    private String representation(WebRequest webRequest) {
+        String accept = webRequest.getHeader(HttpHeaders.ACCEPT);
+        String acceptEncoding = webRequest.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        String coding = acceptEncoding != null && acceptEncoding.contains("gzip") ? "-gz" : "";
+        if (accept != null && accept.contains("smile")) {
+            return "-smile" + coding;
+        }
+        if (accept != null && accept.contains("cbor")) {
+            return "-cbor" + coding;
+        }
+        return coding;
+    }
 }
@@ -1,5 +1,7 @@
 package com.clinic.client.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import javax.persistence.*;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
@@ -24,6 +26,11 @@ public class Client {
     @Column(nullable = false)
     private String phone;
 
+    // Fingerprint of the upstream record this row was last synced from; null for local-only rows
+    @JsonIgnore
+    @Column(name = "sync_hash")
+    private Long syncHash;
+
     // Default constructor
     public Client() {}
 
@@ -68,6 +75,14 @@ public class Client {
         this.phone = phone;
     }
 
+    public Long getSyncHash() {
+        return syncHash;
+    }
+
+    public void setSyncHash(Long syncHash) {
+        this.syncHash = syncHash;
+    }
+
     @Override
     public String toString() {
         return "Client{" +
@@ -3,14 +3,19 @@ package com.clinic.client.repository;
 import com.clinic.client.model.Client;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
 
 @Repository
-public interface ClientRepository extends JpaRepository<Client, String> {
+public interface ClientRepository extends JpaRepository<Client, String>, ClientRepositoryCustom {
 
     // Find client by email
     Optional<Client> findByEmail(String email);
@@ -27,4 +32,10 @@ public interface ClientRepository extends JpaRepository<Client, String> {
 
     // Check if client exists by phone
     boolean existsByPhone(String phone);
+
+    // Streams [id, syncHash] pairs for sync change detection without loading entities.
+    // Must be consumed inside a transaction and closed.
+    @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT c.id, c.syncHash FROM Client c")
+    Stream<Object[]> streamSyncHashes();
 }
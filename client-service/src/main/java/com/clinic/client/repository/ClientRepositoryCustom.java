@@ -0,0 +1,24 @@
+package com.clinic.client.repository;
+
+import com.clinic.client.model.Client;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Column projections for list views (the fields= request parameter)
+public interface ClientRepositoryCustom {
+
+    // Everything the JSON representation exposes; syncHash stays internal
+    Set<String> PROJECTABLE_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(
+            "id", "name", "email", "phone")));
+
+    // Selects only the given columns as scalar tuples, so no entity is instantiated or
+    // registered in the persistence context. Each row maps field name to value, in field order.
+    List<Map<String, Object>> findFields(List<String> fields, Specification<Client> filter, Sort sort);
+}
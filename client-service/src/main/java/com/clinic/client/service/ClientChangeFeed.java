@@ -0,0 +1,131 @@
+package com.clinic.client.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Which client ids were added and removed, in order, for services that keep a copy of the id
+// set (appointment-service validates bookings against one). A trigger on clients appends a
+// row per insert, delete or id change, so every writer is covered: the API, the external
+// sync, and anything run directly against the table. Rows older than the retention are
+// pruned; a reader whose position is older than that has to start over from a snapshot.
+@Component
+@DependsOn("entityManagerFactory")
+public class ClientChangeFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientChangeFeed.class);
+
+    private static final String TRIGGER = "clients_change_feed";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // Off to leave the table and trigger alone at startup, e.g. in the CDS training run
+    @Value("${clients.change-feed.schema.enabled:true}")
+    private boolean schemaEnabled;
+
+    @Value("${clients.change-feed.retention-hours:24}")
+    private int retentionHours;
+
+    @Value("${clients.change-feed.max-page:5000}")
+    private int maxPage;
+
+    public ClientChangeFeed(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!schemaEnabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS client_changes ("
+                    + "seq bigserial PRIMARY KEY, client_id varchar(255) NOT NULL, deleted boolean NOT NULL, "
+                    + "changed_at timestamp NOT NULL DEFAULT now())");
+            jdbcTemplate.execute("CREATE OR REPLACE FUNCTION record_client_change() RETURNS trigger AS $$ BEGIN "
+                    + "IF TG_OP = 'INSERT' THEN "
+                    + "INSERT INTO client_changes (client_id, deleted) VALUES (NEW.id, false); "
+                    + "ELSIF TG_OP = 'DELETE' THEN "
+                    + "INSERT INTO client_changes (client_id, deleted) VALUES (OLD.id, true); "
+                    + "ELSIF NEW.id <> OLD.id THEN "
+                    + "INSERT INTO client_changes (client_id, deleted) VALUES (OLD.id, true), (NEW.id, false); "
+                    + "END IF; RETURN NULL; END $$ LANGUAGE plpgsql");
+            Integer triggers = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_trigger WHERE tgname = ? AND tgrelid = 'clients'::regclass", Integer.class, TRIGGER);
+            if (triggers == null || triggers == 0) {
+                jdbcTemplate.execute("CREATE TRIGGER " + TRIGGER + " AFTER INSERT OR DELETE OR UPDATE OF id ON clients "
+                        + "FOR EACH ROW EXECUTE PROCEDURE record_client_change()");
+                logger.info("Created the client change feed trigger");
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not set up the client change feed, id set copies will only refresh from snapshots: {}",
+                    e.getMessage());
+        }
+    }
+
+    // Every client id, with the feed position to read changes from afterwards. The position is
+    // read first, so a change made while the ids are read is also in the feed after it.
+    public Map<String, Object> snapshot() {
+        long seq = latestSeq();
+        List<String> ids = jdbcTemplate.queryForList("SELECT id FROM clients", String.class);
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("seq", seq);
+        snapshot.put("ids", ids);
+        logger.debug("Client id snapshot at {}: {} ids", seq, ids.size());
+        return snapshot;
+    }
+
+    // Changes after the given position, oldest first. reset is true when changes the reader
+    // has not seen were already pruned; it then has to take a new snapshot.
+    public Map<String, Object> changesAfter(long after, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, maxPage));
+        Long oldest = jdbcTemplate.queryForObject("SELECT min(seq) FROM client_changes", Long.class);
+        if (oldest == null) {
+            // Everything was pruned; nothing is missing only if the reader saw the latest change
+            oldest = latestSeq() + 1;
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("reset", after < oldest - 1);
+        List<Map<String, Object>> changes = new ArrayList<>();
+        jdbcTemplate.query("SELECT seq, client_id, deleted FROM client_changes WHERE seq > ? ORDER BY seq LIMIT ?",
+                rs -> {
+                    Map<String, Object> change = new LinkedHashMap<>();
+                    change.put("seq", rs.getLong(1));
+                    change.put("id", rs.getString(2));
+                    change.put("deleted", rs.getBoolean(3));
+                    changes.add(change);
+                }, after, pageSize);
+        result.put("changes", changes);
+        return result;
+    }
+
+    // Last position handed out, including changes whose transactions have not committed yet
+    private long latestSeq() {
+        Long seq = jdbcTemplate.queryForObject(
+                "SELECT CASE WHEN is_called THEN last_value ELSE last_value - 1 END FROM client_changes_seq_seq", Long.class);
+        return seq != null ? seq : 0;
+    }
+
+    @Scheduled(fixedDelayString = "${clients.change-feed.prune-ms:3600000}", initialDelay = 60000)
+    public void prune() {
+        try {
+            int pruned = jdbcTemplate.update("DELETE FROM client_changes WHERE changed_at < now() - make_interval(hours => ?)",
+                    retentionHours);
+            if (pruned > 0) {
+                logger.info("Pruned {} client changes older than {} hours", pruned, retentionHours);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Could not prune the client change feed: {}", e.getMessage());
+        }
+    }
+}
@@ -3,14 +3,24 @@ package com.clinic.client.service;
 import com.clinic.client.external.ExternalClientApi;
 import com.clinic.client.model.Client;
 import com.clinic.client.repository.ClientRepository;
+import com.clinic.common.sync.SyncCoordinator;
+import com.clinic.common.sync.SyncFingerprint;
+import com.clinic.common.sync.SyncHashIndex;
+import com.clinic.common.sync.SyncShard;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Sort;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 @Transactional
@@ -20,46 +30,93 @@ public class ClientService {
 
     private final ClientRepository clientRepository;
     private final ExternalClientApi externalClientApi;
+    private final CollectionVersion collectionVersion;
+    private final SyncCoordinator syncCoordinator;
 
-    public ClientService(ClientRepository clientRepository, ExternalClientApi externalClientApi) {
+    public ClientService(ClientRepository clientRepository, ExternalClientApi externalClientApi,
+                         CollectionVersion collectionVersion, SyncCoordinator syncCoordinator) {
         this.clientRepository = clientRepository;
         this.externalClientApi = externalClientApi;
+        this.collectionVersion = collectionVersion;
+        this.syncCoordinator = syncCoordinator;
     }
 
+    @Transactional(readOnly = true)
     public List<Client> getAllClients() {
-        logger.info("Fetching all clients from database");
+        logger.debug("Fetching all clients from database");
         return clientRepository.findAll();
     }
 
+    // Parses a fields= parameter; null when absent, meaning full entities
+    public List<String> selectFields(String fields) {
+        if (fields == null || fields.trim().isEmpty()) {
+            return null;
+        }
+        List<String> selected = new ArrayList<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!ClientRepository.PROJECTABLE_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field '" + name + "', expected any of "
+                        + ClientRepository.PROJECTABLE_FIELDS);
+            }
+            if (!selected.contains(name)) {
+                selected.add(name);
+            }
+        }
+        return selected;
+    }
+
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> getAllClients(List<String> fields) {
+        logger.debug("Fetching fields {} of all clients", fields);
+        return clientRepository.findFields(fields, null, Sort.unsorted());
+    }
+
+    @Transactional(readOnly = true)
     public Optional<Client> getClientById(String id) {
-        logger.info("Fetching client by id: {}", id);
+        logger.debug("Fetching client by id: {}", id);
         return clientRepository.findById(id);
     }
 
+    @Transactional(readOnly = true)
     public Optional<Client> getClientByEmail(String email) {
-        logger.info("Fetching client by email: {}", email);
+        logger.debug("Fetching client by email: {}", email);
         return clientRepository.findByEmail(email);
     }
 
+    @Transactional(readOnly = true)
     public List<Client> searchClientsByName(String name) {
-        logger.info("Searching clients by name: {}", name);
+        logger.debug("Searching clients by name: {}", name);
         return clientRepository.findByNameContainingIgnoreCase(name);
     }
 
     public Client saveClient(Client client) {
         logger.info("Saving client: {}", client.getName());
-        return clientRepository.save(client);
+        Client savedClient = clientRepository.save(client);
+        collectionVersion.markChanged();
+        return savedClient;
     }
 
     public void deleteClient(String id) {
         logger.info("Deleting client with id: {}", id);
         clientRepository.deleteById(id);
+        collectionVersion.markChanged();
     }
 
+    // Same match as ClientRepository.findByNameContainingIgnoreCase
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> searchClientsByName(String name, List<String> fields) {
+        logger.debug("Searching fields {} of clients by name: {}", fields, name);
+        return clientRepository.findFields(fields, (root, query, cb) -> cb.like(
+                cb.lower(root.get("name")), cb.lower(cb.concat(cb.concat("%", cb.literal(name)), "%"))), Sort.unsorted());
+    }
+
+    @Transactional(readOnly = true)
     public boolean existsByEmail(String email) {
         return clientRepository.existsByEmail(email);
     }
 
+    @Transactional(readOnly = true)
     public boolean existsByPhone(String phone) {
         return clientRepository.existsByPhone(phone);
     }
@@ -67,7 +124,24 @@ public class ClientService {
     // Scheduled method to sync clients from external API every 5 minutes
     @Scheduled(fixedDelay = 300000) // 5 minutes = 300,000 milliseconds
     public void syncClients() {
-        logger.info("Starting scheduled sync of clients from external API");
+        Optional<SyncShard> shard;
+        try {
+            shard = syncCoordinator.begin("client-sync");
+        } catch (Exception e) {
+            logger.error("Could not coordinate client sync: {}", e.getMessage(), e);
+            return;
+        }
+
+        if (!shard.isPresent()) {
+            logger.info("Client sync is owned by another instance, skipping");
+            return;
+        }
+        syncClients(shard.get());
+    }
+
+    // Syncs only the records in the given shard of the upstream feed
+    private void syncClients(SyncShard shard) {
+        logger.info("Starting sync of clients from external API ({})", shard);
         
         try {
             if (!externalClientApi.isApiAvailable()) {
@@ -82,34 +156,57 @@ public class ClientService {
                 return;
             }
 
-            int syncedCount = 0;
-            int updatedCount = 0;
+            // Stored fingerprints only; entities are loaded just for the rows that changed upstream
+            SyncHashIndex stored = new SyncHashIndex(externalClients.size());
+            try (Stream<Object[]> rows = clientRepository.streamSyncHashes()) {
+                rows.forEach(row -> stored.put((String) row[0], row[1] != null ? (Long) row[1] : SyncFingerprint.NONE));
+            }
+
+            Map<String, Long> changed = new LinkedHashMap<>();
+            List<Client> newClients = new ArrayList<>();
+            int unchangedCount = 0;
 
             for (Client externalClient : externalClients) {
-                Optional<Client> existingClient = clientRepository.findById(externalClient.getId());
-                
-                if (existingClient.isPresent()) {
-                    // Update existing client if data has changed
-                    Client existing = existingClient.get();
-                    if (!existing.getName().equals(externalClient.getName()) ||
-                        !existing.getEmail().equals(externalClient.getEmail()) ||
-                        !existing.getPhone().equals(externalClient.getPhone())) {
-                        
-                        existing.setName(externalClient.getName());
-                        existing.setEmail(externalClient.getEmail());
-                        existing.setPhone(externalClient.getPhone());
-                        clientRepository.save(existing);
-                        updatedCount++;
-                        logger.debug("Updated client: {}", existing.getName());
-                    }
+                if (!shard.owns(externalClient.getId())) {
+                    continue;
+                }
+
+                long hash = fingerprint(externalClient);
+                if (!stored.containsKey(externalClient.getId())) {
+                    externalClient.setSyncHash(hash);
+                    newClients.add(externalClient);
+                    stored.put(externalClient.getId(), hash);
+                } else if (stored.get(externalClient.getId()) != hash) {
+                    changed.put(externalClient.getId(), hash);
                 } else {
-                    // Save new client
-                    clientRepository.save(externalClient);
-                    syncedCount++;
-                    logger.debug("Synced new client: {}", externalClient.getName());
+                    unchangedCount++;
                 }
             }
 
+            if (!changed.isEmpty()) {
+                Map<String, Client> externalById = new HashMap<>();
+                for (Client externalClient : externalClients) {
+                    externalById.put(externalClient.getId(), externalClient);
+                }
+                for (Client existing : clientRepository.findAllById(changed.keySet())) {
+                    Client externalClient = externalById.get(existing.getId());
+                    existing.setName(externalClient.getName());
+                    existing.setEmail(externalClient.getEmail());
+                    existing.setPhone(externalClient.getPhone());
+                    existing.setSyncHash(changed.get(existing.getId()));
+                    logger.debug("Updated client: {}", existing.getName());
+                }
+            }
+            clientRepository.saveAll(newClients);
+
+            int syncedCount = newClients.size();
+            int updatedCount = changed.size();
+            logger.debug("Unchanged clients skipped by fingerprint: {}", unchangedCount);
+
+            if (syncedCount > 0 || updatedCount > 0) {
+                collectionVersion.markChanged();
+            }
+
             logger.info("Sync completed. New clients: {}, Updated clients: {}", syncedCount, updatedCount);
 
         } catch (Exception e) {
@@ -117,9 +214,15 @@ public class ClientService {
         }
     }
 
-    // Manual sync method that can be called via API
+    // Covers exactly the fields the sync copies, so a local edit does not trigger a rewrite
+    // until the upstream record itself changes
+    private long fingerprint(Client client) {
+        return SyncFingerprint.of(client.getId(), client.getName(), client.getEmail(), client.getPhone());
+    }
+
+    // Manual sync method that can be called via API; always covers the whole feed
     public void manualSync() {
         logger.info("Manual sync requested");
-        syncClients();
+        syncClients(SyncShard.ALL);
     }
 }
@@ -0,0 +1,40 @@
+package com.clinic.client.service;
+
+import com.clinic.common.datasource.ReadWriteRoutingDataSource;
+import com.clinic.common.etag.TableVersion;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Version of the clients collection, counted in the database (see TableVersion).
+// Lets the controllers answer conditional GETs before running any query.
+@Component
+@DependsOn("entityManagerFactory")
+public class CollectionVersion extends TableVersion {
+
+    public CollectionVersion(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             ReadWriteRoutingDataSource routingDataSource,
+                             @Value("${clients.collection-version.max-staleness-ms:1000}") long maxStalenessMillis,
+                             @Value("${clients.collection-version.schema.enabled:true}") boolean schemaEnabled) {
+        super("clients", jdbcTemplate, transactionTemplate, routingDataSource, maxStalenessMillis, schemaEnabled);
+    }
+
+    // Re-read once the surrounding transaction commits; before that the database still has
+    // the old version
+    public void markChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    refresh();
+                }
+            });
+        } else {
+            refresh();
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.clinic.common.admission;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.util.AntPathMatcher;
+
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Admission control for the HTTP API. Requests are sorted into lanes by priority:
+//   write - POST/PUT/PATCH/DELETE, never shed for latency, longest queue wait
+//   read  - single-record GETs
+//   bulk  - list endpoints and manual syncs, shed first when the service is overloaded
+// Each lane has a concurrency limit and an optional token bucket. When the average time
+// spent waiting for a permit passes the target, bulk requests stop queueing and get a 503
+// so that writes and point reads keep their latency while the database is slow.
+public class AdmissionControl {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControl.class);
+
+    // Weight of the newest sample in the queue wait average
+    private static final double EWMA_ALPHA = 0.2;
+
+    public enum Lane { WRITE, READ, BULK }
+
+    // Off unless a service turns it on, so a service without admission.* settings is not limited
+    @Value("${admission.enabled:false}")
+    private boolean enabled;
+
+    @Value("${admission.queue-latency-target-ms:50}")
+    private long queueLatencyTargetMillis;
+
+    @Value("${admission.retry-after-seconds:2}")
+    private int retryAfterSeconds;
+
+    @Value("${admission.bulk-paths:}")
+    private List<String> bulkPaths;
+
+    @Value("${admission.write.max-concurrent:8}")
+    private int writeMaxConcurrent;
+    @Value("${admission.write.max-wait-ms:2000}")
+    private long writeMaxWaitMillis;
+    @Value("${admission.write.rate-per-second:0}")
+    private double writeRatePerSecond;
+
+    @Value("${admission.read.max-concurrent:16}")
+    private int readMaxConcurrent;
+    @Value("${admission.read.max-wait-ms:500}")
+    private long readMaxWaitMillis;
+    @Value("${admission.read.rate-per-second:0}")
+    private double readRatePerSecond;
+
+    @Value("${admission.bulk.max-concurrent:4}")
+    private int bulkMaxConcurrent;
+    @Value("${admission.bulk.max-wait-ms:250}")
+    private long bulkMaxWaitMillis;
+    @Value("${admission.bulk.rate-per-second:20}")
+    private double bulkRatePerSecond;
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final Map<Lane, LaneState> lanes = new EnumMap<>(Lane.class);
+
+    // Nanoseconds, stored as raw double bits so it can be updated without a lock
+    private final AtomicLong queueWaitEwma = new AtomicLong(Double.doubleToLongBits(0));
+
+    @PostConstruct
+    public void init() {
+        lanes.put(Lane.WRITE, new LaneState(writeMaxConcurrent, writeMaxWaitMillis, writeRatePerSecond));
+        lanes.put(Lane.READ, new LaneState(readMaxConcurrent, readMaxWaitMillis, readRatePerSecond));
+        lanes.put(Lane.BULK, new LaneState(bulkMaxConcurrent, bulkMaxWaitMillis, bulkRatePerSecond));
+        logger.info("Admission control {}: target queue latency {} ms, bulk paths {}",
+                enabled ? "enabled" : "disabled", queueLatencyTargetMillis, bulkPaths);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Bulk paths are "[METHOD ]pattern"; without a method they only match GET and HEAD
+    public Lane classify(String method, String path) {
+        boolean read = HttpMethod.GET.matches(method) || HttpMethod.HEAD.matches(method);
+        for (String entry : bulkPaths) {
+            String[] parts = entry.trim().split("\\s+", 2);
+            boolean methodMatches = parts.length == 2 ? parts[0].equalsIgnoreCase(method) : read;
+            if (methodMatches && pathMatcher.match(parts[parts.length - 1], path)) {
+                return Lane.BULK;
+            }
+        }
+        return read ? Lane.READ : Lane.WRITE;
+    }
+
+    // Either a permit the caller must release, or the reason the request was turned away
+    public Decision admit(Lane lane) throws InterruptedException {
+        LaneState state = lanes.get(lane);
+
+        long retryAfterNanos = state.bucket.tryConsume();
+        if (retryAfterNanos > 0) {
+            state.rateLimited.incrementAndGet();
+            return Decision.rejected(429, Math.max(1, (int) TimeUnit.NANOSECONDS.toSeconds(retryAfterNanos + 999_999_999L)));
+        }
+
+        if (state.permits.tryAcquire()) {
+            recordQueueWait(0);
+            state.admitted.incrementAndGet();
+            return Decision.admitted(state);
+        }
+
+        // Already over the latency target: bulk work is not allowed to queue at all,
+        // and point reads queue no longer than the target itself
+        long maxWaitMillis = state.maxWaitMillis;
+        if (isOverloaded()) {
+            if (lane == Lane.BULK) {
+                state.shed.incrementAndGet();
+                return Decision.rejected(503, retryAfterSeconds);
+            }
+            if (lane == Lane.READ) {
+                maxWaitMillis = Math.min(maxWaitMillis, queueLatencyTargetMillis);
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean acquired = state.permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        recordQueueWait(System.nanoTime() - start);
+        if (!acquired) {
+            state.timedOut.incrementAndGet();
+            return Decision.rejected(503, retryAfterSeconds);
+        }
+        state.admitted.incrementAndGet();
+        state.queued.incrementAndGet();
+        return Decision.admitted(state);
+    }
+
+    public boolean isOverloaded() {
+        return currentQueueWaitNanos() > TimeUnit.MILLISECONDS.toNanos(queueLatencyTargetMillis);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("overloaded", isOverloaded());
+        stats.put("queueWaitAvgMillis", currentQueueWaitNanos() / 1_000_000.0);
+        stats.put("queueLatencyTargetMillis", queueLatencyTargetMillis);
+        for (Map.Entry<Lane, LaneState> lane : lanes.entrySet()) {
+            stats.put(lane.getKey().name().toLowerCase(), lane.getValue().toMap());
+        }
+        return stats;
+    }
+
+    private double currentQueueWaitNanos() {
+        return Double.longBitsToDouble(queueWaitEwma.get());
+    }
+
+    private void recordQueueWait(long nanos) {
+        long previous;
+        long next;
+        do {
+            previous = queueWaitEwma.get();
+            double average = Double.longBitsToDouble(previous);
+            next = Double.doubleToLongBits(average + EWMA_ALPHA * (nanos - average));
+        } while (!queueWaitEwma.compareAndSet(previous, next));
+    }
+
+    public static final class Decision {
+        private final LaneState lane;
+        private final int status;
+        private final int retryAfterSeconds;
+
+        private Decision(LaneState lane, int status, int retryAfterSeconds) {
+            this.lane = lane;
+            this.status = status;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        private static Decision admitted(LaneState lane) {
+            return new Decision(lane, 0, 0);
+        }
+
+        private static Decision rejected(int status, int retryAfterSeconds) {
+            return new Decision(null, status, retryAfterSeconds);
+        }
+
+        public boolean isAdmitted() {
+            return lane != null;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public int getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        // Must be called exactly once for an admitted request
+        public void release() {
+            if (lane != null) {
+                lane.permits.release();
+            }
+        }
+    }
+
+    private static final class LaneState {
+        private final Semaphore permits;
+        private final int maxConcurrent;
+        private final long maxWaitMillis;
+        private final TokenBucket bucket;
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong rateLimited = new AtomicLong();
+        private final AtomicLong shed = new AtomicLong();
+        private final AtomicLong timedOut = new AtomicLong();
+
+        private LaneState(int maxConcurrent, long maxWaitMillis, double ratePerSecond) {
+            this.permits = new Semaphore(maxConcurrent, true);
+            this.maxConcurrent = maxConcurrent;
+            this.maxWaitMillis = maxWaitMillis;
+            this.bucket = new TokenBucket(ratePerSecond);
+        }
+
+        private Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("inFlight", maxConcurrent - permits.availablePermits());
+            map.put("maxConcurrent", maxConcurrent);
+            map.put("waiting", permits.getQueueLength());
+            map.put("admitted", admitted.get());
+            map.put("queued", queued.get());
+            map.put("rateLimited", rateLimited.get());
+            map.put("shed", shed.get());
+            map.put("timedOut", timedOut.get());
+            return map;
+        }
+    }
+
+    // Refills continuously at the configured rate with a burst of one second's worth.
+    // A rate of zero or less disables the bucket.
+    private static final class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        private TokenBucket(double ratePerSecond) {
+            this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+            this.capacity = Math.max(1, ratePerSecond);
+            this.tokens = capacity;
+        }
+
+        // 0 when a token was taken, otherwise the nanoseconds until one is available
+        private synchronized long tryConsume() {
+            if (ratePerNano <= 0) {
+                return 0;
+            }
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+    }
+}
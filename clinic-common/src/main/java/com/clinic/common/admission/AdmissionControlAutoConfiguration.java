@@ -0,0 +1,25 @@
+package com.clinic.common.admission;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+
+// Admission control for the web services with clinic-common on their class path; off unless
+// admission.enabled=true, and configured through admission.*. Controllers inject
+// AdmissionControl for their /admission/stats endpoint.
+@AutoConfiguration(after = JacksonAutoConfiguration.class)
+public class AdmissionControlAutoConfiguration {
+
+    @Bean
+    public AdmissionControl admissionControl() {
+        return new AdmissionControl();
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public AdmissionControlFilter admissionControlFilter(AdmissionControl admissionControl, ObjectMapper objectMapper) {
+        return new AdmissionControlFilter(admissionControl, objectMapper);
+    }
+}
@@ -0,0 +1,101 @@
+package com.clinic.common.admission;
+
+import com.clinic.common.startup.StartupTimeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Runs ahead of Spring MVC so rejected requests cost no controller, transaction or connection
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlFilter.class);
+
+    private final AdmissionControl admissionControl;
+    private final ObjectMapper objectMapper;
+
+    public AdmissionControlFilter(AdmissionControl admissionControl, ObjectMapper objectMapper) {
+        this.admissionControl = admissionControl;
+        this.objectMapper = objectMapper;
+    }
+
+    // CORS preflights, health probes and the stats endpoint must keep answering while the
+    // service is shedding; the startup warm-up runs before traffic and is not rate limited
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !admissionControl.isEnabled()
+                || HttpMethod.OPTIONS.matches(request.getMethod())
+                || request.getRequestURI().endsWith("/admission/stats")
+                || request.getRequestURI().startsWith("/actuator/")
+                || isLocalWarmup(request);
+    }
+
+    private boolean isLocalWarmup(HttpServletRequest request) {
+        if (request.getHeader(StartupTimeline.WARMUP_HEADER) == null) {
+            return false;
+        }
+        String remote = request.getRemoteAddr();
+        return "127.0.0.1".equals(remote) || "0:0:0:0:0:0:0:1".equals(remote) || "::1".equals(remote);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        AdmissionControl.Lane lane = admissionControl.classify(request.getMethod(), request.getRequestURI());
+
+        AdmissionControl.Decision decision;
+        try {
+            decision = admissionControl.admit(lane);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reject(request, response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, 1);
+            return;
+        }
+
+        if (!decision.isAdmitted()) {
+            logger.debug("{} {} rejected in {} lane with {}", request.getMethod(), request.getRequestURI(),
+                    lane, decision.getStatus());
+            reject(request, response, decision.getStatus(), decision.getRetryAfterSeconds());
+            return;
+        }
+
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            decision.release();
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, int status, int retryAfterSeconds)
+            throws IOException {
+        // Same shape as the services' GlobalExceptionHandler error responses
+        Map<String, Object> errorResponse = new LinkedHashMap<>();
+        errorResponse.put("message", status == 429 ? "Too many requests" : "Service is overloaded");
+        errorResponse.put("status", status);
+        errorResponse.put("timestamp", LocalDateTime.now());
+        errorResponse.put("path", "uri=" + request.getRequestURI());
+        errorResponse.put("validationErrors", null);
+
+        response.setStatus(status);
+        response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        // The controllers' @CrossOrigin never runs for a rejected request
+        response.setHeader(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+}
@@ -0,0 +1,194 @@
+package com.clinic.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseCookie;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Sends connections for read-only transactions to the replica pool and everything else
+// (writes, non-transactional JDBC, schema updates) to the primary.
+// Only works behind a LazyConnectionDataSourceProxy: the read-only flag is bound to the
+// thread after the transaction manager has asked for a connection.
+//
+// Read-your-writes is kept per client, not per instance: a write transaction during an HTTP
+// request sends a cookie holding the time until which that client's reads stay on the
+// primary, so its next requests do not read a lagging replica. Other clients keep reading
+// the replica. Whether a request reads the primary is decided once and kept for the whole
+// request, and a write turns it on for the rest of that request.
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    private static final String PRIMARY = "primary";
+    private static final String REPLICA = "replica";
+
+    public static final String PRIMARY_UNTIL_COOKIE = "read-primary-until";
+    // Request attributes: whether this request reads the primary, and whether it sent the cookie
+    private static final String READS_PRIMARY = ReadWriteRoutingDataSource.class.getName() + ".readsPrimary";
+    private static final String COOKIE_SENT = ReadWriteRoutingDataSource.class.getName() + ".cookieSent";
+
+    private final DataSource primary;
+    private final HikariDataSource replica;
+    private final long retryAfterFailureNanos;
+    private final long primaryAfterWriteMillis;
+
+    // System.nanoTime() deadline; 0 means not set
+    private volatile long replicaDownUntil;
+
+    public ReadWriteRoutingDataSource(DataSource primary, HikariDataSource replica,
+                                      long retryAfterFailureMillis, long primaryAfterWriteMillis) {
+        this.primary = primary;
+        this.replica = replica;
+        this.retryAfterFailureNanos = TimeUnit.MILLISECONDS.toNanos(retryAfterFailureMillis);
+        this.primaryAfterWriteMillis = primaryAfterWriteMillis;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        if (replica != null) {
+            targets.put(REPLICA, replica);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        setLenientFallback(false);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Only a write transaction can leave the replica behind; non-transactional JDBC
+            // such as a poller's queries goes to the primary without pinning later reads there
+            if (replica != null && TransactionSynchronizationManager.isActualTransactionActive()) {
+                writeInRequest();
+            }
+            return PRIMARY;
+        }
+        if (replica == null || readsPrimaryInRequest()) {
+            return PRIMARY;
+        }
+        long downUntil = replicaDownUntil;
+        if (downUntil != 0 && System.nanoTime() - downUntil < 0) {
+            return PRIMARY;
+        }
+        return REPLICA;
+    }
+
+    // Whether reads on this thread go to the primary for read-your-writes: decided from the
+    // request's cookie the first time it is asked, false outside HTTP requests
+    public boolean readsPrimaryInRequest() {
+        HttpServletRequest request = currentRequest();
+        if (request == null) {
+            return false;
+        }
+        Object decided = request.getAttribute(READS_PRIMARY);
+        if (decided == null) {
+            // A deadline further out than one window was not set by this service
+            long remaining = primaryUntil(request) - System.currentTimeMillis();
+            decided = remaining > 0 && remaining <= primaryAfterWriteMillis;
+            request.setAttribute(READS_PRIMARY, decided);
+        }
+        return (Boolean) decided;
+    }
+
+    // Once per request: the rest of it reads the primary, and the client's next requests do
+    // too until the window has passed
+    private void writeInRequest() {
+        ServletRequestAttributes attributes = requestAttributes();
+        if (attributes == null || attributes.getRequest().getAttribute(COOKIE_SENT) != null) {
+            return;
+        }
+        HttpServletRequest request = attributes.getRequest();
+        request.setAttribute(READS_PRIMARY, Boolean.TRUE);
+        request.setAttribute(COOKIE_SENT, Boolean.TRUE);
+        HttpServletResponse response = attributes.getResponse();
+        if (response == null || response.isCommitted()) {
+            return;
+        }
+        ResponseCookie cookie = ResponseCookie.from(PRIMARY_UNTIL_COOKIE,
+                        Long.toString(System.currentTimeMillis() + primaryAfterWriteMillis))
+                .maxAge(Duration.ofMillis(primaryAfterWriteMillis).plusSeconds(1))
+                .path("/")
+                .httpOnly(true)
+                .sameSite("Lax")
+                .build();
+        response.addHeader(HttpHeaders.SET_COOKIE, cookie.toString());
+    }
+
+    private static long primaryUntil(HttpServletRequest request) {
+        Cookie[] cookies = request.getCookies();
+        if (cookies == null) {
+            return 0;
+        }
+        for (Cookie cookie : cookies) {
+            if (PRIMARY_UNTIL_COOKIE.equals(cookie.getName())) {
+                try {
+                    return Long.parseLong(cookie.getValue());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
+    private static HttpServletRequest currentRequest() {
+        ServletRequestAttributes attributes = requestAttributes();
+        return attributes != null ? attributes.getRequest() : null;
+    }
+
+    private static ServletRequestAttributes requestAttributes() {
+        return RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes
+                ? (ServletRequestAttributes) RequestContextHolder.getRequestAttributes() : null;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (determineCurrentLookupKey() != REPLICA) {
+            return primary.getConnection();
+        }
+        try {
+            return replica.getConnection();
+        } catch (SQLException | RuntimeException e) {
+            replicaUnavailable(e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    public boolean hasReplica() {
+        return replica != null;
+    }
+
+    @Override
+    public void destroy() {
+        if (replica != null) {
+            replica.close();
+        }
+    }
+
+    private void replicaUnavailable(Exception e) {
+        replicaDownUntil = System.nanoTime() + retryAfterFailureNanos;
+        logger.warn("Read replica unavailable, using the primary for {} ms: {}",
+                TimeUnit.NANOSECONDS.toMillis(retryAfterFailureNanos), e.getMessage());
+    }
+}
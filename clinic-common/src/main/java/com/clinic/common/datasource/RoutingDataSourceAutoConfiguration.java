@@ -0,0 +1,99 @@
+package com.clinic.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+// Primary pool from spring.datasource.*, optional read replica pool from replica.datasource.*,
+// for every service with clinic-common and a JDBC pool on its class path. Read-only
+// transactions go to the replica when one is configured and reachable. Runs before Boot's
+// own DataSource setup, which then backs off.
+@AutoConfiguration(before = DataSourceAutoConfiguration.class)
+@ConditionalOnClass({HikariDataSource.class, LazyConnectionDataSourceProxy.class})
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class RoutingDataSourceAutoConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoutingDataSourceAutoConfiguration.class);
+
+    @Value("${replica.datasource.url:}")
+    private String replicaUrl;
+
+    // Blank means the primary's credentials
+    @Value("${replica.datasource.username:}")
+    private String replicaUsername;
+
+    @Value("${replica.datasource.password:}")
+    private String replicaPassword;
+
+    @Value("${replica.datasource.maximum-pool-size:10}")
+    private int replicaMaximumPoolSize;
+
+    // Kept short so a dead replica delays a read by seconds, not the Hikari default of 30
+    @Value("${replica.datasource.connection-timeout-ms:2000}")
+    private long replicaConnectionTimeoutMillis;
+
+    @Value("${replica.datasource.retry-after-failure-ms:30000}")
+    private long replicaRetryAfterFailureMillis;
+
+    // How long a client's reads stay on the primary after it wrote
+    @Value("${replica.datasource.primary-after-write-ms:5000}")
+    private long primaryAfterWriteMillis;
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReadWriteRoutingDataSource routingDataSource(HikariDataSource primaryDataSource, DataSourceProperties properties) {
+        HikariDataSource replica = null;
+        if (StringUtils.hasText(replicaUrl)) {
+            replica = new HikariDataSource();
+            replica.setPoolName("replica");
+            replica.setJdbcUrl(replicaUrl);
+            replica.setUsername(StringUtils.hasText(replicaUsername) ? replicaUsername : properties.determineUsername());
+            replica.setPassword(StringUtils.hasText(replicaPassword) ? replicaPassword : properties.determinePassword());
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(replicaMaximumPoolSize);
+            replica.setConnectionTimeout(replicaConnectionTimeoutMillis);
+            replica.setReadOnly(true);
+            logger.info("Routing read-only transactions to replica {}", replicaUrl);
+        } else {
+            logger.info("No read replica configured, all transactions use the primary");
+        }
+        return new ReadWriteRoutingDataSource(primaryDataSource, replica,
+                replicaRetryAfterFailureMillis, primaryAfterWriteMillis);
+    }
+
+    // The lazy proxy defers picking a pool until the first statement, by which time
+    // the transaction's read-only flag is visible to the router. The connection defaults
+    // are given up front (Hikari and PostgreSQL defaults), otherwise the proxy opens a
+    // connection at startup just to read them.
+    @Bean
+    @Primary
+    public DataSource dataSource(ReadWriteRoutingDataSource routingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+        dataSource.setTargetDataSource(routingDataSource);
+        dataSource.setDefaultAutoCommit(true);
+        dataSource.setDefaultTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+        dataSource.afterPropertiesSet();
+        return dataSource;
+    }
+}
@@ -0,0 +1,27 @@
+package com.clinic.common.etag;
+
+import org.apache.coyote.http11.AbstractHttp11Protocol;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+
+// Tomcat leaves responses with a strong ETag uncompressed by default, since gzip changes the
+// bytes the tag stands for. The services put the content coding into their tags instead
+// (a gzip-accepting request gets a tag of its own), so compression can go with strong tags.
+@AutoConfiguration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnClass(AbstractHttp11Protocol.class)
+public class StrongETagAutoConfiguration {
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> strongETagCompression() {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            if (connector.getProtocolHandler() instanceof AbstractHttp11Protocol) {
+                ((AbstractHttp11Protocol<?>) connector.getProtocolHandler()).setNoCompressionStrongETag(false);
+            }
+        });
+    }
+}
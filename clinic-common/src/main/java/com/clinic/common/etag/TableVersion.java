@@ -0,0 +1,194 @@
+package com.clinic.common.etag;
+
+import com.clinic.common.datasource.ReadWriteRoutingDataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.DigestUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Version of one table, counted in the database, for ETags and Last-Modified on the
+// collection endpoints. A deferred trigger bumps the table's row in collection_versions once
+// per writing transaction, as that transaction commits, so every writer moves it: this and
+// other instances, the syncs, bulk UPDATE ... RETURNING, and anything run directly against
+// the table. The bump takes the row lock only for the moment between the trigger and the
+// commit, and a snapshot that sees the new version also sees the rows that moved it.
+//
+// The version is read at most every max-staleness-ms, so a write made elsewhere can go
+// unanswered by a conditional GET for that long; after a write through this instance,
+// refresh() makes the next read go to the database. It is read in a read-only transaction,
+// which routes like the collection reads, so a replica never tags its rows with a version
+// only the primary has reached; a request that reads the primary after its client wrote
+// reads the version there too, past the cached one. When the counter cannot be read, every
+// read hands out a new version and conditional GETs simply miss.
+public class TableVersion {
+
+    private static final Logger logger = LoggerFactory.getLogger(TableVersion.class);
+
+    private final String table;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate readOnlyTransaction;
+    private final ReadWriteRoutingDataSource routingDataSource;
+    private final long maxStalenessNanos;
+    private final boolean schemaEnabled;
+
+    // Stands in for the table's creation time while the counter cannot be read
+    private final long startedAt = System.currentTimeMillis();
+
+    private volatile State state;
+    private long unavailableReads;
+    private volatile boolean unavailable;
+
+    public TableVersion(String table, JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                        ReadWriteRoutingDataSource routingDataSource, long maxStalenessMillis, boolean schemaEnabled) {
+        this.table = table;
+        this.jdbcTemplate = jdbcTemplate;
+        this.routingDataSource = routingDataSource;
+        this.readOnlyTransaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.readOnlyTransaction.setReadOnly(true);
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.schemaEnabled = schemaEnabled;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!schemaEnabled) {
+            return;
+        }
+        String trigger = table + "_collection_version";
+        try {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS collection_versions ("
+                    + "name varchar(64) PRIMARY KEY, version bigint NOT NULL DEFAULT 0, "
+                    + "changed_at timestamptz NOT NULL DEFAULT now(), created_at timestamptz NOT NULL DEFAULT now())");
+            jdbcTemplate.update("INSERT INTO collection_versions (name) VALUES (?) ON CONFLICT (name) DO NOTHING", table);
+            // Row events of one transaction all run at its commit; the first bumps, the
+            // transaction-local setting makes the others return at once
+            jdbcTemplate.execute("CREATE OR REPLACE FUNCTION bump_collection_version() RETURNS trigger AS $$ BEGIN "
+                    + "IF current_setting('clinic.version_bumped_' || TG_ARGV[0], true) = 'on' THEN RETURN NULL; END IF; "
+                    + "PERFORM set_config('clinic.version_bumped_' || TG_ARGV[0], 'on', true); "
+                    + "UPDATE collection_versions SET version = version + 1, changed_at = clock_timestamp() "
+                    + "WHERE name = TG_ARGV[0]; "
+                    + "RETURN NULL; END $$ LANGUAGE plpgsql");
+            Integer triggers = jdbcTemplate.queryForObject(
+                    "SELECT count(*) FROM pg_trigger WHERE tgname = ? AND tgrelid = ?::regclass", Integer.class, trigger, table);
+            if (triggers == null || triggers == 0) {
+                jdbcTemplate.execute("CREATE CONSTRAINT TRIGGER " + trigger + " AFTER INSERT OR UPDATE OR DELETE ON " + table
+                        + " DEFERRABLE INITIALLY DEFERRED FOR EACH ROW EXECUTE PROCEDURE bump_collection_version('" + table + "')");
+                jdbcTemplate.execute("CREATE TRIGGER " + table + "_collection_truncate AFTER TRUNCATE ON " + table
+                        + " FOR EACH STATEMENT EXECUTE PROCEDURE bump_collection_version('" + table + "')");
+                logger.info("Created the {} collection version trigger", table);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Could not set up the {} collection version, conditional GETs will miss: {}", table, e.getMessage());
+        }
+    }
+
+    public long current() {
+        return fresh().version;
+    }
+
+    // Whole seconds, since Last-Modified has no sub-second precision
+    public long lastModified() {
+        return fresh().lastModified;
+    }
+
+    // ETag for a view of the table; scope separates e.g. "today" from "upcoming", and carries
+    // the representation (format, content coding), so one tag always means the same bytes
+    public String etag(String scope) {
+        State current = fresh();
+        return "\"" + scope + "-" + current.epoch + "-" + current.version + "\"";
+    }
+
+    // ETag for a keyed view such as one search term or one client. The key is hashed, since
+    // it can hold characters an entity tag cannot.
+    public String etag(String scope, String key) {
+        String hash = DigestUtils.md5DigestAsHex(key.getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        return etag(scope + "-" + hash);
+    }
+
+    // After a committed write through this instance: the next read asks the database, so the
+    // writer's own next request is not answered from the version before its write
+    public void refresh() {
+        state = null;
+    }
+
+    public Map<String, Object> getStats() {
+        State current = state;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("table", table);
+        stats.put("maxStalenessMillis", TimeUnit.NANOSECONDS.toMillis(maxStalenessNanos));
+        stats.put("version", current != null ? current.version : null);
+        stats.put("available", !unavailable);
+        return stats;
+    }
+
+    private State fresh() {
+        long now = System.nanoTime();
+        if (routingDataSource != null && routingDataSource.readsPrimaryInRequest()) {
+            // The cache is filled from the reads every client makes; this one is read from the
+            // primary and stays with its request
+            synchronized (this) {
+                return read(now);
+            }
+        }
+        State current = state;
+        if (current != null && now - current.readAt <= maxStalenessNanos) {
+            return current;
+        }
+        synchronized (this) {
+            current = state;
+            if (current == null || now - current.readAt > maxStalenessNanos) {
+                current = read(now);
+                state = current;
+            }
+            return current;
+        }
+    }
+
+    // Callers hold the monitor
+    private State read(long now) {
+        String problem;
+        try {
+            State read = readOnlyTransaction.execute(status -> jdbcTemplate.query(
+                    "SELECT version, changed_at, created_at FROM collection_versions WHERE name = ?",
+                    rs -> rs.next() ? new State(rs.getLong(1), rs.getTimestamp(2), rs.getTimestamp(3), now) : null, table));
+            if (read != null) {
+                unavailable = false;
+                return read;
+            }
+            problem = "no collection_versions row";
+        } catch (RuntimeException e) {
+            problem = e.getMessage();
+        }
+        if (!unavailable) {
+            unavailable = true;
+            logger.warn("Could not read the {} collection version, conditional GETs will miss: {}", table, problem);
+        }
+        // A version no tag handed out before carries, so nothing is answered as unchanged;
+        // the count is never reset, so a later outage does not hand the same ones out again
+        unavailableReads++;
+        return new State(-unavailableReads, new Timestamp(System.currentTimeMillis()), new Timestamp(startedAt), now);
+    }
+
+    private static final class State {
+        final long version;
+        final long lastModified;
+        // Tells tags apart across a recreated table, where the count starts over
+        final String epoch;
+        final long readAt;
+
+        State(long version, Timestamp changedAt, Timestamp createdAt, long readAt) {
+            this.version = version;
+            this.lastModified = (changedAt.getTime() / 1000) * 1000;
+            this.epoch = Long.toString(createdAt.getTime(), 36);
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.clinic.common.logging;
+
+import com.clinic.common.tracing.Tracer;
+import com.clinic.common.tracing.TracingAutoConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+
+// The sampled access log of every web service with clinic-common on its class path, and the
+// guard on runtime log level changes. The logback-spring.xml next to it sends the "access"
+// logger to its own asynchronous appender.
+@AutoConfiguration(after = TracingAutoConfiguration.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class AccessLogAutoConfiguration {
+
+    @Bean
+    public AccessLogFilter accessLogFilter(Tracer tracer) {
+        return new AccessLogFilter(tracer);
+    }
+
+    @Bean
+    public LoggerLevelsFilter loggerLevelsFilter(@Value("${management.endpoints.web.base-path:/actuator}") String basePath,
+                                                 @Value("${logging.admin-token:}") String token) {
+        return new LoggerLevelsFilter(basePath, token);
+    }
+}
@@ -0,0 +1,73 @@
+package com.clinic.common.logging;
+
+import com.clinic.common.tracing.Span;
+import com.clinic.common.tracing.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+// One structured line per request on the "access" logger, in place of the INFO lines every
+// controller method used to write. Only a sample of ordinary requests is logged; server
+// errors and slow requests always are. Just inside the tracing filter and ahead of the
+// service's own filters, so each line names its trace and requests turned away by admission
+// control show up too. Nothing is formatted for a request that is not logged.
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final Logger accessLog = LoggerFactory.getLogger("access");
+
+    private final Tracer tracer;
+
+    @Value("${access-log.enabled:true}")
+    private boolean enabled;
+
+    // Share of ordinary requests that are logged, 0 to 1
+    @Value("${access-log.sample-rate:0.01}")
+    private double sampleRate;
+
+    // Requests at least this slow are always logged
+    @Value("${access-log.slow-ms:1000}")
+    private long slowMillis;
+
+    public AccessLogFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !enabled || !accessLog.isInfoEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        int status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+        try {
+            filterChain.doFilter(request, response);
+            status = response.getStatus();
+        } finally {
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            String reason = status >= 500 ? "error"
+                    : millis >= slowMillis ? "slow"
+                    : ThreadLocalRandom.current().nextDouble() < sampleRate ? "sample"
+                    : null;
+            if (reason != null) {
+                Span span = tracer.current();
+                accessLog.info("method={} path={} status={} ms={} logged={} trace={}",
+                        request.getMethod(), request.getRequestURI(), status, millis, reason,
+                        span != null ? span.getTraceId() : "-");
+            }
+        }
+    }
+}
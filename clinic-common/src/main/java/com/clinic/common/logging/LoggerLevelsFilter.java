@@ -0,0 +1,58 @@
+package com.clinic.common.logging;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+// Guards level changes through /actuator/loggers. The services have no user authentication,
+// so a POST must carry the admin token (X-Admin-Token) from logging.admin-token; without a
+// configured token every change is refused. Reading the levels stays open.
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class LoggerLevelsFilter extends OncePerRequestFilter {
+
+    public static final String TOKEN_HEADER = "X-Admin-Token";
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggerLevelsFilter.class);
+
+    private final String loggersPath;
+    private final byte[] token;
+
+    public LoggerLevelsFilter(String actuatorBasePath, String token) {
+        this.loggersPath = actuatorBasePath + "/loggers";
+        this.token = token.isEmpty() ? null : token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if ("GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.equals(loggersPath) && !path.startsWith(loggersPath + "/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String presented = request.getHeader(TOKEN_HEADER);
+        // Constant-time comparison, so the token cannot be guessed byte by byte from timings
+        if (token == null || presented == null
+                || !MessageDigest.isEqual(token, presented.getBytes(StandardCharsets.UTF_8))) {
+            logger.warn("Refused log level change {} from {}", request.getRequestURI(), request.getRemoteAddr());
+            response.sendError(token == null ? HttpServletResponse.SC_FORBIDDEN : HttpServletResponse.SC_UNAUTHORIZED);
+            return;
+        }
+        logger.info("Log level change {} from {}", request.getRequestURI(), request.getRemoteAddr());
+        filterChain.doFilter(request, response);
+    }
+}
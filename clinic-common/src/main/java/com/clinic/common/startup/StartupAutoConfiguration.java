@@ -0,0 +1,28 @@
+package com.clinic.common.startup;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.web.client.RestTemplateAutoConfiguration;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+// The startup timeline and warm-up of every web service with clinic-common on its class
+// path. The warm-up is off unless startup.warmup.enabled is set and has paths to replay.
+@AutoConfiguration(after = RestTemplateAutoConfiguration.class)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class StartupAutoConfiguration {
+
+    @Bean
+    public StartupTimeline startupTimeline(ConfigurableApplicationContext context, Environment environment) {
+        return new StartupTimeline(context, environment);
+    }
+
+    // Its own client: the warm-up calls this instance and needs no tracing or other interceptors
+    @Bean
+    public StartupWarmup startupWarmup(RestTemplateBuilder restTemplateBuilder, Environment environment,
+                                       StartupTimeline startupTimeline) {
+        return new StartupWarmup(restTemplateBuilder.build(), environment, startupTimeline);
+    }
+}
@@ -0,0 +1,111 @@
+package com.clinic.common.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.util.StringUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Startup benchmark: milliseconds from JVM start to ready (context up, warm-up done)
+// and to the first real request served. Logged, and appended as a CSV line to
+// startup.benchmark-file when set, so restarts can be compared over time.
+public class StartupTimeline extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupTimeline.class);
+
+    // Sent by StartupWarmup so its own requests do not count as the first one
+    public static final String WARMUP_HEADER = "X-Startup-Warmup";
+
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicBoolean firstRequestServed = new AtomicBoolean();
+    private final ConfigurableApplicationContext context;
+    private final Environment environment;
+
+    private volatile long readyMillis;
+    private volatile long warmupMillis;
+
+    @Value("${startup.benchmark-file:}")
+    private String benchmarkFile;
+
+    // Used by the CDS training run: start up, load the classes, and exit
+    @Value("${startup.exit-after-ready:false}")
+    private boolean exitAfterReady;
+
+    public StartupTimeline(ConfigurableApplicationContext context, Environment environment) {
+        this.context = context;
+        this.environment = environment;
+    }
+
+    public void warmupFinished(long millis) {
+        this.warmupMillis = millis;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        readyMillis = System.currentTimeMillis() - jvmStartMillis;
+        logger.info("Ready {} ms after JVM start ({} ms of warm-up, profiles {})",
+                readyMillis, warmupMillis, String.join(",", environment.getActiveProfiles()));
+
+        if (exitAfterReady) {
+            logger.info("startup.exit-after-ready is set, shutting down");
+            Thread exit = new Thread(() -> System.exit(SpringApplication.exit(context)), "startup-exit");
+            exit.start();
+        }
+    }
+
+    // Health probes poll from the moment the port opens and are not user traffic
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return firstRequestServed.get() || request.getRequestURI().startsWith("/actuator/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            if (request.getHeader(WARMUP_HEADER) == null && firstRequestServed.compareAndSet(false, true)) {
+                recordFirstRequest(request);
+            }
+        }
+    }
+
+    private void recordFirstRequest(HttpServletRequest request) {
+        long firstRequestMillis = System.currentTimeMillis() - jvmStartMillis;
+        logger.info("First request ({} {}) served {} ms after JVM start", request.getMethod(),
+                request.getRequestURI(), firstRequestMillis);
+
+        if (!StringUtils.hasText(benchmarkFile)) {
+            return;
+        }
+        // timestamp,profiles,readyMs,warmupMs,firstRequestMs
+        String line = Instant.now() + "," + String.join("+", environment.getActiveProfiles()) + ","
+                + readyMillis + "," + warmupMillis + "," + firstRequestMillis;
+        try {
+            Files.write(Paths.get(benchmarkFile), Collections.singletonList(line), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warn("Could not append to startup benchmark file {}: {}", benchmarkFile, e.getMessage());
+        }
+    }
+}
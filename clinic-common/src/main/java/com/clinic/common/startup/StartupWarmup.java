@@ -0,0 +1,75 @@
+package com.clinic.common.startup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Replays the hot read endpoints against this instance before it reports ready.
+// Runners finish before Spring Boot flips the readiness state to ACCEPTING_TRAFFIC,
+// so /actuator/health/readiness stays OUT_OF_SERVICE until the lazily created
+// controllers, Hibernate query plans, Jackson serializers and the connection pool
+// are initialized and the JIT has seen the request path a few times.
+public class StartupWarmup implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(StartupWarmup.class);
+
+    private final RestTemplate restTemplate;
+    private final Environment environment;
+    private final StartupTimeline startupTimeline;
+
+    @Value("${startup.warmup.enabled:false}")
+    private boolean enabled;
+
+    @Value("${startup.warmup.paths:}")
+    private List<String> paths;
+
+    @Value("${startup.warmup.iterations:5}")
+    private int iterations;
+
+    public StartupWarmup(RestTemplate restTemplate, Environment environment, StartupTimeline startupTimeline) {
+        this.restTemplate = restTemplate;
+        this.environment = environment;
+        this.startupTimeline = startupTimeline;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        Integer port = environment.getProperty("local.server.port", Integer.class);
+        if (!enabled || paths.isEmpty() || port == null) {
+            return;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(StartupTimeline.WARMUP_HEADER, "true");
+        HttpEntity<Void> entity = new HttpEntity<>(headers);
+
+        long start = System.nanoTime();
+        int failures = 0;
+        for (int i = 0; i < iterations; i++) {
+            for (String path : paths) {
+                try {
+                    restTemplate.exchange("http://localhost:" + port + path, HttpMethod.GET, entity, byte[].class);
+                } catch (RestClientException e) {
+                    failures++;
+                    logger.debug("Warm-up request {} failed: {}", path, e.getMessage());
+                }
+            }
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        startupTimeline.warmupFinished(millis);
+        logger.info("Warm-up finished: {} requests over {} paths in {} ms ({} failed)",
+                iterations * paths.size(), paths.size(), millis, failures);
+    }
+}
@@ -0,0 +1,23 @@
+package com.clinic.common.sync;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+// Sync coordination for the services with a database and a scheduled sync; configured
+// through sync.coordination.*.
+@AutoConfiguration(after = JdbcTemplateAutoConfiguration.class)
+@ConditionalOnClass(JdbcTemplate.class)
+@ConditionalOnBean(JdbcTemplate.class)
+public class SyncCoordinationAutoConfiguration {
+
+    @Bean
+    public SyncCoordinator syncCoordinator(JdbcTemplate jdbcTemplate,
+                                           @Value("${spring.application.name}") String applicationName) {
+        return new SyncCoordinator(jdbcTemplate, applicationName);
+    }
+}
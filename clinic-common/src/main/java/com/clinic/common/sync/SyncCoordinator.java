@@ -0,0 +1,117 @@
+package com.clinic.common.sync;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+// Decides which instance runs a scheduled sync when the service is scaled out.
+//   leader - one instance holds a lease row and does the whole sync
+//   shard  - live instances heartbeat and split the feed: by page when it is paginated,
+//            otherwise by id hash after each of them downloads all of it
+//   none   - every instance syncs everything (single-instance behaviour)
+// All timestamps come from the database clock, so instance clock skew does not matter.
+public class SyncCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SyncCoordinator.class);
+
+    private static final List<String> MODES = Arrays.asList("leader", "shard", "none");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String instanceId;
+
+    @Value("${sync.coordination.mode:leader}")
+    private String mode;
+
+    // Must outlive the sync interval, otherwise the lease lapses between runs
+    @Value("${sync.coordination.lease-seconds:600}")
+    private int leaseSeconds;
+
+    public SyncCoordinator(JdbcTemplate jdbcTemplate, String applicationName) {
+        this.jdbcTemplate = jdbcTemplate;
+        String dyno = System.getenv("DYNO");
+        this.instanceId = applicationName + "-" + (dyno != null ? dyno + "-" : "") + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @PostConstruct
+    public void createTables() {
+        // A typo would otherwise quietly turn into leader mode
+        if (!MODES.contains(mode)) {
+            throw new IllegalArgumentException("Unknown sync.coordination.mode '" + mode + "', expected one of " + MODES);
+        }
+        if ("none".equals(mode)) {
+            logger.info("Sync coordination disabled as instance {}", instanceId);
+            return;
+        }
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sync_leases (" +
+                "name varchar(100) PRIMARY KEY, owner varchar(200) NOT NULL, expires_at timestamp NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS sync_members (" +
+                "job varchar(100) NOT NULL, instance_id varchar(200) NOT NULL, heartbeat_at timestamp NOT NULL, " +
+                "PRIMARY KEY (job, instance_id))");
+        logger.info("Sync coordination mode '{}' as instance {}", mode, instanceId);
+    }
+
+    // Hands over leases right away instead of letting them expire
+    @PreDestroy
+    public void releaseLeases() {
+        try {
+            jdbcTemplate.update("DELETE FROM sync_leases WHERE owner = ?", instanceId);
+            jdbcTemplate.update("DELETE FROM sync_members WHERE instance_id = ?", instanceId);
+        } catch (Exception e) {
+            logger.warn("Could not release sync leases: {}", e.getMessage());
+        }
+    }
+
+    // Empty when another instance owns this run. Commits on its own so that the
+    // lease is visible to other instances while the sync itself is still running.
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public Optional<SyncShard> begin(String job) {
+        switch (mode) {
+            case "none":
+                return Optional.of(SyncShard.ALL);
+            case "shard":
+                return Optional.of(joinShards(job));
+            case "leader":
+                return acquireLease(job) ? Optional.of(SyncShard.ALL) : Optional.empty();
+            default:
+                throw new IllegalStateException("Unknown sync coordination mode " + mode);
+        }
+    }
+
+    public String getInstanceId() {
+        return instanceId;
+    }
+
+    // Takes the lease if it is free, expired or already ours, and extends it
+    private boolean acquireLease(String job) {
+        int updated = jdbcTemplate.update(
+                "INSERT INTO sync_leases (name, owner, expires_at) VALUES (?, ?, now() + ? * interval '1 second') " +
+                "ON CONFLICT (name) DO UPDATE SET owner = EXCLUDED.owner, expires_at = EXCLUDED.expires_at " +
+                "WHERE sync_leases.owner = EXCLUDED.owner OR sync_leases.expires_at < now()",
+                job, instanceId, leaseSeconds);
+        return updated > 0;
+    }
+
+    private SyncShard joinShards(String job) {
+        jdbcTemplate.update(
+                "INSERT INTO sync_members (job, instance_id, heartbeat_at) VALUES (?, ?, now()) " +
+                "ON CONFLICT (job, instance_id) DO UPDATE SET heartbeat_at = now()",
+                job, instanceId);
+        jdbcTemplate.update(
+                "DELETE FROM sync_members WHERE job = ? AND heartbeat_at < now() - ? * interval '1 second'",
+                job, leaseSeconds);
+
+        List<String> members = jdbcTemplate.queryForList(
+                "SELECT instance_id FROM sync_members WHERE job = ? ORDER BY instance_id", String.class, job);
+        return new SyncShard(members.indexOf(instanceId), members.size());
+    }
+}
@@ -0,0 +1,35 @@
+package com.clinic.common.sync;
+
+// 64-bit FNV-1a fingerprint over the synced fields of an upstream record.
+// Stored per row so a sync can tell "unchanged upstream" without loading the entity.
+// Also the stable string hash for slot lock keys and client id fingerprints.
+public final class SyncFingerprint {
+
+    // Reserved for rows that have never been fingerprinted
+    public static final long NONE = 0L;
+
+    private static final long OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private SyncFingerprint() {}
+
+    public static long of(Object... fields) {
+        long hash = OFFSET_BASIS;
+        for (Object field : fields) {
+            if (field == null) {
+                // Distinguishes null from the empty string
+                hash = (hash ^ 0xff) * PRIME;
+            } else {
+                String value = field.toString();
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    hash = (hash ^ (c & 0xff)) * PRIME;
+                    hash = (hash ^ (c >>> 8)) * PRIME;
+                }
+            }
+            // Field separator, so ("ab", "c") and ("a", "bc") differ
+            hash = (hash ^ 0xfe) * PRIME;
+        }
+        return hash == NONE ? 1L : hash;
+    }
+}
@@ -0,0 +1,67 @@
+package com.clinic.common.sync;
+
+// Open-addressing id -> fingerprint map with primitive long values.
+// Holds a whole table's stored fingerprints without a boxed Long or map entry per row.
+public final class SyncHashIndex {
+
+    private String[] keys;
+    private long[] values;
+    private int size;
+
+    public SyncHashIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new String[capacity];
+        values = new long[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void put(String key, long value) {
+        if ((size + 1) * 2 > keys.length) {
+            resize();
+        }
+        int slot = slotFor(key, keys);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    public boolean containsKey(String key) {
+        return keys[slotFor(key, keys)] != null;
+    }
+
+    // SyncFingerprint.NONE when the key is absent or was stored without a fingerprint
+    public long get(String key) {
+        int slot = slotFor(key, keys);
+        return keys[slot] != null ? values[slot] : SyncFingerprint.NONE;
+    }
+
+    // Linear probing; the table is never more than half full, so a free slot always exists
+    private static int slotFor(String key, String[] table) {
+        int mask = table.length - 1;
+        int hash = key.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (table[slot] != null && !table[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new long[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slotFor(oldKeys[i], keys);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.clinic.common.sync;
+
+// The slice of the upstream feed one instance is responsible for in a sync run
+public final class SyncShard {
+
+    public static final SyncShard ALL = new SyncShard(0, 1);
+
+    private final int index;
+    private final int count;
+
+    public SyncShard(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    // String.hashCode is specified, so every instance agrees on the owner of an id
+    public boolean owns(String id) {
+        return count == 1 || Math.floorMod(id.hashCode(), count) == index;
+    }
+
+    // The n-th page of a paginated feed that belongs to this shard; pages are dealt out in
+    // turn, so a page beyond the end of the feed is the first short one every shard sees.
+    // Records that move between pages while the shards fetch are picked up by the next run.
+    public int page(int n) {
+        return n * count + index;
+    }
+
+    @Override
+    public String toString() {
+        return "SyncShard{" + index + "/" + count + '}';
+    }
+}
@@ -0,0 +1,42 @@
+package com.clinic.common.tracing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.repository.Repository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// A client span around every Spring Data repository call, inside a trace only. Kept apart
+// from TracingAspect so services without Spring Data do not need it on the class path.
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RepositoryTracingAspect {
+
+    private final Tracer tracer;
+    // Spring Data proxies declare inherited methods such as save on CrudRepository; spans are
+    // named after the application's repository interface instead
+    private final Map<Class<?>, String> repositoryNames = new ConcurrentHashMap<>();
+
+    public RepositoryTracingAspect(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Around("this(org.springframework.data.repository.Repository)")
+    public Object traceRepository(ProceedingJoinPoint joinPoint) throws Throwable {
+        String repository = repositoryNames.computeIfAbsent(joinPoint.getThis().getClass(), RepositoryTracingAspect::repositoryName);
+        return TracingAspect.trace(tracer, joinPoint, repository, Span.Kind.CLIENT, "repository", true);
+    }
+
+    private static String repositoryName(Class<?> proxyClass) {
+        for (Class<?> type : proxyClass.getInterfaces()) {
+            if (Repository.class.isAssignableFrom(type) && type.getName().startsWith("com.clinic.")) {
+                return type.getSimpleName();
+            }
+        }
+        return proxyClass.getSimpleName();
+    }
+}
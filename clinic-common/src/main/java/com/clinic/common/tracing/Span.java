@@ -0,0 +1,109 @@
+package com.clinic.common.tracing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// One timed operation of a trace: a request, a controller, service or repository call, or an
+// outgoing HTTP call. Started and ended through Tracer, which keeps the span that is current
+// on each thread so that spans started below it become its children.
+public final class Span {
+
+    public enum Kind { SERVER, CLIENT, INTERNAL }
+
+    private final Tracer.Trace trace;
+    private final String spanId;
+    private final String parentId;
+    private String name;
+    private final Kind kind;
+    private final long startMicros;
+    private final long startNanos;
+    // Current span of the thread before this one started; current again once it ends
+    final Span previous;
+
+    private long durationNanos = -1;
+    private String error;
+    private Map<String, String> tags;
+
+    Span(Tracer.Trace trace, String spanId, String parentId, String name, Kind kind, Span previous) {
+        this.trace = trace;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.previous = previous;
+        this.startMicros = System.currentTimeMillis() * 1000;
+        this.startNanos = System.nanoTime();
+    }
+
+    public Span tag(String key, Object value) {
+        if (tags == null) {
+            tags = new LinkedHashMap<>(4);
+        }
+        tags.put(key, String.valueOf(value));
+        return this;
+    }
+
+    public void error(Throwable e) {
+        error(e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : ""));
+    }
+
+    // Only an error on the local root (a 5xx, or a failed job) makes the whole trace one to keep;
+    // a call that failed and was handled, such as a rejected request, is just marked
+    public void error(String message) {
+        error = message;
+    }
+
+    // For a server span, whose route is only known once the request has been dispatched
+    void rename(String name) {
+        this.name = name;
+    }
+
+    // false once the span has ended
+    boolean finish() {
+        if (durationNanos >= 0) {
+            return false;
+        }
+        durationNanos = System.nanoTime() - startNanos;
+        return true;
+    }
+
+    Tracer.Trace trace() {
+        return trace;
+    }
+
+    public String getTraceId() {
+        return trace.traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    public String getParentId() {
+        return parentId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public long getStartMicros() {
+        return startMicros;
+    }
+
+    public long getDurationMicros() {
+        return durationNanos / 1000;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public Map<String, String> getTags() {
+        return tags;
+    }
+}
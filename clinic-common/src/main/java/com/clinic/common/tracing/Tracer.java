@@ -0,0 +1,474 @@
+package com.clinic.common.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// In-process tracing without an external backend. Spans of a trace are buffered in memory
+// until its local root (the incoming request, or a scheduled job) ends; only then is the
+// trace kept or dropped, so the decision can look at the whole trace: every trace with an
+// error or a root slower than slow-ms is kept, plus a sample-rate share of the rest (tail
+// sampling). Kept traces go to a JSON-lines file, one span per line, written by a single
+// background thread, and the latest ones stay readable through the traces endpoint.
+//
+// Trace context crosses services in the W3C traceparent header. Each service decides for its
+// own part of a trace; a slow backend call makes both the caller's and the backend's part
+// slow, so both are kept.
+public class Tracer {
+
+    private static final Logger logger = LoggerFactory.getLogger(Tracer.class);
+
+    public static final String TRACEPARENT = "traceparent";
+
+    @Value("${spring.application.name}")
+    private String service;
+
+    @Value("${tracing.enabled:true}")
+    private boolean enabled;
+
+    // Share of traces without errors or slowness that are kept anyway, 0 to 1
+    @Value("${tracing.sample-rate:0.01}")
+    private double sampleRate;
+
+    @Value("${tracing.slow-ms:500}")
+    private long slowMillis;
+
+    // Long jobs such as a sync stop recording spans here; the trace keeps a count of the rest
+    @Value("${tracing.max-spans-per-trace:256}")
+    private int maxSpansPerTrace;
+
+    @Value("${tracing.recent-traces:100}")
+    private int recentTraces;
+
+    // Off (or no file) to keep traces in memory only, with no exporter thread
+    @Value("${tracing.export.enabled:true}")
+    private boolean exportEnabled;
+
+    @Value("${tracing.export.file:}")
+    private String exportFile;
+
+    @Value("${tracing.export.queue-size:1024}")
+    private int exportQueueSize;
+
+    // The file is moved to <file>.1 at this size
+    @Value("${tracing.export.max-file-mb:64}")
+    private long maxFileMb;
+
+    private final ThreadLocal<Span> current = new ThreadLocal<>();
+    private final ArrayDeque<Trace> recent = new ArrayDeque<>();
+
+    private BlockingQueue<Trace> exportQueue;
+    private Thread exporter;
+    private volatile boolean running;
+
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong keptError = new AtomicLong();
+    private final AtomicLong keptSlow = new AtomicLong();
+    private final AtomicLong keptSampled = new AtomicLong();
+    private final AtomicLong spansDropped = new AtomicLong();
+    private final AtomicLong exported = new AtomicLong();
+    private final AtomicLong exportDropped = new AtomicLong();
+    private final AtomicLong exportErrors = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            logger.info("Tracing is disabled");
+            return;
+        }
+        if (exportEnabled && !exportFile.isEmpty()) {
+            exportQueue = new ArrayBlockingQueue<>(exportQueueSize);
+            running = true;
+            exporter = new Thread(this::export, "trace-exporter");
+            exporter.setDaemon(true);
+            exporter.start();
+        }
+        logger.info("Tracing enabled: keeping errors, traces over {} ms and {} of the rest{}", slowMillis, sampleRate,
+                exportQueue == null ? "" : ", exported to " + exportFile);
+    }
+
+    // Lets the exporter write what is queued before the JVM exits
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        if (exporter != null) {
+            exporter.join(5000);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Span current() {
+        return current.get();
+    }
+
+    // A child of the thread's current span, or the root of a new trace
+    public Span start(String name, Span.Kind kind) {
+        Span parent = current.get();
+        if (parent == null) {
+            return begin(newTrace(newTraceId()), null, name, kind);
+        }
+        return begin(parent.trace(), parent.getSpanId(), name, kind);
+    }
+
+    // Only inside a trace: a repository or HTTP call on its own does not start one
+    public Span startChild(String name, Span.Kind kind) {
+        Span parent = current.get();
+        return parent == null ? null : begin(parent.trace(), parent.getSpanId(), name, kind);
+    }
+
+    // The local root for an incoming request, continuing the caller's trace if it sent one
+    public Span startServer(String name, String traceparent) {
+        String[] remote = parseTraceparent(traceparent);
+        if (remote == null) {
+            return begin(newTrace(newTraceId()), null, name, Span.Kind.SERVER);
+        }
+        return begin(newTrace(remote[0]), remote[1], name, Span.Kind.SERVER);
+    }
+
+    public void end(Span span) {
+        if (span == null || !span.finish()) {
+            return;
+        }
+        if (current.get() == span) {
+            if (span.previous == null) {
+                current.remove();
+            } else {
+                current.set(span.previous);
+            }
+        }
+        Trace trace = span.trace();
+        if (span == trace.root) {
+            complete(trace);
+        } else if (!trace.add(span, maxSpansPerTrace)) {
+            spansDropped.incrementAndGet();
+        }
+    }
+
+    // Header value that makes the callee's spans children of this one
+    public String traceparent(Span span) {
+        return "00-" + span.getTraceId() + "-" + span.getSpanId() + "-01";
+    }
+
+    // Runs the task with the caller's current span as parent, for work handed to another thread
+    public Runnable wrap(Runnable task) {
+        Span parent = current.get();
+        if (parent == null) {
+            return task;
+        }
+        return () -> {
+            Span previous = current.get();
+            current.set(parent);
+            try {
+                task.run();
+            } finally {
+                if (previous == null) {
+                    current.remove();
+                } else {
+                    current.set(previous);
+                }
+            }
+        };
+    }
+
+    // Newest first
+    public List<Map<String, Object>> getRecentTraces(int limit) {
+        List<Trace> traces = new ArrayList<>();
+        synchronized (recent) {
+            Iterator<Trace> it = recent.descendingIterator();
+            while (it.hasNext() && traces.size() < limit) {
+                traces.add(it.next());
+            }
+        }
+        List<Map<String, Object>> result = new ArrayList<>(traces.size());
+        for (Trace trace : traces) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("traceId", trace.traceId);
+            entry.put("name", trace.root.getName());
+            entry.put("durationMs", trace.root.getDurationMicros() / 1000.0);
+            entry.put("kept", trace.reason);
+            synchronized (trace) {
+                entry.put("droppedSpans", trace.droppedSpans);
+                entry.put("spans", new ArrayList<>(trace.spans));
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("sampleRate", sampleRate);
+        stats.put("slowMs", slowMillis);
+        stats.put("started", started.get());
+        stats.put("open", started.get() - completed.get());
+        stats.put("keptError", keptError.get());
+        stats.put("keptSlow", keptSlow.get());
+        stats.put("keptSampled", keptSampled.get());
+        stats.put("dropped", completed.get() - keptError.get() - keptSlow.get() - keptSampled.get());
+        stats.put("spansDropped", spansDropped.get());
+        stats.put("exportFile", exportQueue == null ? null : exportFile);
+        stats.put("exported", exported.get());
+        stats.put("exportDropped", exportDropped.get());
+        stats.put("exportErrors", exportErrors.get());
+        return stats;
+    }
+
+    private Span begin(Trace trace, String parentId, String name, Span.Kind kind) {
+        Span span = new Span(trace, newSpanId(), parentId, name, kind, current.get());
+        if (trace.root == null) {
+            trace.root = span;
+        }
+        current.set(span);
+        return span;
+    }
+
+    private Trace newTrace(String traceId) {
+        started.incrementAndGet();
+        return new Trace(traceId);
+    }
+
+    // The tail-sampling decision, once the local root has ended
+    private void complete(Trace trace) {
+        synchronized (trace) {
+            trace.closed = true;
+            trace.spans.add(trace.root);
+        }
+        completed.incrementAndGet();
+        if (trace.root.getError() != null) {
+            trace.reason = "error";
+            keptError.incrementAndGet();
+        } else if (trace.root.getDurationMicros() >= slowMillis * 1000) {
+            trace.reason = "slow";
+            keptSlow.incrementAndGet();
+        } else if (ThreadLocalRandom.current().nextDouble() < sampleRate) {
+            trace.reason = "sampled";
+            keptSampled.incrementAndGet();
+        } else {
+            return;
+        }
+
+        synchronized (recent) {
+            recent.addLast(trace);
+            while (recent.size() > recentTraces) {
+                recent.removeFirst();
+            }
+        }
+        if (exportQueue != null && !exportQueue.offer(trace)) {
+            exportDropped.incrementAndGet();
+        }
+    }
+
+    private void export() {
+        File file = new File(exportFile);
+        Writer writer = null;
+        long written = 0;
+        StringBuilder line = new StringBuilder(512);
+        while (running || !exportQueue.isEmpty()) {
+            try {
+                Trace trace = exportQueue.poll(1, TimeUnit.SECONDS);
+                if (trace == null) {
+                    continue;
+                }
+                if (writer == null) {
+                    if (file.getParentFile() != null) {
+                        Files.createDirectories(file.getParentFile().toPath());
+                    }
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+                    written = file.length();
+                }
+                List<Span> spans;
+                synchronized (trace) {
+                    spans = new ArrayList<>(trace.spans);
+                }
+                for (Span span : spans) {
+                    line.setLength(0);
+                    appendJson(line, span, trace.reason);
+                    writer.write(line.toString());
+                    written += line.length();
+                }
+                exported.incrementAndGet();
+                if (exportQueue.isEmpty()) {
+                    writer.flush();
+                }
+                if (written >= maxFileMb * 1024 * 1024) {
+                    writer.close();
+                    writer = null;
+                    Files.move(file.toPath(), new File(exportFile + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                exportErrors.incrementAndGet();
+                logger.warn("Could not export trace to {}: {}", exportFile, e.getMessage());
+                writer = close(writer);
+            }
+        }
+        close(writer);
+    }
+
+    private static Writer close(Writer writer) {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.debug("Could not close trace file: {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private void appendJson(StringBuilder out, Span span, String reason) {
+        out.append("{\"traceId\":\"").append(span.getTraceId())
+                .append("\",\"spanId\":\"").append(span.getSpanId()).append('"');
+        out.append(",\"parentId\":");
+        appendString(out, span.getParentId());
+        out.append(",\"service\":");
+        appendString(out, service);
+        out.append(",\"name\":");
+        appendString(out, span.getName());
+        out.append(",\"kind\":\"").append(span.getKind()).append('"');
+        out.append(",\"start\":").append(span.getStartMicros());
+        out.append(",\"durationUs\":").append(span.getDurationMicros());
+        if (span.getError() != null) {
+            out.append(",\"error\":");
+            appendString(out, span.getError());
+        }
+        if (span.getTags() != null) {
+            out.append(",\"tags\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> tag : span.getTags().entrySet()) {
+                if (!first) {
+                    out.append(',');
+                }
+                first = false;
+                appendString(out, tag.getKey());
+                out.append(':');
+                appendString(out, tag.getValue());
+            }
+            out.append('}');
+        }
+        out.append(",\"kept\":\"").append(reason).append("\"}\n");
+    }
+
+    private static void appendString(StringBuilder out, String value) {
+        if (value == null) {
+            out.append("null");
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        out.append('"');
+    }
+
+    // {traceId, parentSpanId} of a valid version-00 header, else null
+    private static String[] parseTraceparent(String header) {
+        if (header == null || header.length() != 55 || !header.startsWith("00-")
+                || header.charAt(35) != '-' || header.charAt(52) != '-') {
+            return null;
+        }
+        String traceId = header.substring(3, 35);
+        String spanId = header.substring(36, 52);
+        if (!isHex(traceId) || !isHex(spanId) || isZero(traceId) || isZero(spanId)) {
+            return null;
+        }
+        return new String[] {traceId, spanId};
+    }
+
+    private static boolean isHex(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String newTraceId() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return hex(random.nextLong() | 1L) + hex(random.nextLong());
+    }
+
+    private static String newSpanId() {
+        return hex(ThreadLocalRandom.current().nextLong() | 1L);
+    }
+
+    private static String hex(long value) {
+        String digits = Long.toHexString(value);
+        return digits.length() == 16 ? digits : "0000000000000000".substring(digits.length()) + digits;
+    }
+
+    // The spans of one trace in this service, collected until its local root ends
+    static final class Trace {
+        final String traceId;
+        final List<Span> spans = new ArrayList<>();
+        Span root;
+        boolean closed;
+        int droppedSpans;
+        volatile String reason;
+
+        Trace(String traceId) {
+            this.traceId = traceId;
+        }
+
+        // false when the span is not recorded: the trace is over, or full
+        synchronized boolean add(Span span, int maxSpans) {
+            if (closed) {
+                return false;
+            }
+            if (spans.size() >= maxSpans) {
+                droppedSpans++;
+                return false;
+            }
+            spans.add(span);
+            return true;
+        }
+    }
+}
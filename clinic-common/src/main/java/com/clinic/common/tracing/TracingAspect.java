@@ -0,0 +1,65 @@
+package com.clinic.common.tracing;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+// A span around every call into a controller, service or external API bean, so a slow
+// request shows whether its time went to a query, the save, or a call to another service.
+// External APIs are the beans under a com.clinic.*.external package; their calls made on
+// other threads stay in the trace when the task is wrapped with Tracer.wrap. Calls inside
+// one bean do not pass through its proxy and are not split out. Outside any transaction
+// advice, so a service span includes its commit.
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingAspect {
+
+    private final Tracer tracer;
+
+    public TracingAspect(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Around("@within(org.springframework.web.bind.annotation.RestController)")
+    public Object traceController(ProceedingJoinPoint joinPoint) throws Throwable {
+        return trace(tracer, joinPoint, typeName(joinPoint), Span.Kind.INTERNAL, "controller", false);
+    }
+
+    // Scheduled jobs enter through a service, so a service call may start a trace of its own
+    @Around("@within(org.springframework.stereotype.Service)")
+    public Object traceService(ProceedingJoinPoint joinPoint) throws Throwable {
+        return trace(tracer, joinPoint, typeName(joinPoint), Span.Kind.INTERNAL, "service", false);
+    }
+
+    @Around("within(com.clinic..external..*)")
+    public Object traceExternal(ProceedingJoinPoint joinPoint) throws Throwable {
+        return trace(tracer, joinPoint, typeName(joinPoint), Span.Kind.INTERNAL, "external", true);
+    }
+
+    static Object trace(Tracer tracer, ProceedingJoinPoint joinPoint, String type, Span.Kind kind, String layer,
+                        boolean childOnly) throws Throwable {
+        if (!tracer.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        String name = type + "." + joinPoint.getSignature().getName();
+        Span span = childOnly ? tracer.startChild(name, kind) : tracer.start(name, kind);
+        if (span == null) {
+            return joinPoint.proceed();
+        }
+        span.tag("layer", layer);
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            span.error(e);
+            throw e;
+        } finally {
+            tracer.end(span);
+        }
+    }
+
+    private static String typeName(ProceedingJoinPoint joinPoint) {
+        return joinPoint.getSignature().getDeclaringType().getSimpleName();
+    }
+}
@@ -0,0 +1,39 @@
+package com.clinic.common.tracing;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// Tracing for every service that has clinic-common on its class path: the Tracer, the server
+// span filter and the aspects. Outgoing RestTemplates add a TracingInterceptor themselves.
+@AutoConfiguration
+public class TracingAutoConfiguration {
+
+    @Bean
+    public Tracer tracer() {
+        return new Tracer();
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public TracingFilter tracingFilter(Tracer tracer) {
+        return new TracingFilter(tracer);
+    }
+
+    @Bean
+    public TracingAspect tracingAspect(Tracer tracer) {
+        return new TracingAspect(tracer);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.data.repository.Repository")
+    static class RepositoryTracingConfiguration {
+
+        @Bean
+        public RepositoryTracingAspect repositoryTracingAspect(Tracer tracer) {
+            return new RepositoryTracingAspect(tracer);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.clinic.common.tracing;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+// The server span of each request, continuing the caller's trace when it sends a traceparent
+// header. Outermost filter, so the span covers the service's own filters (admission control,
+// the access log, which can then name the trace). The trace id goes back in X-Trace-Id to
+// find the trace from a slow response.
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TracingFilter extends OncePerRequestFilter {
+
+    public static final String TRACE_ID_HEADER = "X-Trace-Id";
+
+    private final Tracer tracer;
+
+    public TracingFilter(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !tracer.isEnabled();
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Span span = tracer.startServer(request.getMethod(), request.getHeader(Tracer.TRACEPARENT));
+        response.setHeader(TRACE_ID_HEADER, span.getTraceId());
+        try {
+            filterChain.doFilter(request, response);
+            if (response.getStatus() >= 500) {
+                span.error("HTTP " + response.getStatus());
+            }
+        } catch (IOException | ServletException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            // The route template rather than the path, so spans of one endpoint share a name
+            Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            span.rename(request.getMethod() + " " + (route != null ? route : request.getRequestURI()));
+            span.tag("http.path", request.getRequestURI()).tag("http.status", response.getStatus());
+            tracer.end(span);
+        }
+    }
+}
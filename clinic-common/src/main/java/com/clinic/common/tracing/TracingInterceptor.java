@@ -0,0 +1,46 @@
+package com.clinic.common.tracing;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+
+// A client span for each outgoing RestTemplate call, with its traceparent header sent along
+// so a traced service on the other end continues the same trace
+public class TracingInterceptor implements ClientHttpRequestInterceptor {
+
+    private final Tracer tracer;
+
+    public TracingInterceptor(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    @Override
+    public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+            throws IOException {
+        Span span = tracer.isEnabled()
+                ? tracer.startChild(request.getMethodValue() + " " + request.getURI().getAuthority(), Span.Kind.CLIENT)
+                : null;
+        if (span == null) {
+            return execution.execute(request, body);
+        }
+        span.tag("http.url", request.getURI());
+        request.getHeaders().set(Tracer.TRACEPARENT, tracer.traceparent(span));
+        try {
+            ClientHttpResponse response = execution.execute(request, body);
+            int status = response.getRawStatusCode();
+            span.tag("http.status", status);
+            if (status >= 500) {
+                span.error("HTTP " + status);
+            }
+            return response;
+        } catch (IOException | RuntimeException e) {
+            span.error(e);
+            throw e;
+        } finally {
+            tracer.end(span);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.clinic.common.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.Cookie;
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+// Reads stay on the primary after a write only for the client that wrote
+class ReadWriteRoutingDataSourceTest {
+
+    private final ReadWriteRoutingDataSource router = new ReadWriteRoutingDataSource(
+            mock(DataSource.class), mock(HikariDataSource.class), 30000, 5000);
+
+    @AfterEach
+    void clear() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void writeSendsTheCookieAndKeepsTheRestOfTheRequestOnThePrimary() {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        inRequest(new MockHttpServletRequest(), response);
+
+        write();
+        assertThat(read()).isEqualTo("primary");
+
+        String setCookie = response.getHeader(HttpHeaders.SET_COOKIE);
+        assertThat(setCookie).startsWith(ReadWriteRoutingDataSource.PRIMARY_UNTIL_COOKIE + "=");
+        assertThat(response.getHeaders(HttpHeaders.SET_COOKIE)).hasSize(1);
+    }
+
+    @Test
+    void clientWithTheCookieReadsThePrimaryAndOthersTheReplica() {
+        MockHttpServletRequest writer = new MockHttpServletRequest();
+        writer.setCookies(new Cookie(ReadWriteRoutingDataSource.PRIMARY_UNTIL_COOKIE,
+                Long.toString(System.currentTimeMillis() + 4000)));
+        inRequest(writer, new MockHttpServletResponse());
+        assertThat(read()).isEqualTo("primary");
+
+        inRequest(new MockHttpServletRequest(), new MockHttpServletResponse());
+        assertThat(read()).isEqualTo("replica");
+    }
+
+    @Test
+    void expiredOrForgedCookieReadsTheReplica() {
+        MockHttpServletRequest expired = new MockHttpServletRequest();
+        expired.setCookies(new Cookie(ReadWriteRoutingDataSource.PRIMARY_UNTIL_COOKIE,
+                Long.toString(System.currentTimeMillis() - 1)));
+        inRequest(expired, new MockHttpServletResponse());
+        assertThat(read()).isEqualTo("replica");
+
+        MockHttpServletRequest forged = new MockHttpServletRequest();
+        forged.setCookies(new Cookie(ReadWriteRoutingDataSource.PRIMARY_UNTIL_COOKIE,
+                Long.toString(System.currentTimeMillis() + 3_600_000)));
+        inRequest(forged, new MockHttpServletResponse());
+        assertThat(read()).isEqualTo("replica");
+    }
+
+    // A scheduled job's write pins nobody
+    @Test
+    void writeOutsideARequestLeavesReadsOnTheReplica() {
+        write();
+
+        assertThat(read()).isEqualTo("replica");
+    }
+
+    private static void inRequest(MockHttpServletRequest request, MockHttpServletResponse response) {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+    }
+
+    private Object write() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+        return router.determineCurrentLookupKey();
+    }
+
+    private Object read() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        return router.determineCurrentLookupKey();
+    }
+}
@@ -0,0 +1,47 @@
+package com.clinic.common.sync;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SyncShardTest {
+
+    // Together the shards fetch every page exactly once
+    @Test
+    void pagesAreDealtOutInTurn() {
+        int count = 3;
+        Set<Integer> pages = new HashSet<>();
+        for (int index = 0; index < count; index++) {
+            SyncShard shard = new SyncShard(index, count);
+            for (int n = 0; n < 10; n++) {
+                assertThat(pages.add(shard.page(n))).isTrue();
+            }
+        }
+
+        for (int page = 0; page < 30; page++) {
+            assertThat(pages).contains(page);
+        }
+        assertThat(new SyncShard(1, 3).page(0)).isEqualTo(1);
+        assertThat(new SyncShard(1, 3).page(1)).isEqualTo(4);
+        assertThat(SyncShard.ALL.page(5)).isEqualTo(5);
+    }
+
+    @Test
+    void everyIdHasExactlyOneOwner() {
+        int count = 4;
+        for (int i = 0; i < 1000; i++) {
+            String id = "appointment-" + i;
+            int owners = 0;
+            for (int index = 0; index < count; index++) {
+                if (new SyncShard(index, count).owns(id)) {
+                    owners++;
+                }
+            }
+            assertThat(owners).as(id).isEqualTo(1);
+            assertThat(SyncShard.ALL.owns(id)).isTrue();
+        }
+    }
+}
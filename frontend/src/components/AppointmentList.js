@@ -1,10 +1,9 @@
 import React, { useState, useEffect } from 'react';
-import { fetchUpcomingAppointments, fetchClients, cancelAppointment } from '../utils/api';
+import { fetchUpcomingSchedule, cancelAppointment } from '../utils/api';
 import { formatDateTime } from '../utils/api';
 
 const AppointmentList = () => {
   const [appointments, setAppointments] = useState([]);
-  const [clients, setClients] = useState([]);
   const [loading, setLoading] = useState(true);
   const [error, setError] = useState(null);
   const [cancellingId, setCancellingId] = useState(null);
@@ -13,19 +12,15 @@ const AppointmentList = () => {
     loadData();
   }, []);
 
-  const loadData = async () => {
+  const loadData = async (fresh = false) => {
     try {
       setLoading(true);
       setError(null);
       
-      // Load both appointments and clients
-      const [appointmentsData, clientsData] = await Promise.all([
-        fetchUpcomingAppointments(),
-        fetchClients()
-      ]);
+      // Appointments come with their client already joined by the gateway
+      const appointmentsData = await fetchUpcomingSchedule(fresh);
       
       setAppointments(appointmentsData);
-      setClients(clientsData);
     } catch (err) {
       setError('Failed to load appointments. Please try again.');
       console.error('Error loading appointments:', err);
@@ -34,14 +29,12 @@ const AppointmentList = () => {
     }
   };
 
-  const getClientName = (clientId) => {
-    const client = clients.find(c => c.id === clientId);
-    return client ? client.name : `Client ID: ${clientId}`;
+  const getClientName = (appointment) => {
+    return appointment.client ? appointment.client.name : `Client ID: ${appointment.clientId}`;
   };
 
-  const getClientEmail = (clientId) => {
-    const client = clients.find(c => c.id === clientId);
-    return client ? client.email : '';
+  const getClientEmail = (appointment) => {
+    return appointment.client ? appointment.client.email : '';
   };
 
   const handleCancelAppointment = async (appointmentId) => {
@@ -54,7 +47,7 @@ const AppointmentList = () => {
       await cancelAppointment(appointmentId);
       
       // Refresh the appointments list
-      await loadData();
+      await loadData(true);
       
       alert('Appointment cancelled successfully');
     } catch (err) {
@@ -233,7 +226,7 @@ const AppointmentList = () => {
           <div>{error}</div>
           <button 
             style={{...refreshButtonStyle, marginTop: '1rem'}} 
-            onClick={loadData}
+            onClick={() => loadData(true)}
             onMouseOver={(e) => e.target.style.backgroundColor = '#2563eb'}
             onMouseOut={(e) => e.target.style.backgroundColor = '#3b82f6'}
           >
@@ -250,7 +243,7 @@ const AppointmentList = () => {
         <h2 style={titleStyle}>Upcoming Appointments</h2>
         <button 
           style={refreshButtonStyle}
-          onClick={loadData}
+          onClick={() => loadData(true)}
           onMouseOver={(e) => e.target.style.backgroundColor = '#2563eb'}
           onMouseOut={(e) => e.target.style.backgroundColor = '#3b82f6'}
         >
@@ -282,7 +275,7 @@ const AppointmentList = () => {
             >
               <div style={appointmentHeaderStyle}>
                 <div>
-                  <div style={clientNameStyle}>{getClientName(appointment.clientId)}</div>
+                  <div style={clientNameStyle}>{getClientName(appointment)}</div>
                   <div style={appointmentTimeStyle}>
                     {formatDateTime(appointment.time)}
                   </div>
@@ -307,7 +300,7 @@ const AppointmentList = () => {
 
               <div style={appointmentInfoStyle}>
                 <span style={labelStyle}>Email:</span>
-                <span>{getClientEmail(appointment.clientId)}</span>
+                <span>{getClientEmail(appointment)}</span>
               </div>
               
               <div style={appointmentInfoStyle}>
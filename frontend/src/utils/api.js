@@ -5,6 +5,9 @@
 
 const CLIENT_SERVICE_URL = 'https://client-service-app-582adc026b78.herokuapp.com';
 const APPOINTMENT_SERVICE_URL = 'https://appointment-service-app-dc5b59d8a050.herokuapp.com';
+// Composite views joined server-side (gateway-service), e.g. http://localhost:8083.
+// Without it the composite views below are joined here from the two services.
+const GATEWAY_SERVICE_URL = process.env.REACT_APP_GATEWAY_URL;
 
 // Generic API call function
 async function apiCall(url, options = {}) {
@@ -143,6 +146,47 @@ export async function getAppointmentCountByStatus(status) {
   return apiCall(`${APPOINTMENT_SERVICE_URL}/appointments/stats/count/${status}`);
 }
 
+// Gateway API functions: appointments with their client under `client`, one round trip.
+// Pass fresh = true right after a change so the gateway skips its short-lived cache.
+function gatewayOptions(fresh) {
+  return fresh ? { headers: { 'Cache-Control': 'no-cache' } } : {};
+}
+
+// Same shape as the gateway's schedules, for deployments without a gateway
+async function joinClients(appointmentsPromise) {
+  const [appointments, clients] = await Promise.all([appointmentsPromise, fetchClients()]);
+  const clientsById = new Map(clients.map((client) => [client.id, client]));
+  return appointments.map((appointment) => ({
+    ...appointment,
+    client: clientsById.get(appointment.clientId) || null,
+  }));
+}
+
+export async function fetchUpcomingSchedule(fresh = false) {
+  if (!GATEWAY_SERVICE_URL) {
+    return joinClients(fetchUpcomingAppointments());
+  }
+  return apiCall(`${GATEWAY_SERVICE_URL}/gateway/schedule/upcoming`, gatewayOptions(fresh));
+}
+
+export async function fetchTodaysSchedule(fresh = false) {
+  if (!GATEWAY_SERVICE_URL) {
+    return joinClients(fetchTodaysAppointments());
+  }
+  return apiCall(`${GATEWAY_SERVICE_URL}/gateway/schedule/today`, gatewayOptions(fresh));
+}
+
+export async function fetchClientOverview(clientId, fresh = false) {
+  if (!GATEWAY_SERVICE_URL) {
+    const [client, appointments] = await Promise.all([
+      fetchClientById(clientId),
+      fetchAppointmentsByClientId(clientId),
+    ]);
+    return { client, appointments };
+  }
+  return apiCall(`${GATEWAY_SERVICE_URL}/gateway/clients/${clientId}/overview`, gatewayOptions(fresh));
+}
+
 // Utility functions
 export function formatDateTime(dateTimeString) {
   if (!dateTimeString) return '';
@@ -0,0 +1,84 @@
+package com.clinic.gateway.config;
+
+import com.clinic.common.tracing.Tracer;
+import com.clinic.common.tracing.TracingInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+@Configuration
+public class AppConfig {
+
+    @Value("${gateway.http.max-connections:50}")
+    private int maxConnections;
+
+    @Value("${gateway.http.max-connections-per-route:25}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${gateway.http.connect-timeout-ms:2000}")
+    private int connectTimeoutMillis;
+
+    @Value("${gateway.http.read-timeout-ms:10000}")
+    private int readTimeoutMillis;
+
+    @Value("${gateway.fan-out.threads:16}")
+    private int fanOutThreads;
+
+    @Value("${gateway.fan-out.queue-capacity:200}")
+    private int fanOutQueueCapacity;
+
+    // Keep-alive connections to both services are pooled and reused across requests,
+    // so a composite call costs no TCP/TLS handshakes once the pool is warm
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient httpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(60, TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
+                .build();
+
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .evictIdleConnections(30, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Bean
+    public RestTemplate restTemplate(CloseableHttpClient httpClient, Tracer tracer) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+        restTemplate.getInterceptors().add(new TracingInterceptor(tracer));
+        return restTemplate;
+    }
+
+    // Runs the backend calls of one composite request side by side. When the queue is full
+    // the calling request thread makes the call itself instead of failing. Tasks run under the
+    // submitting request's span, so backend calls stay in its trace.
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskExecutor fanOutExecutor(Tracer tracer) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("fan-out-");
+        executor.setCorePoolSize(fanOutThreads);
+        executor.setMaxPoolSize(fanOutThreads);
+        executor.setQueueCapacity(fanOutQueueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setTaskDecorator(tracer::wrap);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,84 @@
+package com.clinic.gateway.controller;
+
+import com.clinic.common.tracing.Tracer;
+import com.clinic.gateway.service.ScheduleService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+// Backend failures surface as 502 through GlobalExceptionHandler
+@RestController
+@RequestMapping("/gateway")
+@CrossOrigin(origins = "*") // Allow CORS for frontend
+public class GatewayController {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayController.class);
+
+    private final ScheduleService scheduleService;
+    private final Tracer tracer;
+
+    public GatewayController(ScheduleService scheduleService, Tracer tracer) {
+        this.scheduleService = scheduleService;
+        this.tracer = tracer;
+    }
+
+    @GetMapping("/schedule/today")
+    public ResponseEntity<List<Map<String, Object>>> getTodaysSchedule(@RequestHeader HttpHeaders headers) {
+        logger.debug("GET /gateway/schedule/today - Fetching today's schedule with client details");
+        List<Map<String, Object>> schedule = scheduleService.getTodaysSchedule(noCache(headers));
+        logger.debug("Successfully retrieved {} appointments for today", schedule.size());
+        return ResponseEntity.ok(schedule);
+    }
+
+    @GetMapping("/schedule/upcoming")
+    public ResponseEntity<List<Map<String, Object>>> getUpcomingSchedule(@RequestHeader HttpHeaders headers) {
+        logger.debug("GET /gateway/schedule/upcoming - Fetching upcoming schedule with client details");
+        List<Map<String, Object>> schedule = scheduleService.getUpcomingSchedule(noCache(headers));
+        logger.debug("Successfully retrieved {} upcoming appointments", schedule.size());
+        return ResponseEntity.ok(schedule);
+    }
+
+    @GetMapping("/clients/{id}/overview")
+    public ResponseEntity<Map<String, Object>> getClientOverview(@PathVariable String id, @RequestHeader HttpHeaders headers) {
+        logger.debug("GET /gateway/clients/{}/overview - Fetching client with appointments", id);
+        Map<String, Object> overview = scheduleService.getClientOverview(id, noCache(headers));
+        if (overview == null) {
+            logger.warn("Client not found with id: {}", id);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(overview);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(scheduleService.getStats());
+    }
+
+    // Latest traces kept by tail sampling, newest first; the full record is in the trace file
+    @GetMapping("/traces")
+    public ResponseEntity<List<Map<String, Object>>> getRecentTraces(@RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(tracer.getRecentTraces(limit));
+    }
+
+    @GetMapping("/traces/stats")
+    public ResponseEntity<Map<String, Object>> getTraceStats() {
+        return ResponseEntity.ok(tracer.getStats());
+    }
+
+    // Request Cache-Control: no-cache skips the gateway's short-lived composite cache
+    private boolean noCache(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        return cacheControl != null && cacheControl.toLowerCase().contains("no-cache");
+    }
+}
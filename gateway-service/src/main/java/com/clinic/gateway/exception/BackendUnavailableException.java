@@ -0,0 +1,18 @@
+package com.clinic.gateway.exception;
+
+// A backend service could not be reached or answered with an error
+public class BackendUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String backend;
+
+    public BackendUnavailableException(String backend, String message, Throwable cause) {
+        super(backend + ": " + message, cause);
+        this.backend = backend;
+    }
+
+    public String getBackend() {
+        return backend;
+    }
+}
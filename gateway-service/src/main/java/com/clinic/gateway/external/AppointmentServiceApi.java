@@ -0,0 +1,57 @@
+package com.clinic.gateway.external;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class AppointmentServiceApi {
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${gateway.backend.appointment-service.url}")
+    private String baseUrl;
+
+    @Value("${gateway.backend.validated-urls:256}")
+    private int maxValidatedUrls;
+
+    @Value("${gateway.schedule.upcoming-page-size:500}")
+    private int upcomingPageSize;
+
+    private BackendClient backend;
+
+    public AppointmentServiceApi(RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        backend = new BackendClient("appointment-service", baseUrl, restTemplate, objectMapper, maxValidatedUrls);
+    }
+
+    public List<Map<String, Object>> getTodaysAppointments() {
+        return backend.getList("/appointments/today");
+    }
+
+    public List<Map<String, Object>> getUpcomingAppointments() {
+        // Fetched in pages so each backend response stays bounded, but the schedule is whole
+        return backend.getAllPages("/appointments/upcoming?limit=" + upcomingPageSize);
+    }
+
+    public List<Map<String, Object>> getAppointmentsByClientId(String clientId) {
+        return backend.getList("/appointments/client/" + UriUtils.encodePathSegment(clientId, StandardCharsets.UTF_8));
+    }
+
+    public Map<String, Object> getStats() {
+        return backend.getStats();
+    }
+}
@@ -0,0 +1,175 @@
+package com.clinic.gateway.external;
+
+import com.clinic.gateway.exception.BackendUnavailableException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// GETs JSON from one backend service. The services answer list endpoints with weak ETags,
+// so the last body per URL is kept and revalidated with If-None-Match: an unchanged list
+// costs the backend a version lookup and a 304 instead of a query and serialization.
+// Paged list endpoints are followed through their X-Next-Cursor header to the last page.
+public class BackendClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendClient.class);
+
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private static final TypeReference<List<Map<String, Object>>> LIST = new TypeReference<List<Map<String, Object>>>() {};
+    private static final TypeReference<Map<String, Object>> OBJECT = new TypeReference<Map<String, Object>>() {};
+
+    private final String name;
+    private final String baseUrl;
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+    private final Map<String, Validated> validated;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    public BackendClient(String name, String baseUrl, RestTemplate restTemplate, ObjectMapper objectMapper,
+                         int maxValidatedUrls) {
+        this.name = name;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+        // Access-ordered so the least recently used URL goes first
+        this.validated = Collections.synchronizedMap(new LinkedHashMap<String, Validated>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Validated> eldest) {
+                return size() > maxValidatedUrls;
+            }
+        });
+    }
+
+    public List<Map<String, Object>> getList(String path) {
+        Response response = get(path);
+        return response == null ? Collections.emptyList() : read(path, response.body, LIST);
+    }
+
+    // Every item of a paged list: path must already carry a query string, and each
+    // following page is requested with the cursor the previous one returned
+    public List<Map<String, Object>> getAllPages(String path) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        String pagePath = path;
+        while (pagePath != null) {
+            Response response = get(pagePath);
+            if (response == null) {
+                break;
+            }
+            items.addAll(read(pagePath, response.body, LIST));
+            pagePath = response.nextCursor == null ? null
+                    : path + "&cursor=" + UriUtils.encodeQueryParam(response.nextCursor, StandardCharsets.UTF_8);
+        }
+        return items;
+    }
+
+    // null when the backend answers 404
+    public Map<String, Object> getObject(String path) {
+        Response response = get(path);
+        return response == null ? null : read(path, response.body, OBJECT);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("baseUrl", baseUrl);
+        stats.put("requests", requests.get());
+        stats.put("notModified", notModified.get());
+        stats.put("validatedUrls", validated.size());
+        return stats;
+    }
+
+    private Response get(String path) {
+        String url = baseUrl + path;
+        Validated previous = validated.get(url);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON));
+        if (previous != null) {
+            headers.setIfNoneMatch(previous.etag);
+        }
+
+        requests.incrementAndGet();
+        ResponseEntity<byte[]> response;
+        try {
+            response = restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+        } catch (HttpClientErrorException.NotFound e) {
+            validated.remove(url);
+            return null;
+        } catch (RestClientException e) {
+            throw new BackendUnavailableException(name, "GET " + path + " failed: " + e.getMessage(), e);
+        }
+
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && previous != null) {
+            notModified.incrementAndGet();
+            logger.debug("{} {} not modified", name, path);
+            return previous.response;
+        }
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            throw new BackendUnavailableException(name, "GET " + path + " returned " + response.getStatusCode(), null);
+        }
+
+        byte[] body = response.getBody();
+        if (body == null) {
+            validated.remove(url);
+            return null;
+        }
+        // A 304 carries no cursor, so it is kept with the body it revalidates
+        Response result = new Response(body, response.getHeaders().getFirst(NEXT_CURSOR_HEADER));
+        String etag = response.getHeaders().getETag();
+        if (etag != null) {
+            validated.put(url, new Validated(etag, result));
+        } else {
+            validated.remove(url);
+        }
+        return result;
+    }
+
+    private <T> T read(String path, byte[] body, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(body, type);
+        } catch (IOException e) {
+            throw new BackendUnavailableException(name, "GET " + path + " returned unreadable JSON: " + e.getMessage(), e);
+        }
+    }
+
+    private static final class Response {
+        private final byte[] body;
+        private final String nextCursor;
+
+        private Response(byte[] body, String nextCursor) {
+            this.body = body;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    private static final class Validated {
+        private final String etag;
+        private final Response response;
+
+        private Validated(String etag, Response response) {
+            this.etag = etag;
+            this.response = response;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.clinic.gateway.external;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriUtils;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+@Component
+public class ClientServiceApi {
+
+    // Only the columns the composite views show, served by the client service's projection query
+    private static final String SUMMARY_FIELDS = "id,name,email,phone";
+
+    private final RestTemplate restTemplate;
+    private final ObjectMapper objectMapper;
+
+    @Value("${gateway.backend.client-service.url}")
+    private String baseUrl;
+
+    @Value("${gateway.backend.validated-urls:256}")
+    private int maxValidatedUrls;
+
+    private BackendClient backend;
+
+    public ClientServiceApi(RestTemplate restTemplate, ObjectMapper objectMapper) {
+        this.restTemplate = restTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        backend = new BackendClient("client-service", baseUrl, restTemplate, objectMapper, maxValidatedUrls);
+    }
+
+    public List<Map<String, Object>> getClientSummaries() {
+        return backend.getList("/clients?fields=" + SUMMARY_FIELDS);
+    }
+
+    public Map<String, Object> getClient(String id) {
+        return backend.getObject("/clients/" + UriUtils.encodePathSegment(id, StandardCharsets.UTF_8));
+    }
+
+    public Map<String, Object> getStats() {
+        return backend.getStats();
+    }
+}
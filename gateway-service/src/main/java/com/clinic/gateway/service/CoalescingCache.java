@@ -0,0 +1,116 @@
+package com.clinic.gateway.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Single-flight cache: concurrent callers asking for the same key while it is being loaded
+// share the one in-flight load, and a successful result is then served for ttl before the
+// next caller loads it again. Failures are handed to everyone waiting but never cached.
+// A ttl of 0 gives plain request coalescing without caching.
+public class CoalescingCache<V> {
+
+    private final String name;
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final ConcurrentHashMap<String, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public CoalescingCache(String name, long ttlMillis, int maxEntries) {
+        this.name = name;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.maxEntries = maxEntries;
+    }
+
+    public CompletableFuture<V> get(String key, Supplier<CompletableFuture<V>> loader) {
+        return get(key, loader, false);
+    }
+
+    // fresh always starts a new load (for callers that just wrote through another path, where
+    // even a load already in flight may have read the old state); later callers share it
+    public CompletableFuture<V> get(String key, Supplier<CompletableFuture<V>> loader, boolean fresh) {
+        Entry<V> mine = new Entry<>();
+        if (fresh) {
+            entries.put(key, mine);
+        } else {
+            Entry<V> current = entries.get(key);
+            if (current == null || !current.isUsable()) {
+                current = entries.compute(key, (k, existing) -> existing != null && existing.isUsable() ? existing : mine);
+            }
+            if (current != mine) {
+                (current.result.isDone() ? hits : coalesced).incrementAndGet();
+                return current.result;
+            }
+        }
+
+        loads.incrementAndGet();
+        evictIfFull();
+        CompletableFuture<V> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((value, error) -> {
+            if (error != null) {
+                failures.incrementAndGet();
+                entries.remove(key, mine);
+                mine.result.completeExceptionally(error);
+            } else {
+                // Set before completing so that a caller seeing the result also sees its expiry
+                mine.expiresAt = System.nanoTime() + ttlNanos;
+                mine.result.complete(value);
+                if (ttlNanos <= 0) {
+                    entries.remove(key, mine);
+                }
+            }
+        });
+        return mine.result;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("ttlMillis", TimeUnit.NANOSECONDS.toMillis(ttlNanos));
+        stats.put("entries", entries.size());
+        stats.put("hits", hits.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("loads", loads.get());
+        stats.put("failures", failures.get());
+        return stats;
+    }
+
+    // Expired entries are only dropped when the map is full; until then they are simply
+    // replaced by the next load for their key
+    private void evictIfFull() {
+        if (entries.size() <= maxEntries) {
+            return;
+        }
+        entries.entrySet().removeIf(e -> e.getValue().result.isDone() && !e.getValue().isUsable());
+        if (entries.size() > maxEntries) {
+            entries.entrySet().removeIf(e -> e.getValue().result.isDone());
+        }
+    }
+
+    private static final class Entry<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private volatile long expiresAt;
+
+        // In flight, or loaded successfully and not yet expired
+        private boolean isUsable() {
+            if (!result.isDone()) {
+                return true;
+            }
+            return !result.isCompletedExceptionally() && System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.clinic.gateway.service;
+
+import com.clinic.gateway.exception.BackendUnavailableException;
+import com.clinic.gateway.external.AppointmentServiceApi;
+import com.clinic.gateway.external.ClientServiceApi;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Composite views for the frontend. Each one fans out to both services in parallel and
+// joins the results here, so a screen needs one round trip instead of two plus a join in
+// the browser. Identical concurrent requests share one fan-out and the joined result is
+// cached for a short ttl, so many open screens polling the same view cost the services
+// about one request pair per ttl.
+@Service
+public class ScheduleService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ScheduleService.class);
+
+    private final ClientServiceApi clientServiceApi;
+    private final AppointmentServiceApi appointmentServiceApi;
+    private final ThreadPoolTaskExecutor fanOutExecutor;
+
+    @Value("${gateway.cache.ttl-ms:2000}")
+    private long cacheTtlMillis;
+
+    @Value("${gateway.cache.max-entries:1000}")
+    private int cacheMaxEntries;
+
+    @Value("${gateway.composite.timeout-ms:15000}")
+    private long compositeTimeoutMillis;
+
+    private CoalescingCache<List<Map<String, Object>>> schedules;
+    private CoalescingCache<Map<String, Object>> overviews;
+
+    public ScheduleService(ClientServiceApi clientServiceApi, AppointmentServiceApi appointmentServiceApi,
+                           ThreadPoolTaskExecutor fanOutExecutor) {
+        this.clientServiceApi = clientServiceApi;
+        this.appointmentServiceApi = appointmentServiceApi;
+        this.fanOutExecutor = fanOutExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        schedules = new CoalescingCache<>("schedules", cacheTtlMillis, cacheMaxEntries);
+        overviews = new CoalescingCache<>("client-overviews", cacheTtlMillis, cacheMaxEntries);
+    }
+
+    // fresh skips the cached result, e.g. right after the caller changed an appointment
+    public List<Map<String, Object>> getTodaysSchedule(boolean fresh) {
+        // The date is part of the key so a cached schedule never outlives midnight
+        return await(schedules.get("today-" + LocalDate.now(),
+                () -> joinClients(appointmentServiceApi::getTodaysAppointments), fresh));
+    }
+
+    public List<Map<String, Object>> getUpcomingSchedule(boolean fresh) {
+        return await(schedules.get("upcoming", () -> joinClients(appointmentServiceApi::getUpcomingAppointments), fresh));
+    }
+
+    // null when the client does not exist
+    public Map<String, Object> getClientOverview(String clientId, boolean fresh) {
+        return await(overviews.get(clientId, () -> {
+            CompletableFuture<Map<String, Object>> client = fanOut(() -> clientServiceApi.getClient(clientId));
+            CompletableFuture<List<Map<String, Object>>> appointments =
+                    fanOut(() -> appointmentServiceApi.getAppointmentsByClientId(clientId));
+            return client.thenCombine(appointments, (c, a) -> {
+                if (c == null) {
+                    return null;
+                }
+                Map<String, Object> overview = new LinkedHashMap<>();
+                overview.put("client", c);
+                overview.put("appointments", a);
+                return overview;
+            });
+        }, fresh));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("schedules", schedules.getStats());
+        stats.put("clientOverviews", overviews.getStats());
+        stats.put("clientService", clientServiceApi.getStats());
+        stats.put("appointmentService", appointmentServiceApi.getStats());
+        Map<String, Object> pool = new LinkedHashMap<>();
+        pool.put("active", fanOutExecutor.getActiveCount());
+        pool.put("poolSize", fanOutExecutor.getPoolSize());
+        pool.put("queued", fanOutExecutor.getThreadPoolExecutor().getQueue().size());
+        stats.put("fanOutPool", pool);
+        return stats;
+    }
+
+    // Each appointment with its client's summary under "client" (null if the client is unknown)
+    private CompletableFuture<List<Map<String, Object>>> joinClients(Supplier<List<Map<String, Object>>> appointmentsCall) {
+        CompletableFuture<List<Map<String, Object>>> appointments = fanOut(appointmentsCall);
+        CompletableFuture<List<Map<String, Object>>> clients = fanOut(clientServiceApi::getClientSummaries);
+        return appointments.thenCombine(clients, (appointmentList, clientList) -> {
+            Map<Object, Map<String, Object>> clientsById = new HashMap<>(clientList.size() * 2);
+            for (Map<String, Object> client : clientList) {
+                clientsById.put(client.get("id"), client);
+            }
+            List<Map<String, Object>> schedule = new ArrayList<>(appointmentList.size());
+            for (Map<String, Object> appointment : appointmentList) {
+                Map<String, Object> entry = new LinkedHashMap<>(appointment);
+                entry.put("client", clientsById.get(appointment.get("clientId")));
+                schedule.add(entry);
+            }
+            logger.debug("Joined {} appointments with {} clients", appointmentList.size(), clientList.size());
+            return schedule;
+        });
+    }
+
+    private <T> CompletableFuture<T> fanOut(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, fanOutExecutor);
+    }
+
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get(compositeTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for backend services", e);
+        } catch (TimeoutException e) {
+            throw new BackendUnavailableException("gateway", "no answer within " + compositeTimeoutMillis + " ms", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}